@@ -0,0 +1,74 @@
+package com.googlecode.routing.simulator.bench;
+
+/**
+ * An operation measured by the {@link BenchmarkRunner}. The benchmark is prepared once for each combination of
+ * parameters and the operation is then repeated as many times as the runner needs
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public abstract class Benchmark {
+
+	/**
+	 * Returns the name used to select and to report the benchmark
+	 * 
+	 * @return
+	 */
+	public abstract String getName();
+
+	/**
+	 * Tells if the benchmark should be run with the given parameters
+	 * 
+	 * @param size The number of destinations (or routers) of the tables
+	 * @param neighbors The number of neighbors of each router
+	 * @return
+	 */
+	public boolean accepts(int size, int neighbors) {
+		return true;
+	}
+
+	/**
+	 * Tells if the neighbor count changes what is measured. If not, the benchmark runs once for each size
+	 * 
+	 * @return
+	 */
+	public boolean usesNeighbors() {
+		return false;
+	}
+
+	/**
+	 * Tells if each operation is long enough to be measured alone, without warm up batches
+	 * 
+	 * @return
+	 */
+	public boolean isSingleShot() {
+		return false;
+	}
+
+	/**
+	 * Prepares the data used by the operation
+	 * 
+	 * @param size The number of destinations (or routers) of the tables
+	 * @param neighbors The number of neighbors of each router
+	 * @throws Exception
+	 */
+	public abstract void setUp(int size, int neighbors) throws Exception;
+
+	/**
+	 * Executes the measured operation once
+	 * 
+	 * @return any value computed by the operation, so it can not be optimized away
+	 * @throws Exception
+	 */
+	public abstract long operation() throws Exception;
+
+	/**
+	 * Releases the data used by the operation
+	 * 
+	 * @throws Exception
+	 */
+	public void tearDown() throws Exception {
+	}
+
+}
@@ -0,0 +1,163 @@
+package com.googlecode.routing.simulator.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.googlecode.routing.simulator.DistanceVector;
+import com.googlecode.routing.simulator.LinkInfo;
+import com.googlecode.routing.simulator.LinkTable;
+import com.googlecode.routing.simulator.Router;
+import com.googlecode.routing.simulator.RouterInfo;
+import com.googlecode.routing.simulator.Simulation;
+
+/**
+ * Builds the routers, tables and topologies used by the benchmarks. Every random choice comes from a fixed seed,
+ * so runs with the same parameters measure the same data
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class BenchmarkData {
+
+	/**
+	 * Seed of the random choices
+	 */
+	public static final long SEED = 42;
+
+	/**
+	 * First port assigned to the generated routers
+	 */
+	public static final int FIRST_PORT = 20000;
+
+	/**
+	 * Highest cost of the generated links
+	 */
+	public static final int MAX_COST = 100;
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * Creates the metadata of a router listening on the loopback address
+	 * 
+	 * @param id
+	 * @return
+	 * @throws IOException
+	 */
+	public static RouterInfo newRouterInfo(long id) throws IOException {
+		RouterInfo info = new RouterInfo();
+		info.id = id;
+		info.port = FIRST_PORT + (int) id;
+		info.ipAddress = InetAddress.getByAddress(new byte[] { 127, 0, 0, 1 });
+		return info;
+	}
+
+	/**
+	 * Creates router 0 linked to routers 1 to the given number of neighbors, with a vector received from each
+	 * neighbor that has a path to every one of the given number of destinations
+	 * 
+	 * @param size The number of destinations
+	 * @param neighbors The number of neighbors
+	 * @return
+	 * @throws IOException
+	 */
+	public static Router newRouter(int size, int neighbors) throws IOException {
+		Random random = new Random(SEED);
+		Set<RouterInfo> adjacentRouters = new HashSet<RouterInfo>();
+		Map<Long, LinkInfo> links = new HashMap<Long, LinkInfo>();
+		for (long id = 1; id <= neighbors; id++) {
+			adjacentRouters.add(newRouterInfo(id));
+			LinkInfo link = new LinkInfo();
+			link.routerAID = 0;
+			link.routerBID = id;
+			link.cost = 1 + random.nextInt(MAX_COST);
+			links.put(id, link);
+		}
+		Router router = new Router(newRouterInfo(0), adjacentRouters, links, Simulation.NULL_OUTPUT, Router.INFINITY);
+
+		long now = System.currentTimeMillis();
+		int destinations = Math.max(size, neighbors + 1);
+		for (long id = 1; id <= neighbors; id++) {
+			DistanceVector vector = new DistanceVector(router.minimumPathTable.getIndex());
+			for (long destination = 0; destination < destinations; destination++) {
+				vector.put(destination, destination == id ? 0 : 1 + random.nextInt(MAX_COST * 10), id);
+			}
+			router.minimumPathTable.putVector(id, vector);
+			router.liveness.refresh(id, now);
+		}
+		for (long id = 1; id <= neighbors; id++) {
+			router.relaxEdges(id);
+		}
+		router.publishSnapshot();
+		return router;
+	}
+
+	/**
+	 * Creates a connected topology: a ring of the given size where each router also has links to random routers
+	 * until it reaches about the given degree. No two links connect the same pair of routers
+	 * 
+	 * @param size The number of routers
+	 * @param degree The average number of links of each router
+	 * @return
+	 */
+	public static LinkTable newTopology(int size, int degree) {
+		Random random = new Random(SEED);
+		LinkTable linkTable = new LinkTable();
+		Set<Long> pairs = new HashSet<Long>();
+		for (int id = 0; id < size; id++) {
+			addLink(linkTable, pairs, id, (id + 1) % size, random);
+		}
+		long extraLinks = Math.max(0, (long) size * (degree - 2) / 2);
+		for (long i = 0; i < extraLinks; i++) {
+			addLink(linkTable, pairs, random.nextInt(size), random.nextInt(size), random);
+		}
+		return linkTable;
+	}
+
+	private static void addLink(LinkTable linkTable, Set<Long> pairs, int a, int b, Random random) {
+		if (a != b && pairs.add((long) Math.min(a, b) << 32 | Math.max(a, b))) {
+			linkTable.addLink(a, b, 1 + random.nextInt(MAX_COST));
+		}
+	}
+
+	/**
+	 * Writes the configuration files of the routers and links of a topology, in the format read by
+	 * {@link com.googlecode.routing.simulator.RouterTable} and {@link LinkTable}
+	 * 
+	 * @param linkTable The topology
+	 * @param routerConfig The file of the routers
+	 * @param linkConfig The file of the links
+	 * @throws IOException
+	 */
+	public static void writeConfig(LinkTable linkTable, File routerConfig, File linkConfig) throws IOException {
+		BufferedWriter writer = new BufferedWriter(new FileWriter(routerConfig));
+		try {
+			for (int node = 0; node < linkTable.getRouterCount(); node++) {
+				RouterInfo info = newRouterInfo(linkTable.getRouterID(node));
+				writer.write(info.id + " " + info.port + " " + info.ipAddress.getHostAddress() + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+
+		writer = new BufferedWriter(new FileWriter(linkConfig));
+		try {
+			for (int link = 0; link < linkTable.getLinkCount(); link++) {
+				writer.write(linkTable.getLinkA(link) + " " + linkTable.getLinkB(link) + " "
+						+ linkTable.getLinkCost(link) + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+}
@@ -0,0 +1,295 @@
+package com.googlecode.routing.simulator.bench;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Measures the benchmarks. Each operation is repeated in batches for a fixed time per iteration; the first
+ * iterations only warm up the JIT. The report has the throughput, the latency of the operation (average and
+ * percentiles of the batches) and the bytes allocated per operation by all the threads, so benchmarks that run
+ * routers on their own threads are measured as well
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * Target duration of a batch of operations. Faster operations are grouped so the clock overhead is negligible
+	 */
+	private static final long BATCH_NANOS = 100000;
+
+	/**
+	 * Maximum number of batches whose latencies are kept on each run
+	 */
+	private static final int MAX_SAMPLES = 1 << 20;
+
+	/**
+	 * Duration of each iteration
+	 */
+	private final long iterationNanos;
+
+	/**
+	 * Number of iterations discarded before measuring
+	 */
+	private final int warmupIterations;
+
+	/**
+	 * Number of measured iterations
+	 */
+	private final int iterations;
+
+	/**
+	 * Where the results are printed
+	 */
+	private final PrintStream out;
+
+	/**
+	 * Source of the number of bytes allocated by the threads, null if the JVM does not support it
+	 */
+	private final com.sun.management.ThreadMXBean threads;
+
+	/**
+	 * Receives the results of the operations so they are not removed by the JIT
+	 */
+	private volatile long sink;
+
+	/**
+	 * Creates a runner
+	 * 
+	 * @param iterationMillis Duration of each iteration
+	 * @param warmupIterations Number of iterations discarded before measuring
+	 * @param iterations Number of measured iterations
+	 * @param out Where the results are printed
+	 */
+	public BenchmarkRunner(long iterationMillis, int warmupIterations, int iterations, PrintStream out) {
+		this.iterationNanos = iterationMillis * 1000000;
+		this.warmupIterations = warmupIterations;
+		this.iterations = iterations;
+		this.out = out;
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			this.threads = (com.sun.management.ThreadMXBean) bean;
+			this.threads.setThreadAllocatedMemoryEnabled(true);
+		} else {
+			this.threads = null;
+		}
+	}
+
+	/**
+	 * Prints the header of the table of results
+	 */
+	public void printHeader() {
+		out.println(String.format("%-20s %8s %9s %14s %12s %12s %12s %12s", "benchmark", "size", "neighbors",
+				"ops/s", "avg us/op", "p50 us/op", "p99 us/op", "B/op"));
+	}
+
+	/**
+	 * Runs a benchmark with the given parameters and prints its results
+	 * 
+	 * @param benchmark
+	 * @param size
+	 * @param neighbors
+	 * @throws Exception
+	 */
+	public void run(Benchmark benchmark, int size, int neighbors) throws Exception {
+		benchmark.setUp(size, neighbors);
+		try {
+			int warmups = benchmark.isSingleShot() ? Math.min(warmupIterations, 1) : warmupIterations;
+			int batchSize = 1;
+			for (int i = 0; i < warmups; i++) {
+				batchSize = calibrate(benchmark, batchSize);
+				measure(benchmark, batchSize, null);
+			}
+
+			Measurement measurement = new Measurement(benchmark.isSingleShot() ? iterations : (int) Math.min(
+					MAX_SAMPLES, iterations * (2 * iterationNanos / BATCH_NANOS + 1)));
+			AllocationSnapshot before = snapshot();
+			for (int i = 0; i < iterations; i++) {
+				measure(benchmark, batchSize, measurement);
+			}
+			long allocated = allocatedSince(before);
+
+			double[] samples = measurement.samples;
+			int sampleCount = measurement.sampleCount;
+			long operations = measurement.operations;
+			long nanos = measurement.nanos;
+			Arrays.sort(samples, 0, sampleCount);
+			out.println(String.format("%-20s %8d %9s %14.1f %12.3f %12.3f %12.3f %12s", benchmark.getName(), size,
+					benchmark.usesNeighbors() ? String.valueOf(neighbors) : "-", operations * 1e9 / nanos,
+					nanos / 1e3 / operations, percentile(samples, sampleCount, 0.5),
+					percentile(samples, sampleCount, 0.99), allocated < 0 ? "n/a" : String.valueOf(allocated
+							/ operations)));
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	/**
+	 * Finds how many operations fit on a batch
+	 */
+	private int calibrate(Benchmark benchmark, int batchSize) throws Exception {
+		if (benchmark.isSingleShot()) {
+			return 1;
+		}
+		while (true) {
+			long start = System.nanoTime();
+			for (int i = 0; i < batchSize; i++) {
+				sink += benchmark.operation();
+			}
+			long elapsed = System.nanoTime() - start;
+			if (elapsed >= BATCH_NANOS || batchSize >= 1 << 24) {
+				return batchSize;
+			}
+			batchSize = (int) Math.min(1 << 24, Math.max(batchSize * 2L, batchSize * BATCH_NANOS / Math.max(elapsed, 1)));
+		}
+	}
+
+	/**
+	 * Runs batches of operations for the duration of one iteration, or a single operation on single shot
+	 * benchmarks
+	 */
+	private void measure(Benchmark benchmark, int batchSize, Measurement measurement) throws Exception {
+		long iterationStart = System.nanoTime();
+		long now = iterationStart;
+		do {
+			long start = now;
+			for (int i = 0; i < batchSize; i++) {
+				sink += benchmark.operation();
+			}
+			now = System.nanoTime();
+			if (measurement != null) {
+				measurement.add(batchSize, now - start);
+			}
+		} while (!benchmark.isSingleShot() && now - iterationStart < iterationNanos);
+	}
+
+	/**
+	 * Reads the bytes allocated so far by every live thread
+	 * 
+	 * @return the snapshot, or null if the JVM does not support it
+	 */
+	private AllocationSnapshot snapshot() {
+		if (threads == null) {
+			return null;
+		}
+		long startedThreads = threads.getTotalStartedThreadCount();
+		long[] ids = threads.getAllThreadIds();
+		return new AllocationSnapshot(startedThreads, ids, threads.getThreadAllocatedBytes(ids));
+	}
+
+	/**
+	 * Sums the bytes allocated by all the threads since the given snapshot. Threads started in between count from
+	 * zero, but the bytes of a thread that ended in between can no longer be read
+	 * 
+	 * @param before
+	 * @return the number of bytes, or -1 if it is unknown because the JVM does not support it or a thread ended
+	 */
+	private long allocatedSince(AllocationSnapshot before) {
+		AllocationSnapshot after = snapshot();
+		if (before == null || after == null) {
+			return -1;
+		}
+		long total = 0;
+		int survivors = 0;
+		int newThreads = 0;
+		for (int i = 0; i < after.ids.length; i++) {
+			if (after.bytes[i] < 0) {
+				return -1;
+			}
+			int j = before.indexOf(after.ids[i]);
+			if (j < 0) {
+				total += after.bytes[i];
+				newThreads++;
+			} else if (before.bytes[j] >= 0) {
+				total += after.bytes[i] - before.bytes[j];
+				survivors++;
+			}
+		}
+		if (survivors < before.getLiveCount() || newThreads < after.startedThreads - before.startedThreads) {
+			return -1;
+		}
+		return total;
+	}
+
+	private static double percentile(double[] sorted, int count, double percentile) {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		return sorted[(int) Math.min(count - 1, Math.ceil(percentile * count) - 1)];
+	}
+
+	/**
+	 * Results of the batches of the measured iterations. The samples are allocated up front, so nothing is
+	 * allocated while measuring; batches beyond its capacity are counted but their latencies are not kept
+	 */
+	private static class Measurement {
+
+		final double[] samples;
+
+		int sampleCount;
+
+		long operations;
+
+		long nanos;
+
+		Measurement(int capacity) {
+			this.samples = new double[capacity];
+		}
+
+		void add(int batchSize, long elapsed) {
+			operations += batchSize;
+			nanos += elapsed;
+			if (sampleCount < samples.length) {
+				samples[sampleCount++] = elapsed / 1e3 / batchSize;
+			}
+		}
+	}
+
+	/**
+	 * Bytes allocated by each live thread at a point in time
+	 */
+	private static class AllocationSnapshot {
+
+		/**
+		 * Number of threads started since the JVM started
+		 */
+		final long startedThreads;
+
+		final long[] ids;
+
+		/**
+		 * Bytes allocated by each thread, -1 for a thread that ended before it was read
+		 */
+		final long[] bytes;
+
+		AllocationSnapshot(long startedThreads, long[] ids, long[] bytes) {
+			this.startedThreads = startedThreads;
+			this.ids = ids;
+			this.bytes = bytes;
+		}
+
+		int indexOf(long id) {
+			for (int i = 0; i < ids.length; i++) {
+				if (ids[i] == id) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		int getLiveCount() {
+			int count = 0;
+			for (long value : bytes) {
+				if (value >= 0) {
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+
+}
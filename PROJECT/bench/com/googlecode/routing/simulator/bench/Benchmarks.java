@@ -0,0 +1,111 @@
+package com.googlecode.routing.simulator.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.googlecode.routing.simulator.Router;
+import com.googlecode.routing.simulator.Simulation;
+
+/**
+ * Runs the benchmarks of the routing hot paths for every combination of table size and neighbor count
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class Benchmarks {
+
+	/**
+	 * Table sizes used when none is given
+	 */
+	private static final int[] DEFAULT_SIZES = { 10, 100, 1000, 10000, 100000 };
+
+	/**
+	 * Neighbor counts used when none is given
+	 */
+	private static final int[] DEFAULT_NEIGHBORS = { 2, 8, 32 };
+
+	/**
+	 * Returns every available benchmark
+	 * 
+	 * @return
+	 */
+	public static List<Benchmark> getBenchmarks() {
+		return Arrays.<Benchmark> asList(new RelaxEdgesBenchmark(), new EncodeBenchmark(), new DecodeBenchmark(),
+				new BuildPathInfoBenchmark(), new LinksForRouterBenchmark(), new LinkFlapBenchmark(),
+				new NextHopBenchmark(), new StartupBenchmark(false), new StartupBenchmark(true),
+				new ConvergenceBenchmark(Simulation.TransportMode.MEMORY),
+				new ConvergenceBenchmark(Simulation.TransportMode.NIO),
+				new ConvergenceBenchmark(Simulation.TransportMode.MEMORY, Router.ProtocolMode.SPLIT_HORIZON),
+				new ConvergenceBenchmark(Simulation.TransportMode.MEMORY, Router.ProtocolMode.POISON_REVERSE));
+	}
+
+	/**
+	 * Runs the benchmarks
+	 * 
+	 * @param args Optionally "-sizes" and "-neighbors" followed by comma separated values, "-time" followed by the
+	 *            duration of each iteration in milliseconds, "-warmup" and "-iterations" followed by the number of
+	 *            iterations, and then the names of the benchmarks to run (all of them if none is given)
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int[] sizes = DEFAULT_SIZES;
+		int[] neighbors = DEFAULT_NEIGHBORS;
+		long time = 1000;
+		int warmup = 3;
+		int iterations = 5;
+		int arg = 0;
+		try {
+			for (; arg < args.length && args[arg].startsWith("-"); arg += 2) {
+				String value = args[arg + 1];
+				if (args[arg].equals("-sizes")) {
+					sizes = parseList(value);
+				} else if (args[arg].equals("-neighbors")) {
+					neighbors = parseList(value);
+				} else if (args[arg].equals("-time")) {
+					time = Long.parseLong(value);
+				} else if (args[arg].equals("-warmup")) {
+					warmup = Integer.parseInt(value);
+				} else if (args[arg].equals("-iterations")) {
+					iterations = Integer.parseInt(value);
+				} else {
+					throw new IllegalArgumentException(args[arg]);
+				}
+			}
+		} catch (RuntimeException e) {
+			System.err.println("USAGE: [-sizes <n,...>] [-neighbors <n,...>] [-time <ms>] [-warmup <n>] [-iterations <n>] [<benchmark> ...]");
+			System.exit(1);
+		}
+
+		List<String> names = Arrays.asList(args).subList(arg, args.length);
+		List<Benchmark> selected = new ArrayList<Benchmark>();
+		for (Benchmark benchmark : getBenchmarks()) {
+			if (names.isEmpty() || names.contains(benchmark.getName())) {
+				selected.add(benchmark);
+			}
+		}
+
+		BenchmarkRunner runner = new BenchmarkRunner(time, warmup, iterations, System.out);
+		runner.printHeader();
+		for (Benchmark benchmark : selected) {
+			for (int size : sizes) {
+				for (int count : benchmark.usesNeighbors() ? neighbors : new int[] { 1 }) {
+					if (benchmark.accepts(size, count)) {
+						runner.run(benchmark, size, count);
+					}
+				}
+			}
+		}
+	}
+
+	private static int[] parseList(String value) {
+		String[] split = value.split(",");
+		int[] values = new int[split.length];
+		for (int i = 0; i < split.length; i++) {
+			values[i] = Integer.parseInt(split[i].trim());
+		}
+		return values;
+	}
+
+}
@@ -0,0 +1,46 @@
+package com.googlecode.routing.simulator.bench;
+
+import java.util.Random;
+
+import com.googlecode.routing.simulator.PathInfo;
+
+/**
+ * Measures {@link PathInfo#buildPathInfo(String)} over all the paths of a table
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class BuildPathInfoBenchmark extends Benchmark {
+
+	private String[] paths;
+
+	@Override
+	public String getName() {
+		return "buildPathInfo";
+	}
+
+	@Override
+	public void setUp(int size, int neighbors) {
+		Random random = new Random(BenchmarkData.SEED);
+		this.paths = new String[size];
+		for (int i = 0; i < size; i++) {
+			paths[i] = i + ":" + random.nextInt(size) + ":" + (1 + random.nextInt(BenchmarkData.MAX_COST * 10)) + ".0";
+		}
+	}
+
+	@Override
+	public long operation() {
+		long sum = 0;
+		for (String path : paths) {
+			sum += PathInfo.buildPathInfo(path).gatewayRouterID;
+		}
+		return sum;
+	}
+
+	@Override
+	public void tearDown() {
+		paths = null;
+	}
+
+}
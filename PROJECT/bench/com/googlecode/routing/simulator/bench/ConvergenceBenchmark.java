@@ -0,0 +1,129 @@
+package com.googlecode.routing.simulator.bench;
+
+import java.io.File;
+
+import com.googlecode.routing.simulator.ConvergenceReport;
+import com.googlecode.routing.simulator.LinkTable;
+import com.googlecode.routing.simulator.Router;
+import com.googlecode.routing.simulator.RouterTable;
+import com.googlecode.routing.simulator.Simulation;
+
+/**
+ * Measures the time until every router of a generated topology knows the shortest path to every other router,
+ * running the whole network inside the process. Each operation is a new simulation, checked by
+ * {@link com.googlecode.routing.simulator.ShortestPathOracle} until it converges
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class ConvergenceBenchmark extends Benchmark {
+
+	/**
+	 * Largest topology simulated, as every router runs its own threads
+	 */
+	public static final int MAX_ROUTERS = 1000;
+
+	/**
+	 * Interval between the checks of the tables
+	 */
+	private static final long CHECK_INTERVAL = 100;
+
+	/**
+	 * Time after which a simulation is considered not to converge
+	 */
+	private static final long TIMEOUT = 600000;
+
+	private final Simulation.TransportMode mode;
+
+	private final Router.ProtocolMode protocolMode;
+
+	private File routerConfig;
+
+	private File linkConfig;
+
+	/**
+	 * Creates the benchmark for the given kind of transport, running the basic protocol
+	 * 
+	 * @param mode
+	 */
+	public ConvergenceBenchmark(Simulation.TransportMode mode) {
+		this(mode, Router.ProtocolMode.BASIC);
+	}
+
+	/**
+	 * Creates the benchmark for the given kind of transport and protocol mode
+	 * 
+	 * @param mode
+	 * @param protocolMode
+	 */
+	public ConvergenceBenchmark(Simulation.TransportMode mode, Router.ProtocolMode protocolMode) {
+		this.mode = mode;
+		this.protocolMode = protocolMode;
+	}
+
+	@Override
+	public String getName() {
+		String name = "convergence-" + mode.name().toLowerCase();
+		if (protocolMode != Router.ProtocolMode.BASIC) {
+			name += "-" + protocolMode.name().toLowerCase().replace('_', '-');
+		}
+		return name;
+	}
+
+	@Override
+	public boolean usesNeighbors() {
+		return true;
+	}
+
+	@Override
+	public boolean accepts(int size, int neighbors) {
+		return size <= MAX_ROUTERS && neighbors < size;
+	}
+
+	@Override
+	public boolean isSingleShot() {
+		return true;
+	}
+
+	@Override
+	public void setUp(int size, int neighbors) throws Exception {
+		LinkTable topology = BenchmarkData.newTopology(size, neighbors);
+		this.routerConfig = File.createTempFile("roteador", ".config");
+		this.linkConfig = File.createTempFile("enlaces", ".config");
+		BenchmarkData.writeConfig(topology, routerConfig, linkConfig);
+	}
+
+	@Override
+	public long operation() throws Exception {
+		RouterTable routerTable = new RouterTable(routerConfig.getPath());
+		routerTable.parseConfigFile();
+		LinkTable linkTable = new LinkTable(linkConfig.getPath());
+		linkTable.parseConfigFile();
+
+		Simulation simulation = new Simulation(routerTable, linkTable, Simulation.NULL_OUTPUT, mode);
+		simulation.setProtocol(protocolMode, 0);
+		long start = System.currentTimeMillis();
+		simulation.start();
+		try {
+			ConvergenceReport report;
+			do {
+				Thread.sleep(CHECK_INTERVAL);
+				report = simulation.verify(0);
+				if (System.currentTimeMillis() - start > TIMEOUT) {
+					throw new IllegalStateException("No convergence after " + TIMEOUT + " ms: " + report);
+				}
+			} while (!report.isConverged());
+			return System.currentTimeMillis() - start;
+		} finally {
+			simulation.stop();
+		}
+	}
+
+	@Override
+	public void tearDown() {
+		routerConfig.delete();
+		linkConfig.delete();
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.googlecode.routing.simulator.bench;
+
+import java.nio.ByteBuffer;
+
+import com.googlecode.routing.simulator.AdvertisementEncoder;
+import com.googlecode.routing.simulator.MessageHeader;
+import com.googlecode.routing.simulator.PathList;
+import com.googlecode.routing.simulator.Router;
+import com.googlecode.routing.simulator.WireFormat;
+
+/**
+ * Measures the decoding of every fragment of a full advertisement with {@link Router#deserialize}
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class DecodeBenchmark extends Benchmark {
+
+	private ByteBuffer[] fragments;
+
+	private MessageHeader header;
+
+	private PathList paths;
+
+	@Override
+	public String getName() {
+		return "decode";
+	}
+
+	@Override
+	public void setUp(int size, int neighbors) throws Exception {
+		AdvertisementEncoder encoder = new AdvertisementEncoder(EncodeBenchmark.FRAGMENT_SIZE);
+		int count = encoder.encode(WireFormat.TYPE_FULL, 0, 1, BenchmarkData.newRouter(size, 1).getSnapshot());
+		this.fragments = new ByteBuffer[count];
+		for (int i = 0; i < count; i++) {
+			ByteBuffer fragment = encoder.getFragment(i);
+			fragments[i] = ByteBuffer.allocate(fragment.remaining());
+			fragments[i].put(fragment.duplicate()).flip();
+		}
+		this.header = new MessageHeader();
+		this.paths = new PathList();
+	}
+
+	@Override
+	public long operation() {
+		paths.clear();
+		for (ByteBuffer fragment : fragments) {
+			fragment.rewind();
+			WireFormat.readHeader(fragment, header);
+			Router.deserialize(fragment, header, paths);
+		}
+		return paths.size();
+	}
+
+	@Override
+	public void tearDown() {
+		fragments = null;
+	}
+
+}
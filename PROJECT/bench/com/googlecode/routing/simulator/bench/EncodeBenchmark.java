@@ -0,0 +1,49 @@
+package com.googlecode.routing.simulator.bench;
+
+import com.googlecode.routing.simulator.AdvertisementEncoder;
+import com.googlecode.routing.simulator.TableSnapshot;
+import com.googlecode.routing.simulator.WireFormat;
+
+/**
+ * Measures the encoding of a whole distance vector into the fragments of a full advertisement
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class EncodeBenchmark extends Benchmark {
+
+	/**
+	 * Size of the fragments, the payload of a datagram on an ethernet link
+	 */
+	public static final int FRAGMENT_SIZE = 1472;
+
+	private TableSnapshot table;
+
+	private AdvertisementEncoder encoder;
+
+	private long sequence;
+
+	@Override
+	public String getName() {
+		return "encode";
+	}
+
+	@Override
+	public void setUp(int size, int neighbors) throws Exception {
+		this.table = BenchmarkData.newRouter(size, 1).getSnapshot();
+		this.encoder = new AdvertisementEncoder(FRAGMENT_SIZE);
+	}
+
+	@Override
+	public long operation() {
+		return encoder.encode(WireFormat.TYPE_FULL, 0, sequence++, table);
+	}
+
+	@Override
+	public void tearDown() {
+		table = null;
+		encoder = null;
+	}
+
+}
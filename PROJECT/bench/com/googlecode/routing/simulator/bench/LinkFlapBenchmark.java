@@ -0,0 +1,56 @@
+package com.googlecode.routing.simulator.bench;
+
+import com.googlecode.routing.simulator.Router;
+import com.googlecode.routing.simulator.RouterInfo;
+
+/**
+ * Measures {@link Router#updateLink(RouterInfo, double)} on a link that flaps between its cost and ten times its
+ * cost, so increases and decreases alternate
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class LinkFlapBenchmark extends Benchmark {
+
+	private Router router;
+
+	private RouterInfo neighbor;
+
+	private double cost;
+
+	private boolean raised;
+
+	@Override
+	public String getName() {
+		return "updateLink";
+	}
+
+	@Override
+	public boolean usesNeighbors() {
+		return true;
+	}
+
+	@Override
+	public void setUp(int size, int neighbors) throws Exception {
+		this.router = BenchmarkData.newRouter(size, neighbors);
+		this.neighbor = BenchmarkData.newRouterInfo(1);
+		this.cost = router.links.get(neighbor.id).cost;
+		this.raised = false;
+	}
+
+	@Override
+	public long operation() {
+		raised = !raised;
+		router.updateLink(neighbor, raised ? cost * 10 : cost);
+		long changes = router.pendingChanges.size();
+		router.pendingChanges.clear();
+		return changes;
+	}
+
+	@Override
+	public void tearDown() {
+		router = null;
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.googlecode.routing.simulator.bench;
+
+import java.util.Random;
+
+import com.googlecode.routing.simulator.LinkTable;
+
+/**
+ * Measures {@link LinkTable#getLinksForRouter(long)} on random routers of a topology with the given number of
+ * routers and average degree
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class LinksForRouterBenchmark extends Benchmark {
+
+	private LinkTable linkTable;
+
+	private Random random;
+
+	private int size;
+
+	@Override
+	public String getName() {
+		return "getLinksForRouter";
+	}
+
+	@Override
+	public boolean usesNeighbors() {
+		return true;
+	}
+
+	@Override
+	public boolean accepts(int size, int neighbors) {
+		return neighbors < size;
+	}
+
+	@Override
+	public void setUp(int size, int neighbors) {
+		this.linkTable = BenchmarkData.newTopology(size, neighbors);
+		this.linkTable.getRouterCount();
+		this.random = new Random(BenchmarkData.SEED);
+		this.size = size;
+	}
+
+	@Override
+	public long operation() {
+		return linkTable.getLinksForRouter(random.nextInt(size)).size();
+	}
+
+	@Override
+	public void tearDown() {
+		linkTable = null;
+	}
+
+}
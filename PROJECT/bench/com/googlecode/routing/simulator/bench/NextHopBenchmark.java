@@ -0,0 +1,54 @@
+package com.googlecode.routing.simulator.bench;
+
+import java.util.Random;
+
+import com.googlecode.routing.simulator.ForwardingTable;
+
+/**
+ * Measures {@link ForwardingTable#nextHop(long)} on random destinations of the forwarding table of a router
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class NextHopBenchmark extends Benchmark {
+
+	/**
+	 * Number of destinations looked up in turns, a power of two
+	 */
+	private static final int DESTINATIONS = 4096;
+
+	private ForwardingTable table;
+
+	private long[] destinations;
+
+	private int next;
+
+	@Override
+	public String getName() {
+		return "nextHop";
+	}
+
+	@Override
+	public void setUp(int size, int neighbors) throws Exception {
+		this.table = BenchmarkData.newRouter(size, 8).getForwardingTable();
+		Random random = new Random(BenchmarkData.SEED);
+		this.destinations = new long[DESTINATIONS];
+		for (int i = 0; i < DESTINATIONS; i++) {
+			destinations[i] = random.nextInt(Math.max(size, 9));
+		}
+		this.next = 0;
+	}
+
+	@Override
+	public long operation() {
+		next = (next + 1) & (DESTINATIONS - 1);
+		return table.nextHop(destinations[next]);
+	}
+
+	@Override
+	public void tearDown() {
+		table = null;
+	}
+
+}
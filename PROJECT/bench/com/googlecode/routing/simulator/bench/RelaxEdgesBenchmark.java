@@ -0,0 +1,63 @@
+package com.googlecode.routing.simulator.bench;
+
+import java.util.Random;
+
+import com.googlecode.routing.simulator.DistanceVector;
+import com.googlecode.routing.simulator.Router;
+
+/**
+ * Measures {@link Router#relaxEdges(long)} after a vector received from a neighbor changes one of its paths. The
+ * neighbors take turns, so every vector of the table is visited
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class RelaxEdgesBenchmark extends Benchmark {
+
+	private Router router;
+
+	private Random random;
+
+	private int neighbors;
+
+	private int next;
+
+	@Override
+	public String getName() {
+		return "relaxEdges";
+	}
+
+	@Override
+	public boolean usesNeighbors() {
+		return true;
+	}
+
+	@Override
+	public void setUp(int size, int neighbors) throws Exception {
+		this.router = BenchmarkData.newRouter(size, neighbors);
+		this.random = new Random(BenchmarkData.SEED);
+		this.neighbors = neighbors;
+		this.next = 0;
+	}
+
+	@Override
+	public long operation() {
+		long neighborID = 1 + next;
+		next = (next + 1) % neighbors;
+		DistanceVector vector = router.minimumPathTable.getVector(neighborID);
+		int i = random.nextInt(vector.capacity());
+		if (vector.contains(i) && vector.getDestination(i) != neighborID) {
+			vector.setCost(i, 1 + random.nextInt(BenchmarkData.MAX_COST * 10));
+		}
+		long changes = router.relaxEdges(neighborID).size();
+		router.pendingChanges.clear();
+		return changes;
+	}
+
+	@Override
+	public void tearDown() {
+		router = null;
+	}
+
+}
@@ -0,0 +1,102 @@
+package com.googlecode.routing.simulator.bench;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Random;
+
+import com.googlecode.routing.simulator.LinkInfo;
+import com.googlecode.routing.simulator.LinkTable;
+import com.googlecode.routing.simulator.RouterTable;
+import com.googlecode.routing.simulator.TopologyFile;
+
+/**
+ * Measures what a router process reads from the topology when it starts: the tables are loaded, either by parsing
+ * the configuration files or by mapping a compiled {@link TopologyFile}, and then the links of a random router and
+ * the metadata of its neighbors are looked up
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class StartupBenchmark extends Benchmark {
+
+	private final boolean mapped;
+
+	private File routerConfig;
+
+	private File linkConfig;
+
+	private File topologyFile;
+
+	private Random random;
+
+	private int size;
+
+	/**
+	 * Creates the benchmark
+	 * 
+	 * @param mapped true to map a compiled topology file, false to parse the configuration files
+	 */
+	public StartupBenchmark(boolean mapped) {
+		this.mapped = mapped;
+	}
+
+	@Override
+	public String getName() {
+		return mapped ? "startup-mapped" : "startup-text";
+	}
+
+	@Override
+	public boolean usesNeighbors() {
+		return true;
+	}
+
+	@Override
+	public boolean accepts(int size, int neighbors) {
+		return neighbors < size;
+	}
+
+	@Override
+	public void setUp(int size, int neighbors) throws Exception {
+		LinkTable topology = BenchmarkData.newTopology(size, neighbors);
+		this.routerConfig = File.createTempFile("roteador", ".config");
+		this.linkConfig = File.createTempFile("enlaces", ".config");
+		this.topologyFile = File.createTempFile("topologia", ".bin");
+		BenchmarkData.writeConfig(topology, routerConfig, linkConfig);
+		RouterTable routerTable = new RouterTable(routerConfig.getPath());
+		routerTable.parseConfigFile();
+		TopologyFile.compile(routerTable, topology, topologyFile.getPath());
+		this.random = new Random(BenchmarkData.SEED);
+		this.size = size;
+	}
+
+	@Override
+	public long operation() throws Exception {
+		RouterTable routerTable;
+		LinkTable linkTable;
+		if (mapped) {
+			TopologyFile topology = TopologyFile.open(topologyFile.getPath());
+			routerTable = new RouterTable(topology);
+			linkTable = new LinkTable(topology);
+		} else {
+			routerTable = new RouterTable(routerConfig.getPath());
+			routerTable.parseConfigFile();
+			linkTable = new LinkTable(linkConfig.getPath());
+			linkTable.parseConfigFile();
+		}
+		long id = random.nextInt(size);
+		long result = routerTable.getInfo(id).port;
+		for (Map.Entry<Long, LinkInfo> entry : linkTable.getLinksForRouter(id).entrySet()) {
+			result += routerTable.getInfo(entry.getKey()).port;
+		}
+		return result;
+	}
+
+	@Override
+	public void tearDown() {
+		routerConfig.delete();
+		linkConfig.delete();
+		topologyFile.delete();
+	}
+
+}
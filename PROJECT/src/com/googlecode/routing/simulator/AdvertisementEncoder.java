@@ -0,0 +1,157 @@
+package com.googlecode.routing.simulator;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes an advertisement into as many fragments as needed so that none of them is larger than the datagram size
+ * supported by the transport. The buffers of the fragments are kept and reused by the next advertisements
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class AdvertisementEncoder {
+
+	/**
+	 * Maximum size of each fragment
+	 */
+	private final int fragmentSize;
+
+	/**
+	 * Buffers of the fragments, only the first {@link #fragmentCount} belong to the current advertisement
+	 */
+	private final List<ByteBuffer> fragments;
+
+	/**
+	 * Number of fragments of the current advertisement
+	 */
+	private int fragmentCount;
+
+	/**
+	 * Header fields of the current advertisement
+	 */
+	private int type;
+	private long senderID;
+	private long sequence;
+
+	/**
+	 * State of the fragment being written
+	 */
+	private ByteBuffer current;
+	private int entryCountPosition;
+	private int entryCount;
+
+	/**
+	 * Creates an encoder whose fragments are never larger than the given size
+	 * 
+	 * @param fragmentSize usually the largest datagram supported by the transport
+	 */
+	public AdvertisementEncoder(int fragmentSize) {
+		if (fragmentSize < WireFormat.MAX_HEADER_SIZE + WireFormat.MAX_ENTRY_SIZE) {
+			throw new IllegalArgumentException("Fragment size too small: " + fragmentSize);
+		}
+		this.fragmentSize = fragmentSize;
+		this.fragments = new ArrayList<ByteBuffer>();
+	}
+
+	/**
+	 * Encodes a whole table as a single advertisement
+	 * 
+	 * @param type {@link WireFormat#TYPE_FULL} or {@link WireFormat#TYPE_DELTA}
+	 * @param senderID
+	 * @param sequence
+	 * @param vector
+	 * @return the number of fragments
+	 */
+	public int encode(int type, long senderID, long sequence, TableSnapshot vector) {
+		begin(type, senderID, sequence);
+		for (int i = 0; i < vector.capacity(); i++) {
+			if (vector.contains(i)) {
+				add(vector.getDestination(i), vector.getGateway(i), vector.getCost(i));
+			}
+		}
+		return finish();
+	}
+
+	/**
+	 * Starts a new advertisement, discarding the previous one
+	 * 
+	 * @param type
+	 * @param senderID
+	 * @param sequence
+	 */
+	public void begin(int type, long senderID, long sequence) {
+		this.type = type;
+		this.senderID = senderID;
+		this.sequence = sequence;
+		this.fragmentCount = 0;
+		startFragment();
+	}
+
+	/**
+	 * Adds an entry to the advertisement, starting a new fragment when the current one is full
+	 * 
+	 * @param destinationRouterID
+	 * @param gatewayRouterID
+	 * @param cost
+	 */
+	public void add(long destinationRouterID, long gatewayRouterID, double cost) {
+		if (current.remaining() < WireFormat.MAX_ENTRY_SIZE || entryCount == WireFormat.MAX_FRAGMENT_ENTRIES) {
+			endFragment(false);
+			startFragment();
+		}
+		WireFormat.writeEntry(current, destinationRouterID, gatewayRouterID, cost);
+		entryCount++;
+	}
+
+	/**
+	 * Closes the last fragment of the advertisement
+	 * 
+	 * @return the number of fragments
+	 */
+	public int finish() {
+		endFragment(true);
+		return fragmentCount;
+	}
+
+	/**
+	 * Returns a fragment of the last advertisement, ready to be read
+	 * 
+	 * @param index
+	 * @return the buffer that holds the fragment
+	 */
+	public ByteBuffer getFragment(int index) {
+		if (index >= fragmentCount) {
+			throw new IndexOutOfBoundsException("Fragment " + index + " of " + fragmentCount);
+		}
+		return fragments.get(index);
+	}
+
+	/**
+	 * Returns the number of fragments of the last advertisement
+	 * 
+	 * @return
+	 */
+	public int getFragmentCount() {
+		return fragmentCount;
+	}
+
+	private void startFragment() {
+		if (fragments.size() == fragmentCount) {
+			fragments.add(ByteBuffer.allocate(fragmentSize));
+		}
+		current = fragments.get(fragmentCount);
+		current.clear();
+		entryCountPosition = WireFormat.writeHeader(current, type, senderID, sequence, fragmentCount);
+		entryCount = 0;
+	}
+
+	private void endFragment(boolean lastFragment) {
+		WireFormat.finishFragment(current, entryCountPosition, entryCount, lastFragment);
+		current.flip();
+		fragmentCount++;
+	}
+
+}
@@ -0,0 +1,25 @@
+package com.googlecode.routing.simulator;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+
+/**
+ * Transport whose messages are taken by a thread blocked waiting for them, as done by {@link RouterServer#run()}.
+ * Event driven transports instead deliver the messages to a {@link PacketHandler}
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public interface BlockingTransport extends Transport {
+
+	/**
+	 * Blocks until a message arrives and fills the given packet with its content, length and the address and port
+	 * of the sender
+	 * 
+	 * @param packet The packet to be filled
+	 * @throws IOException
+	 */
+	void receive(DatagramPacket packet) throws IOException;
+
+}
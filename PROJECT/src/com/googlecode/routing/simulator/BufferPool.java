@@ -0,0 +1,87 @@
+package com.googlecode.routing.simulator;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct buffers of the same size, so that the I/O path does not allocate a new buffer per message
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class BufferPool {
+
+	/**
+	 * Size of each buffer
+	 */
+	private final int bufferSize;
+
+	/**
+	 * Maximum number of idle buffers kept by the pool
+	 */
+	private final int maxIdle;
+
+	/**
+	 * The idle buffers
+	 */
+	private final Queue<ByteBuffer> idle;
+
+	/**
+	 * Number of buffers inside {@link #idle}
+	 */
+	private final AtomicInteger idleCount;
+
+	/**
+	 * Creates an empty pool
+	 * 
+	 * @param bufferSize Size of each buffer
+	 * @param maxIdle Maximum number of idle buffers kept by the pool, the ones released beyond that are discarded
+	 */
+	public BufferPool(int bufferSize, int maxIdle) {
+		this.bufferSize = bufferSize;
+		this.maxIdle = maxIdle;
+		this.idle = new ConcurrentLinkedQueue<ByteBuffer>();
+		this.idleCount = new AtomicInteger();
+	}
+
+	/**
+	 * Takes a buffer from the pool, allocating a new one if the pool is empty
+	 * 
+	 * @return a cleared buffer
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = idle.poll();
+		if (buffer == null) {
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+		idleCount.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Gives a buffer back to the pool
+	 * 
+	 * @param buffer
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer.capacity() == bufferSize && idleCount.incrementAndGet() <= maxIdle) {
+			idle.offer(buffer);
+		} else if (buffer.capacity() == bufferSize) {
+			idleCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns the size of the buffers of this pool
+	 * 
+	 * @return
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+}
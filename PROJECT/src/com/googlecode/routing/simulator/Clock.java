@@ -0,0 +1,30 @@
+package com.googlecode.routing.simulator;
+
+/**
+ * Source of the time used by the protocol logic of the routers, so they can run either on the wall clock or on the
+ * virtual clock of an {@link EventSimulation}
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public interface Clock {
+
+	/**
+	 * The wall clock of the system
+	 */
+	Clock SYSTEM = new Clock() {
+		@Override
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+	};
+
+	/**
+	 * Returns the current time
+	 * 
+	 * @return the time in milliseconds
+	 */
+	long currentTimeMillis();
+
+}
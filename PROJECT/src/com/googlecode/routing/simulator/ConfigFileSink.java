@@ -0,0 +1,74 @@
+package com.googlecode.routing.simulator;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a generated topology as the configuration files read by {@link RouterTable} and {@link LinkTable}. Each
+ * router and link is written as soon as it is received
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class ConfigFileSink implements TopologySink {
+
+	/**
+	 * Writer of the configuration of the routers
+	 */
+	private final Writer routerWriter;
+
+	/**
+	 * Writer of the configuration of the links
+	 */
+	private final Writer linkWriter;
+
+	/**
+	 * Creates the configuration files, replacing any existing ones
+	 * 
+	 * @param routerConfigFilePath
+	 * @param linkConfigFilePath
+	 * @throws IOException
+	 */
+	public ConfigFileSink(String routerConfigFilePath, String linkConfigFilePath) throws IOException {
+		this.routerWriter = new BufferedWriter(new FileWriter(routerConfigFilePath), 1 << 16);
+		try {
+			this.linkWriter = new BufferedWriter(new FileWriter(linkConfigFilePath), 1 << 16);
+		} catch (IOException e) {
+			routerWriter.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void addRouter(RouterInfo info) throws IOException {
+		routerWriter.write(info.id + " " + info.port + " " + info.ipAddress.getHostAddress() + "\n");
+	}
+
+	@Override
+	public void addLink(long routerAID, long routerBID, double cost) throws IOException {
+		linkWriter.write(routerAID + " " + routerBID + " " + formatCost(cost) + "\n");
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			routerWriter.close();
+		} finally {
+			linkWriter.close();
+		}
+	}
+
+	/**
+	 * Writes integer costs without the decimal part, as on the hand written files
+	 */
+	private static String formatCost(double cost) {
+		if (cost == Math.rint(cost) && Math.abs(cost) < Long.MAX_VALUE) {
+			return String.valueOf((long) cost);
+		}
+		return String.valueOf(cost);
+	}
+
+}
@@ -0,0 +1,242 @@
+package com.googlecode.routing.simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Streaming tokenizer for the plain text configuration files. Reads the bytes straight from the stream into a
+ * reusable buffer and parses numbers in place, without creating a String per line or per field
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class ConfigReader {
+
+	/**
+	 * Size of the read buffer
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Powers of ten that are exactly representable as doubles, used by the fast path of {@link #readDouble()}
+	 */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13,
+			1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * Largest mantissa that is exactly representable as a double
+	 */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	private final InputStream in;
+
+	private final byte[] buffer;
+
+	/**
+	 * The bytes of the last token read, reused between tokens
+	 */
+	private byte[] token;
+
+	private int position;
+
+	private int limit;
+
+	/**
+	 * Number of the line being read, starting at one
+	 */
+	private int line;
+
+	/**
+	 * Creates a reader over the given stream, which is not closed by this reader
+	 * 
+	 * @param in
+	 */
+	public ConfigReader(InputStream in) {
+		this.in = in;
+		this.buffer = new byte[BUFFER_SIZE];
+		this.token = new byte[64];
+		this.line = 1;
+	}
+
+	/**
+	 * Skips blanks and line breaks until the beginning of the next non empty line
+	 * 
+	 * @return false if the end of the stream was reached
+	 * @throws IOException
+	 */
+	public boolean nextLine() throws IOException {
+		int c;
+		while ((c = peek()) >= 0) {
+			if (c == '\n') {
+				line++;
+			} else if (!isBlank(c)) {
+				return true;
+			}
+			position++;
+		}
+		return false;
+	}
+
+	/**
+	 * Skips the blanks of the current line and checks if there is another token on it
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public boolean hasToken() throws IOException {
+		int c;
+		while ((c = peek()) >= 0 && isBlank(c)) {
+			position++;
+		}
+		return c >= 0 && c != '\n';
+	}
+
+	/**
+	 * Reads the next token of the current line as a long
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public long readLong() throws IOException {
+		requireToken();
+		boolean negative = false;
+		int c = peek();
+		if (c == '-' || c == '+') {
+			negative = c == '-';
+			position++;
+		}
+		long value = 0;
+		int digits = 0;
+		while ((c = peek()) >= '0' && c <= '9') {
+			if (value > (Long.MAX_VALUE - (c - '0')) / 10) {
+				throw error("Number too large");
+			}
+			value = value * 10 + (c - '0');
+			digits++;
+			position++;
+		}
+		if (digits == 0 || !isDelimiter(c)) {
+			throw error("Invalid integer");
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Reads the next token of the current line as a double. Plain decimal numbers are parsed in place; numbers that
+	 * can not be converted exactly that way fall back to {@link Double#parseDouble(String)}
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public double readDouble() throws IOException {
+		int length = readTokenBytes();
+		int i = 0;
+		boolean negative = false;
+		if (token[0] == '-' || token[0] == '+') {
+			negative = token[0] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int scale = 0;
+		int digits = 0;
+		boolean fraction = false;
+		boolean plain = true;
+		for (; i < length && plain; i++) {
+			byte c = token[i];
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (fraction) {
+					scale++;
+				}
+				plain = mantissa < MAX_EXACT_MANTISSA;
+			} else if (c == '.' && !fraction) {
+				fraction = true;
+			} else {
+				plain = false;
+			}
+		}
+		if (plain && digits > 0 && scale < POWERS_OF_TEN.length) {
+			double value = mantissa / POWERS_OF_TEN[scale];
+			return negative ? -value : value;
+		}
+		try {
+			return Double.parseDouble(new String(token, 0, length, "US-ASCII"));
+		} catch (NumberFormatException e) {
+			throw error("Invalid number");
+		}
+	}
+
+	/**
+	 * Reads the next token of the current line as a String
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public String readToken() throws IOException {
+		int length = readTokenBytes();
+		return new String(token, 0, length, "US-ASCII");
+	}
+
+	/**
+	 * Returns the number of the line being read
+	 * 
+	 * @return
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * Copies the bytes of the next token of the current line to {@link #token}
+	 * 
+	 * @return the length of the token
+	 * @throws IOException
+	 */
+	private int readTokenBytes() throws IOException {
+		requireToken();
+		int length = 0;
+		int c;
+		while (!isDelimiter(c = peek())) {
+			if (length == token.length) {
+				token = Arrays.copyOf(token, length * 2);
+			}
+			token[length++] = (byte) c;
+			position++;
+		}
+		return length;
+	}
+
+	private void requireToken() throws IOException {
+		if (!hasToken()) {
+			throw error("Missing field");
+		}
+	}
+
+	private IOException error(String message) {
+		return new IOException(message + " on line " + line);
+	}
+
+	private int peek() throws IOException {
+		if (position == limit) {
+			limit = in.read(buffer, 0, buffer.length);
+			position = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[position] & 0xFF;
+	}
+
+	private static boolean isBlank(int c) {
+		return c == ' ' || c == '\t' || c == '\r';
+	}
+
+	private static boolean isDelimiter(int c) {
+		return c < 0 || c == '\n' || isBlank(c);
+	}
+
+}
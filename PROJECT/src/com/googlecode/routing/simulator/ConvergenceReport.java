@@ -0,0 +1,163 @@
+package com.googlecode.routing.simulator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of the comparison of the distance tables of the routers with the shortest paths of the network, made by
+ * {@link ShortestPathOracle}. Every wrong path is counted, but only the first ones are kept with their details
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class ConvergenceReport {
+
+	/**
+	 * A path of a router that differs from the shortest path
+	 */
+	public static class Mismatch {
+
+		/**
+		 * The router that owns the path
+		 */
+		public final long routerID;
+
+		/**
+		 * The destination of the path
+		 */
+		public final long destinationRouterID;
+
+		/**
+		 * The cost of the shortest path
+		 */
+		public final double expectedCost;
+
+		/**
+		 * The cost known by the router
+		 */
+		public final double cost;
+
+		/**
+		 * The gateway used by the router, -1 if it has no path
+		 */
+		public final long gateway;
+
+		public Mismatch(long routerID, long destinationRouterID, double expectedCost, double cost, long gateway) {
+			this.routerID = routerID;
+			this.destinationRouterID = destinationRouterID;
+			this.expectedCost = expectedCost;
+			this.cost = cost;
+			this.gateway = gateway;
+		}
+
+		@Override
+		public String toString() {
+			return routerID + " -> " + destinationRouterID + ": esperado " + format(expectedCost) + ", encontrado "
+					+ format(cost) + " via " + gateway;
+		}
+
+		private static String format(double cost) {
+			return cost == Router.INFINITY ? "N/A" : String.valueOf(cost);
+		}
+	}
+
+	/**
+	 * Maximum number of mismatches kept with their details
+	 */
+	private final int maxReported;
+
+	/**
+	 * The first mismatches found
+	 */
+	private final List<Mismatch> mismatches;
+
+	/**
+	 * Number of paths checked
+	 */
+	long checked;
+
+	/**
+	 * Number of wrong paths found
+	 */
+	long mismatchCount;
+
+	/**
+	 * Creates an empty report
+	 * 
+	 * @param maxReported Maximum number of mismatches kept with their details
+	 */
+	public ConvergenceReport(int maxReported) {
+		this.maxReported = maxReported;
+		this.mismatches = new ArrayList<Mismatch>();
+	}
+
+	void addMismatch(long routerID, long destinationRouterID, double expectedCost, double cost, long gateway) {
+		mismatchCount++;
+		if (mismatches.size() < maxReported) {
+			mismatches.add(new Mismatch(routerID, destinationRouterID, expectedCost, cost, gateway));
+		}
+	}
+
+	void merge(ConvergenceReport other) {
+		checked += other.checked;
+		mismatchCount += other.mismatchCount;
+		for (Mismatch mismatch : other.mismatches) {
+			if (mismatches.size() >= maxReported) {
+				break;
+			}
+			mismatches.add(mismatch);
+		}
+	}
+
+	/**
+	 * Tells if every checked path is a shortest path
+	 * 
+	 * @return
+	 */
+	public boolean isConverged() {
+		return mismatchCount == 0;
+	}
+
+	/**
+	 * Returns the number of paths checked
+	 * 
+	 * @return
+	 */
+	public long getChecked() {
+		return checked;
+	}
+
+	/**
+	 * Returns the number of wrong paths found
+	 * 
+	 * @return
+	 */
+	public long getMismatchCount() {
+		return mismatchCount;
+	}
+
+	/**
+	 * Returns the first mismatches found
+	 * 
+	 * @return
+	 */
+	public List<Mismatch> getMismatches() {
+		return Collections.unmodifiableList(mismatches);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(mismatchCount).append(" divergencias em ").append(checked).append(" caminhos");
+		for (Mismatch mismatch : mismatches) {
+			builder.append("\n\t").append(mismatch);
+		}
+		if (mismatchCount > mismatches.size()) {
+			builder.append("\n\t...");
+		}
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,287 @@
+package com.googlecode.routing.simulator;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Distance vector stored as a structure of arrays: the cost and the gateway of each destination are kept in
+ * primitive arrays addressed by the index of the destination on a {@link RouterIndex}
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class DistanceVector {
+
+	/**
+	 * Cost stored for destinations that are not in the vector
+	 */
+	private static final double ABSENT = Double.NaN;
+
+	/**
+	 * The index that maps the ids of the destinations to positions on the arrays
+	 */
+	private final RouterIndex index;
+
+	/**
+	 * The cost to reach each destination
+	 */
+	private double[] costs;
+
+	/**
+	 * The gateway used to reach each destination
+	 */
+	private long[] gateways;
+
+	/**
+	 * Number of destinations in the vector
+	 */
+	private int size;
+
+	/**
+	 * Creates an empty vector
+	 * 
+	 * @param index The index of the destinations, usually shared by all the vectors of a router
+	 */
+	public DistanceVector(RouterIndex index) {
+		this.index = index;
+		this.costs = new double[Math.max(index.size(), 16)];
+		this.gateways = new long[costs.length];
+		Arrays.fill(costs, ABSENT);
+	}
+
+	/**
+	 * Creates a copy of the given vector addressed by the given index, which must hold the same destinations on
+	 * the same positions as the index of the source vector (usually a copy of it)
+	 * 
+	 * @param source
+	 * @param index
+	 */
+	public DistanceVector(DistanceVector source, RouterIndex index) {
+		this.index = index;
+		this.costs = Arrays.copyOf(source.costs, Math.min(source.costs.length, Math.max(index.size(), 16)));
+		this.gateways = Arrays.copyOf(source.gateways, costs.length);
+		this.size = source.size;
+	}
+
+	/**
+	 * Returns the index of the destinations of this vector
+	 * 
+	 * @return
+	 */
+	public RouterIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns an upper bound (exclusive) of the indices of the destinations of this vector
+	 * 
+	 * @return
+	 */
+	public int capacity() {
+		return costs.length;
+	}
+
+	/**
+	 * Returns the number of destinations in the vector
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Checks if there is a path to the destination with the given index
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public boolean contains(int i) {
+		return i >= 0 && i < costs.length && !Double.isNaN(costs[i]);
+	}
+
+	/**
+	 * Returns the cost to the destination with the given index, which must be in the vector
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public double getCost(int i) {
+		return costs[i];
+	}
+
+	/**
+	 * Returns the gateway to the destination with the given index, which must be in the vector
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public long getGateway(int i) {
+		return gateways[i];
+	}
+
+	/**
+	 * Returns the id of the destination with the given index
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public long getDestination(int i) {
+		return index.idOf(i);
+	}
+
+	/**
+	 * Sets the path to the destination with the given index
+	 * 
+	 * @param i
+	 * @param cost
+	 * @param gateway
+	 */
+	public void set(int i, double cost, long gateway) {
+		if (i >= costs.length) {
+			grow(i + 1);
+		}
+		if (Double.isNaN(costs[i])) {
+			size++;
+		}
+		costs[i] = cost;
+		gateways[i] = gateway;
+	}
+
+	/**
+	 * Sets the cost to the destination with the given index, which must be in the vector
+	 * 
+	 * @param i
+	 * @param cost
+	 */
+	public void setCost(int i, double cost) {
+		costs[i] = cost;
+	}
+
+	/**
+	 * Sets the path to the destination with the given id, indexing it if needed
+	 * 
+	 * @param destinationRouterID
+	 * @param cost
+	 * @param gateway
+	 */
+	public void put(long destinationRouterID, double cost, long gateway) {
+		set(index.getOrAdd(destinationRouterID), cost, gateway);
+	}
+
+	/**
+	 * Removes all the destinations, keeping the allocated space
+	 */
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(costs, ABSENT);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Returns the path to the given destination as a new {@link PathInfo}
+	 * 
+	 * @param destinationRouterID
+	 * @return the path, or null if the destination is not in the vector
+	 */
+	public PathInfo getPath(long destinationRouterID) {
+		int i = index.indexOf(destinationRouterID);
+		return contains(i) ? toPathInfo(i) : null;
+	}
+
+	/**
+	 * Returns a read-only view of this vector as a map from the id of the destination to its path. Each access
+	 * creates new {@link PathInfo}s, so this view is meant for printing and inspection, not for the hot paths
+	 * 
+	 * @return
+	 */
+	public Map<Long, PathInfo> asMap() {
+		return new AbstractMap<Long, PathInfo>() {
+
+			@Override
+			public PathInfo get(Object key) {
+				return key instanceof Long ? getPath((Long) key) : null;
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return key instanceof Long && contains(index.indexOf((Long) key));
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Set<Entry<Long, PathInfo>> entrySet() {
+				return new AbstractSet<Entry<Long, PathInfo>>() {
+
+					@Override
+					public int size() {
+						return size;
+					}
+
+					@Override
+					public Iterator<Entry<Long, PathInfo>> iterator() {
+						return new Iterator<Entry<Long, PathInfo>>() {
+
+							private int next = advance(0);
+
+							@Override
+							public boolean hasNext() {
+								return next < costs.length;
+							}
+
+							@Override
+							public Entry<Long, PathInfo> next() {
+								if (!hasNext()) {
+									throw new NoSuchElementException();
+								}
+								PathInfo path = toPathInfo(next);
+								next = advance(next + 1);
+								return new SimpleImmutableEntry<Long, PathInfo>(path.destinationRouterID, path);
+							}
+
+							@Override
+							public void remove() {
+								throw new UnsupportedOperationException();
+							}
+
+							private int advance(int from) {
+								while (from < costs.length && Double.isNaN(costs[from])) {
+									from++;
+								}
+								return from;
+							}
+						};
+					}
+				};
+			}
+		};
+	}
+
+	private PathInfo toPathInfo(int i) {
+		PathInfo path = new PathInfo();
+		path.destinationRouterID = index.idOf(i);
+		path.gatewayRouterID = gateways[i];
+		path.cost = costs[i];
+		return path;
+	}
+
+	private void grow(int minCapacity) {
+		int oldCapacity = costs.length;
+		int newCapacity = Math.max(oldCapacity * 2, minCapacity);
+		costs = Arrays.copyOf(costs, newCapacity);
+		gateways = Arrays.copyOf(gateways, newCapacity);
+		Arrays.fill(costs, oldCapacity, newCapacity, ABSENT);
+	}
+
+}
@@ -0,0 +1,1019 @@
+package com.googlecode.routing.simulator;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs every router of the network inside a single thread, on a virtual clock. The periodic rounds of the clients,
+ * the deliveries of the messages and the changes of the links are events kept on a priority queue ordered by their
+ * time, and the clock jumps from one event to the next, so hours of protocol run in seconds and the routers never
+ * race each other.
+ * 
+ * Every random choice (the offsets of the rounds, the latency jitter and the losses) comes from a single generator
+ * created from a seed, so two runs with the same seed, topology and scenario produce exactly the same events.
+ * 
+ * Besides the routing messages, flows of data packets may be injected between pairs of routers. Each router forwards
+ * them hop by hop through its {@link ForwardingTable}, so the packets follow the paths known at each instant and the
+ * {@link TrafficStats} show what the convergence costs to the traffic: packets without a route, sent through links
+ * that are down or caught in loops
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class EventSimulation implements Clock {
+
+	/**
+	 * Default latency of every link, in milliseconds
+	 */
+	public static final long DEFAULT_LATENCY = 10;
+
+	/**
+	 * Default maximum latency added at random to each message, in milliseconds
+	 */
+	public static final long DEFAULT_JITTER = 5;
+
+	/**
+	 * Default limit of the virtual time given to the routers to converge, in milliseconds
+	 */
+	public static final long DEFAULT_CONVERGENCE_LIMIT = 3600000;
+
+	/**
+	 * Default number of hops after which a data packet is considered caught in a loop and dropped, the largest time
+	 * to live of IPv4. It must be larger than the longest shortest path of the network
+	 */
+	public static final int DEFAULT_TTL = 255;
+
+	/**
+	 * Default rate of the flows generated at random, in packets per second
+	 */
+	public static final double DEFAULT_FLOW_RATE = 10;
+
+	/**
+	 * A stream of data packets sent at a constant rate from a router to another
+	 */
+	public static class Flow {
+
+		/**
+		 * The router that sends the packets
+		 */
+		public final long source;
+
+		/**
+		 * The router that receives the packets
+		 */
+		public final long destination;
+
+		/**
+		 * Number of packets sent per second of virtual time
+		 */
+		public final double packetsPerSecond;
+
+		/**
+		 * Virtual time of the first packet, in milliseconds
+		 */
+		public final long start;
+
+		/**
+		 * The counters of the packets of this flow
+		 */
+		public final TrafficStats stats;
+
+		Flow(long source, long destination, double packetsPerSecond, long start) {
+			this.source = source;
+			this.destination = destination;
+			this.packetsPerSecond = packetsPerSecond;
+			this.start = start;
+			this.stats = new TrafficStats();
+		}
+
+		/**
+		 * Returns the rate of the packets delivered since the flow started
+		 * 
+		 * @param now The current virtual time, in milliseconds
+		 * @return in packets per second
+		 */
+		public double getThroughput(long now) {
+			return now <= start ? 0 : stats.delivered * 1000.0 / (now - start);
+		}
+
+		@Override
+		public String toString() {
+			return "[" + source + " -> " + destination + "] " + stats;
+		}
+	}
+
+	/**
+	 * Something that happens at a given instant of the virtual time
+	 */
+	private abstract static class Event implements Comparable<Event> {
+
+		final long time;
+
+		/**
+		 * Order in which the event was scheduled, breaking the ties between events of the same instant
+		 */
+		final long sequence;
+
+		Event(long time, long sequence) {
+			this.time = time;
+			this.sequence = sequence;
+		}
+
+		abstract void run();
+
+		@Override
+		public int compareTo(Event other) {
+			if (time != other.time) {
+				return time < other.time ? -1 : 1;
+			}
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+	}
+
+	/**
+	 * A periodic round of the client of a router
+	 */
+	private class Round extends Event {
+
+		final RouterClient client;
+
+		Round(long time, RouterClient client) {
+			super(time, nextSequence++);
+			this.client = client;
+		}
+
+		@Override
+		void run() {
+			client.tick();
+			events.add(new Round(time + Router.SLEEP_TIME, client));
+		}
+	}
+
+	/**
+	 * The arrival of a message at a router
+	 */
+	private class Delivery extends Event {
+
+		final RouterInfo source;
+
+		final long destinationID;
+
+		final byte[] data;
+
+		Delivery(long time, RouterInfo source, long destinationID, byte[] data) {
+			super(time, nextSequence++);
+			this.source = source;
+			this.destinationID = destinationID;
+			this.data = data;
+		}
+
+		@Override
+		void run() {
+			if (!isLinkUp(source.id, destinationID)) {
+				droppedMessages++;
+				return;
+			}
+			transports.get(destinationID).handler.handlePacket(source.ipAddress, source.port, ByteBuffer.wrap(data));
+		}
+	}
+
+	/**
+	 * A link going down or coming back
+	 */
+	private class LinkChange extends Event {
+
+		final int link;
+
+		final boolean up;
+
+		LinkChange(long time, int link, boolean up) {
+			super(time, nextSequence++);
+			this.link = link;
+			this.up = up;
+		}
+
+		@Override
+		void run() {
+			if (linkDown[link] == up) {
+				linkDown[link] = !up;
+				oracle = null;
+			}
+		}
+	}
+
+	/**
+	 * The injection of the next packet of a flow
+	 */
+	private class Injection extends Event {
+
+		final Flow flow;
+
+		/**
+		 * Number of packets of the flow injected before this one
+		 */
+		final long count;
+
+		Injection(long time, Flow flow, long count) {
+			super(time, nextSequence++);
+			this.flow = flow;
+			this.count = count;
+		}
+
+		@Override
+		void run() {
+			flow.stats.sent++;
+			traffic.sent++;
+			forward(flow, traffic, flow.source, ttl, 0, time);
+			events.add(new Injection(flow.start + Math.round((count + 1) * 1000 / flow.packetsPerSecond), flow,
+					count + 1));
+		}
+	}
+
+	/**
+	 * The arrival of a data packet at the next router of its path
+	 */
+	private class DataPacket extends Event {
+
+		final Flow flow;
+
+		/**
+		 * The counters of the interval the packet was sent in
+		 */
+		final TrafficStats phase;
+
+		final long fromRouterID;
+
+		final long routerID;
+
+		final int ttl;
+
+		final int hops;
+
+		final long sentTime;
+
+		DataPacket(long time, Flow flow, TrafficStats phase, long fromRouterID, long routerID, int ttl, int hops,
+				long sentTime) {
+			super(time, nextSequence++);
+			this.flow = flow;
+			this.phase = phase;
+			this.fromRouterID = fromRouterID;
+			this.routerID = routerID;
+			this.ttl = ttl;
+			this.hops = hops;
+			this.sentTime = sentTime;
+		}
+
+		@Override
+		void run() {
+			flow.stats.inFlight--;
+			phase.inFlight--;
+			if (!isLinkUp(fromRouterID, routerID)) {
+				flow.stats.linkDown++;
+				phase.linkDown++;
+				return;
+			}
+			forward(flow, phase, routerID, ttl, hops, sentTime);
+		}
+	}
+
+	/**
+	 * Transport of a router that turns each message sent into a future {@link Delivery}. It is event driven rather
+	 * than a {@link BlockingTransport}: the delivery hands the message to the {@link RouterServer} of the destination
+	 * as its {@link PacketHandler}, so no thread ever waits on it
+	 */
+	private class SimulatedTransport implements Transport {
+
+		private final RouterInfo routerInfo;
+
+		/**
+		 * The server of the router, called by the deliveries
+		 */
+		PacketHandler handler;
+
+		SimulatedTransport(RouterInfo routerInfo) {
+			this.routerInfo = routerInfo;
+		}
+
+		@Override
+		public void send(RouterInfo destination, byte[] data, int length) throws IOException {
+			if (!isLinkUp(routerInfo.id, destination.id) || (lossRate > 0 && random.nextDouble() < lossRate)) {
+				droppedMessages++;
+				return;
+			}
+			events.add(new Delivery(now + nextDelay(), routerInfo, destination.id, Arrays.copyOf(data, length)));
+		}
+
+		@Override
+		public boolean setHandler(PacketHandler packetHandler) {
+			this.handler = packetHandler;
+			return true;
+		}
+
+		@Override
+		public int getMaxDatagramSize() {
+			return InMemoryNetwork.DEFAULT_MAX_DATAGRAM_SIZE;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * The events not yet run, ordered by time
+	 */
+	private final PriorityQueue<Event> events;
+
+	/**
+	 * Source of every random choice of the simulation
+	 */
+	private final Random random;
+
+	/**
+	 * The routers of the simulation, indexed by their ids
+	 */
+	private final Map<Long, Router> routers;
+
+	/**
+	 * The transport of each router, indexed by the id of the router
+	 */
+	private final Map<Long, SimulatedTransport> transports;
+
+	/**
+	 * All the links of the network, including the ones that are down
+	 */
+	private final LinkTable linkTable;
+
+	/**
+	 * Which links of {@link #linkTable} are down
+	 */
+	private final boolean[] linkDown;
+
+	/**
+	 * Reference used to check the tables of the routers against the links that are up, rebuilt after the links
+	 * change
+	 */
+	private ShortestPathOracle oracle;
+
+	/**
+	 * The current virtual time, in milliseconds
+	 */
+	private long now;
+
+	/**
+	 * Sequence given to the next event scheduled
+	 */
+	private long nextSequence;
+
+	/**
+	 * Number of events run so far
+	 */
+	private long processedEvents;
+
+	/**
+	 * Number of messages lost or sent through links that are down
+	 */
+	private long droppedMessages;
+
+	/**
+	 * Fixed latency of every message, in milliseconds
+	 */
+	private long latency;
+
+	/**
+	 * Maximum latency added at random to each message, in milliseconds
+	 */
+	private long jitter;
+
+	/**
+	 * Probability of each message being lost
+	 */
+	private double lossRate;
+
+	/**
+	 * The flows of data packets, in the order they were added
+	 */
+	private final List<Flow> flows;
+
+	/**
+	 * The counters of all the data packets sent since the last call to {@link #resetTrafficStats()}
+	 */
+	private TrafficStats traffic;
+
+	/**
+	 * Number of hops after which a data packet is dropped
+	 */
+	private int ttl;
+
+	/**
+	 * Creates all the routers found on the router table and schedules the first round of each one at a random
+	 * instant of the first period
+	 * 
+	 * @param routerTable The table with the metadata of all the routers of the network
+	 * @param linkTable The table with all the links of the network
+	 * @param out The stream shared by the routers to output messages
+	 * @param seed The seed of every random choice of the simulation
+	 */
+	public EventSimulation(RouterTable routerTable, LinkTable linkTable, PrintStream out, long seed) {
+		this.events = new PriorityQueue<Event>();
+		this.random = new Random(seed);
+		this.routers = new HashMap<Long, Router>();
+		this.transports = new HashMap<Long, SimulatedTransport>();
+		this.linkTable = linkTable;
+		this.linkDown = new boolean[linkTable.getLinkCount()];
+		this.latency = DEFAULT_LATENCY;
+		this.jitter = DEFAULT_JITTER;
+		this.flows = new ArrayList<Flow>();
+		this.traffic = new TrafficStats();
+		this.ttl = DEFAULT_TTL;
+		for (RouterInfo info : routerTable.getRouters()) {
+			Router router = Main.createRouter(info, routerTable, linkTable, out, this);
+			SimulatedTransport transport = new SimulatedTransport(info);
+			router.initTransport(transport);
+			RouterClient client = new RouterClient(router);
+			new RouterServer(router, client).listen();
+			routers.put(info.id, router);
+			transports.put(info.id, transport);
+			events.add(new Round(random.nextInt((int) Router.SLEEP_TIME), client));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long currentTimeMillis() {
+		return now;
+	}
+
+	/**
+	 * Sets the delay of the messages
+	 * 
+	 * @param latency Fixed latency of every message, in milliseconds
+	 * @param jitter Maximum latency added at random to each message, in milliseconds
+	 */
+	public void setLatency(long latency, long jitter) {
+		this.latency = latency;
+		this.jitter = jitter;
+	}
+
+	/**
+	 * Sets the probability of each message being lost
+	 * 
+	 * @param lossRate between zero and one
+	 */
+	public void setLossRate(double lossRate) {
+		this.lossRate = lossRate;
+	}
+
+	/**
+	 * Selects the protocol run by every router
+	 * 
+	 * @param protocolMode What is advertised to each neighbor
+	 * @param holdDownTime Duration of the hold-down of the paths that get worse, in milliseconds, or zero to disable
+	 *            it
+	 */
+	public void setProtocol(Router.ProtocolMode protocolMode, long holdDownTime) {
+		for (Router router : routers.values()) {
+			router.protocolMode = protocolMode;
+			router.holdDownTime = holdDownTime;
+		}
+	}
+
+	/**
+	 * Schedules the failure of the link between the given routers. The messages in flight through the link are lost
+	 * 
+	 * @param routerAID
+	 * @param routerBID
+	 * @param time The virtual time of the failure, in milliseconds
+	 * @throws IllegalArgumentException if the routers are not linked
+	 */
+	public void failLink(long routerAID, long routerBID, long time) {
+		events.add(new LinkChange(Math.max(time, now), findLink(routerAID, routerBID), false));
+	}
+
+	/**
+	 * Schedules the recovery of the link between the given routers
+	 * 
+	 * @param routerAID
+	 * @param routerBID
+	 * @param time The virtual time of the recovery, in milliseconds
+	 * @throws IllegalArgumentException if the routers are not linked
+	 */
+	public void restoreLink(long routerAID, long routerBID, long time) {
+		events.add(new LinkChange(Math.max(time, now), findLink(routerAID, routerBID), true));
+	}
+
+	/**
+	 * Runs every event up to the given virtual time, which becomes the current time
+	 * 
+	 * @param time in milliseconds
+	 */
+	public void runUntil(long time) {
+		while (!events.isEmpty() && events.peek().time <= time) {
+			Event event = events.poll();
+			now = event.time;
+			processedEvents++;
+			event.run();
+		}
+		now = Math.max(now, time);
+	}
+
+	/**
+	 * Runs the events until the tables of the routers match the shortest paths through the links that are up. The
+	 * tables are checked every {@link Router#SLEEP_TIME} of virtual time
+	 * 
+	 * @param limit The virtual time after which the routers are given up, in milliseconds
+	 * @return the virtual time of the last change of a table before they were found correct, or -1 if they did not
+	 *         converge until the limit
+	 */
+	public long runUntilConverged(long limit) {
+		while (now < limit) {
+			runUntil(Math.min(now + Router.SLEEP_TIME, limit));
+			if (verify(0).isConverged()) {
+				return getLastChangeTime();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Compares the distance tables of the routers with the shortest paths through the links that are up
+	 * 
+	 * @param maxReported Maximum number of mismatches kept with their details on the report
+	 * @return
+	 */
+	public ConvergenceReport verify(int maxReported) {
+		if (oracle == null) {
+			LinkTable links = new LinkTable();
+			for (int link = 0; link < linkDown.length; link++) {
+				if (!linkDown[link]) {
+					links.addLink(linkTable.getLinkA(link), linkTable.getLinkB(link), linkTable.getLinkCost(link));
+				}
+			}
+			oracle = new ShortestPathOracle(links);
+		}
+		return oracle.verify(routers, maxReported);
+	}
+
+	/**
+	 * Returns the virtual time of the last change of the table of any router
+	 * 
+	 * @return in milliseconds
+	 */
+	public long getLastChangeTime() {
+		long last = 0;
+		for (Router router : routers.values()) {
+			last = Math.max(last, now - router.metrics.getMillisSinceLastChange());
+		}
+		return last;
+	}
+
+	/**
+	 * Returns the number of messages sent by all the routers so far
+	 * 
+	 * @return
+	 */
+	public long getPacketsSent() {
+		long packets = 0;
+		for (Router router : routers.values()) {
+			packets += router.metrics.getPacketsOut();
+		}
+		return packets;
+	}
+
+	/**
+	 * Returns the number of messages lost or sent through links that are down so far
+	 * 
+	 * @return
+	 */
+	public long getDroppedMessages() {
+		return droppedMessages;
+	}
+
+	/**
+	 * Returns the number of events run so far
+	 * 
+	 * @return
+	 */
+	public long getProcessedEvents() {
+		return processedEvents;
+	}
+
+	/**
+	 * Returns the routers of the simulation
+	 * 
+	 * @return an unmodifiable map of the routers indexed by their ids
+	 */
+	public Map<Long, Router> getRouters() {
+		return Collections.unmodifiableMap(routers);
+	}
+
+	/**
+	 * Sets the number of hops after which a data packet is considered caught in a loop and dropped
+	 * 
+	 * @param ttl
+	 */
+	public void setTimeToLive(int ttl) {
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Adds a flow of data packets, sent at a constant rate from the given time on
+	 * 
+	 * @param source The router that sends the packets
+	 * @param destination The router that receives the packets
+	 * @param packetsPerSecond Number of packets sent per second of virtual time
+	 * @param start Virtual time of the first packet, in milliseconds
+	 * @return the flow, whose counters are updated as the simulation runs
+	 * @throws IllegalArgumentException if a router is unknown or the rate is not positive
+	 */
+	public Flow addFlow(long source, long destination, double packetsPerSecond, long start) {
+		if (!routers.containsKey(source) || !routers.containsKey(destination)) {
+			throw new IllegalArgumentException("Unknown router on flow " + source + " -> " + destination);
+		}
+		if (!(packetsPerSecond > 0)) {
+			throw new IllegalArgumentException("Invalid rate of flow " + source + " -> " + destination + ": "
+					+ packetsPerSecond);
+		}
+		Flow flow = new Flow(source, destination, packetsPerSecond, Math.max(start, now));
+		flows.add(flow);
+		events.add(new Injection(flow.start, flow, 0));
+		return flow;
+	}
+
+	/**
+	 * Adds flows between pairs of distinct routers drawn at random, each one starting at a random instant of its
+	 * first period
+	 * 
+	 * @param count The number of flows
+	 * @param packetsPerSecond Number of packets sent per second by each flow
+	 */
+	public void addRandomFlows(int count, double packetsPerSecond) {
+		long[] ids = sortedRouterIDs();
+		if (ids.length < 2) {
+			return;
+		}
+		for (int i = 0; i < count; i++) {
+			int source = random.nextInt(ids.length);
+			int destination = random.nextInt(ids.length - 1);
+			if (destination >= source) {
+				destination++;
+			}
+			addFlow(ids[source], ids[destination], packetsPerSecond, now + firstOffset(packetsPerSecond));
+		}
+	}
+
+	/**
+	 * Adds a flow from every router to every other router, each one starting at a random instant of its first period
+	 * 
+	 * @param packetsPerSecond Number of packets sent per second by each flow
+	 */
+	public void addAllPairsFlows(double packetsPerSecond) {
+		long[] ids = sortedRouterIDs();
+		for (long source : ids) {
+			for (long destination : ids) {
+				if (source != destination) {
+					addFlow(source, destination, packetsPerSecond, now + firstOffset(packetsPerSecond));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the flows of a traffic matrix file, where each line holds the ids of the source and destination routers
+	 * and the rate of the flow in packets per second
+	 * 
+	 * @param trafficFilePath
+	 * @throws IOException
+	 * @throws IllegalArgumentException if a router is unknown or a rate is not positive
+	 */
+	public void loadFlows(String trafficFilePath) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(trafficFilePath), 1 << 16);
+		try {
+			ConfigReader reader = new ConfigReader(in);
+			while (reader.nextLine()) {
+				long source = reader.readLong();
+				long destination = reader.readLong();
+				double packetsPerSecond = reader.readDouble();
+				addFlow(source, destination, packetsPerSecond, now + firstOffset(packetsPerSecond));
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the flows of data packets
+	 * 
+	 * @return an unmodifiable list of the flows, in the order they were added
+	 */
+	public List<Flow> getFlows() {
+		return Collections.unmodifiableList(flows);
+	}
+
+	/**
+	 * Returns the counters of all the data packets sent since the previous call and starts counting again. Each
+	 * packet is charged to the interval it was sent in, so the packets still in flight are counted by the returned
+	 * counters as they arrive or are dropped
+	 * 
+	 * @return
+	 */
+	public TrafficStats resetTrafficStats() {
+		TrafficStats stats = traffic;
+		traffic = new TrafficStats();
+		return stats;
+	}
+
+	/**
+	 * Forwards a data packet that is at the given router to the next hop towards its destination
+	 * 
+	 * @param flow
+	 * @param phase The counters of the interval the packet was sent in
+	 * @param routerID The router where the packet is
+	 * @param ttl The number of hops the packet may still take
+	 * @param hops The number of hops already taken
+	 * @param sentTime Virtual time the packet was sent
+	 */
+	private void forward(Flow flow, TrafficStats phase, long routerID, int ttl, int hops, long sentTime) {
+		if (routerID == flow.destination) {
+			flow.stats.delivered(hops, now - sentTime);
+			phase.delivered(hops, now - sentTime);
+			return;
+		}
+		if (ttl == 0) {
+			flow.stats.looped++;
+			phase.looped++;
+			return;
+		}
+		ForwardingTable table = routers.get(routerID).getForwardingTable();
+		int hop = table.nextHop(flow.destination);
+		if (hop < 0) {
+			flow.stats.noRoute++;
+			phase.noRoute++;
+			return;
+		}
+		long nextRouterID = table.getNeighbor(hop).id;
+		if (!isLinkUp(routerID, nextRouterID)) {
+			flow.stats.linkDown++;
+			phase.linkDown++;
+			return;
+		}
+		flow.stats.inFlight++;
+		phase.inFlight++;
+		events.add(new DataPacket(now + nextDelay(), flow, phase, routerID, nextRouterID, ttl - 1, hops + 1,
+				sentTime));
+	}
+
+	/**
+	 * Draws the delay of a message or data packet
+	 * 
+	 * @return in milliseconds
+	 */
+	private long nextDelay() {
+		return latency + (jitter > 0 ? (long) random.nextInt((int) jitter + 1) : 0);
+	}
+
+	private long firstOffset(double packetsPerSecond) {
+		long period = (long) Math.ceil(1000 / packetsPerSecond);
+		return period > 1 ? random.nextInt((int) Math.min(period, Integer.MAX_VALUE)) : 0;
+	}
+
+	private long[] sortedRouterIDs() {
+		long[] ids = new long[routers.size()];
+		int i = 0;
+		for (Long id : routers.keySet()) {
+			ids[i++] = id;
+		}
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	private boolean isLinkUp(long routerAID, long routerBID) {
+		int node = linkTable.indexOf(routerAID);
+		if (node < 0) {
+			return false;
+		}
+		int end = linkTable.getAdjacencyEnd(node);
+		for (int position = linkTable.getAdjacencyStart(node); position < end; position++) {
+			if (linkTable.getRouterID(linkTable.getAdjacentNode(position)) == routerBID
+					&& !linkDown[linkTable.getAdjacentLink(position)]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int findLink(long routerAID, long routerBID) {
+		int node = linkTable.indexOf(routerAID);
+		if (node >= 0) {
+			int end = linkTable.getAdjacencyEnd(node);
+			for (int position = linkTable.getAdjacencyStart(node); position < end; position++) {
+				if (linkTable.getRouterID(linkTable.getAdjacentNode(position)) == routerBID) {
+					return linkTable.getAdjacentLink(position);
+				}
+			}
+		}
+		throw new IllegalArgumentException("No link between routers " + routerAID + " and " + routerBID);
+	}
+
+	/**
+	 * Simulates all the routers configured on the default files until they converge, then applies each failure and
+	 * recovery of the scenario, reporting how long the routers take to converge again and what happened to the data
+	 * packets meanwhile
+	 * 
+	 * @param args Optionally "-q" to suppress the output of the routers, "-seed" followed by the seed of the random
+	 *            choices, "-mode" followed by the protocol mode (basic, split_horizon or poison_reverse), "-holddown"
+	 *            followed by the duration of the hold-down in milliseconds, "-latency" and "-jitter" followed by the
+	 *            fixed and random delays of the messages in milliseconds, "-loss" followed by the probability of a
+	 *            message being lost, "-fail" and "-restore" followed by a link and a virtual time in milliseconds, as
+	 *            in 1-2@60000 (may be repeated), "-limit" followed by the virtual time given to each convergence,
+	 *            "-flows" followed by a number of flows between random routers or "all" for a flow between every
+	 *            pair, "-traffic" followed by a traffic matrix file, "-rate" followed by the rate of the generated
+	 *            flows in packets per second, "-ttl" followed by the number of hops after which a packet is dropped,
+	 *            "-duration" followed by the virtual time at which the simulation ends, if later than the last
+	 *            convergence, and "-flowstats" to print the counters of each flow, followed by the paths to the
+	 *            router and link configuration files
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int arg = 0;
+		PrintStream out = System.out;
+		long seed = 0;
+		Router.ProtocolMode protocolMode = Router.ProtocolMode.BASIC;
+		long holdDownTime = 0;
+		long latency = DEFAULT_LATENCY;
+		long jitter = DEFAULT_JITTER;
+		double lossRate = 0;
+		long limit = DEFAULT_CONVERGENCE_LIMIT;
+		Pattern linkAtTime = Pattern.compile("(\\d+)-(\\d+)@(\\d+)");
+		List<Matcher> scenario = new ArrayList<Matcher>();
+		List<Boolean> recoveries = new ArrayList<Boolean>();
+		String flowCount = null;
+		String trafficFile = null;
+		double flowRate = DEFAULT_FLOW_RATE;
+		int ttl = DEFAULT_TTL;
+		long duration = 0;
+		boolean flowStats = false;
+		try {
+			for (; args.length > arg && args[arg].startsWith("-"); arg++) {
+				if (args[arg].equals("-q")) {
+					out = Simulation.NULL_OUTPUT;
+				} else if (args[arg].equals("-seed")) {
+					seed = Long.parseLong(args[++arg]);
+				} else if (args[arg].equals("-mode")) {
+					protocolMode = Router.ProtocolMode.valueOf(args[++arg].toUpperCase());
+				} else if (args[arg].equals("-holddown")) {
+					holdDownTime = Long.parseLong(args[++arg]);
+				} else if (args[arg].equals("-latency")) {
+					latency = Long.parseLong(args[++arg]);
+				} else if (args[arg].equals("-jitter")) {
+					jitter = Long.parseLong(args[++arg]);
+				} else if (args[arg].equals("-loss")) {
+					lossRate = Double.parseDouble(args[++arg]);
+				} else if (args[arg].equals("-limit")) {
+					limit = Long.parseLong(args[++arg]);
+				} else if (args[arg].equals("-flows")) {
+					flowCount = args[++arg];
+					if (!flowCount.equals("all") && Integer.parseInt(flowCount) < 0) {
+						throw new IllegalArgumentException(flowCount);
+					}
+				} else if (args[arg].equals("-traffic")) {
+					trafficFile = args[++arg];
+				} else if (args[arg].equals("-rate")) {
+					flowRate = Double.parseDouble(args[++arg]);
+				} else if (args[arg].equals("-ttl")) {
+					ttl = Integer.parseInt(args[++arg]);
+				} else if (args[arg].equals("-duration")) {
+					duration = Long.parseLong(args[++arg]);
+				} else if (args[arg].equals("-flowstats")) {
+					flowStats = true;
+				} else if (args[arg].equals("-fail") || args[arg].equals("-restore")) {
+					Matcher matcher = linkAtTime.matcher(args[arg + 1]);
+					if (!matcher.matches()) {
+						throw new IllegalArgumentException(args[arg + 1]);
+					}
+					recoveries.add(args[arg++].equals("-restore"));
+					scenario.add(matcher);
+				} else {
+					throw new IllegalArgumentException(args[arg]);
+				}
+			}
+		} catch (RuntimeException e) {
+			System.err.println("USAGE: [-q] [-seed n] [-mode <basic|split_horizon|poison_reverse>] [-holddown <ms>]"
+					+ " [-latency <ms>] [-jitter <ms>] [-loss <probability>] [-fail <a>-<b>@<ms>]"
+					+ " [-restore <a>-<b>@<ms>] [-limit <ms>] [-flows <n|all>] [-traffic <file>] [-rate <packets/s>]"
+					+ " [-ttl <hops>] [-duration <ms>] [-flowstats] [<router_config> [<link_config>]]");
+			System.exit(1);
+		}
+		String routerConfig = args.length > arg ? args[arg++] : Main.ROTEADOR_CONFIG_DIR;
+		String linkConfig = args.length > arg ? args[arg++] : Main.ENLACES_CONFIG_DIR;
+
+		RouterTable routerTable = new RouterTable(routerConfig);
+		routerTable.parseConfigFile();
+
+		LinkTable linkTable = new LinkTable(linkConfig);
+		linkTable.parseConfigFile();
+
+		EventSimulation simulation = new EventSimulation(routerTable, linkTable, out, seed);
+		simulation.setProtocol(protocolMode, holdDownTime);
+		simulation.setLatency(latency, jitter);
+		simulation.setLossRate(lossRate);
+		simulation.setTimeToLive(ttl);
+		try {
+			if ("all".equals(flowCount)) {
+				simulation.addAllPairsFlows(flowRate);
+			} else if (flowCount != null) {
+				simulation.addRandomFlows(Integer.parseInt(flowCount), flowRate);
+			}
+			if (trafficFile != null) {
+				simulation.loadFlows(trafficFile);
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		}
+		boolean traffic = !simulation.getFlows().isEmpty();
+		long[] changeTimes = new long[scenario.size()];
+		for (int i = 0; i < scenario.size(); i++) {
+			Matcher matcher = scenario.get(i);
+			long routerAID = Long.parseLong(matcher.group(1));
+			long routerBID = Long.parseLong(matcher.group(2));
+			changeTimes[i] = Long.parseLong(matcher.group(3));
+			try {
+				if (recoveries.get(i)) {
+					simulation.restoreLink(routerAID, routerBID, changeTimes[i]);
+				} else {
+					simulation.failLink(routerAID, routerBID, changeTimes[i]);
+				}
+			} catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage());
+				System.exit(2);
+			}
+		}
+		Arrays.sort(changeTimes);
+		System.out.println("Simulando " + simulation.getRouters().size() + " roteadores (eventos, semente " + seed
+				+ ", " + protocolMode + ")");
+
+		long start = System.currentTimeMillis();
+		long phaseStart = 0;
+		int change = 0;
+		while (true) {
+			long converged = simulation.runUntilConverged(simulation.currentTimeMillis() + limit);
+			if (converged < 0) {
+				System.out.println("Nao convergiu ate " + simulation.currentTimeMillis() + " ms: "
+						+ simulation.verify(10));
+			} else {
+				System.out.println("Convergiu em " + Math.max(0, converged - phaseStart) + " ms (instante " + converged
+						+ " ms), " + simulation.getPacketsSent() + " mensagens enviadas");
+			}
+			if (traffic) {
+				System.out.println("Trafego ate a verificacao: " + simulation.resetTrafficStats());
+			}
+			while (change < changeTimes.length && changeTimes[change] < simulation.currentTimeMillis()) {
+				change++;
+			}
+			if (change == changeTimes.length) {
+				break;
+			}
+			phaseStart = changeTimes[change];
+			simulation.runUntil(phaseStart - 1);
+			if (traffic) {
+				System.out.println("Trafego antes da mudanca: " + simulation.resetTrafficStats());
+			}
+			simulation.runUntil(phaseStart);
+			System.out.println("Enlaces alterados em " + phaseStart + " ms");
+		}
+		if (duration > simulation.currentTimeMillis()) {
+			simulation.runUntil(duration);
+			if (traffic) {
+				System.out.println("Trafego ate " + duration + " ms: " + simulation.resetTrafficStats());
+			}
+		}
+		if (flowStats) {
+			for (Flow flow : simulation.getFlows()) {
+				System.out.println(flow + String.format(" vazao=%.1f pacotes/s",
+						flow.getThroughput(simulation.currentTimeMillis())));
+			}
+		}
+		System.out.println(simulation.getProcessedEvents() + " eventos em " + simulation.currentTimeMillis()
+				+ " ms simulados (" + (System.currentTimeMillis() - start) + " ms reais), "
+				+ simulation.getDroppedMessages() + " mensagens perdidas");
+	}
+
+}
@@ -0,0 +1,194 @@
+package com.googlecode.routing.simulator;
+
+/**
+ * Immutable forwarding table of a router, compiled from a {@link TableSnapshot}: it keeps only the next hop of each
+ * reachable destination, as the index of an adjacent router, without costs or any other state of the protocol.
+ * 
+ * The destinations are kept on an open addressing table where each id is stored next to its next hop, so a lookup
+ * usually touches a single cache line and allocates nothing. As the table never changes after it is built, any
+ * number of threads may read it without synchronization; the router publishes a new one whenever a next hop
+ * changes
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public final class ForwardingTable {
+
+	/**
+	 * Returned by {@link #nextHop(long)} for destinations that can not be reached
+	 */
+	public static final int NO_ROUTE = -1;
+
+	/**
+	 * Returned by {@link #nextHop(long)} for the router that owns the table
+	 */
+	public static final int LOCAL = -2;
+
+	/**
+	 * Version of the snapshot the table was compiled from
+	 */
+	private final long version;
+
+	/**
+	 * The id of the router that owns the table
+	 */
+	private final long ownerID;
+
+	/**
+	 * Pairs of destination id and next hop plus one, so a zero next hop marks a free slot
+	 */
+	private final long[] entries;
+
+	/**
+	 * Mask applied to the hashes to find the slot of a destination
+	 */
+	private final int mask;
+
+	/**
+	 * The adjacent routers, addressed by the next hops of the table
+	 */
+	private final RouterInfo[] neighbors;
+
+	/**
+	 * Number of destinations with a next hop
+	 */
+	private final int size;
+
+	/**
+	 * Compiles the next hops of the given snapshot
+	 * 
+	 * @param table The snapshot of the distance table
+	 * @param ownerID The id of the router that owns the table
+	 * @param neighborIndex Index of the ids of the adjacent routers
+	 * @param neighbors The adjacent routers, addressed by their position on the index
+	 */
+	ForwardingTable(TableSnapshot table, long ownerID, RouterIndex neighborIndex, RouterInfo[] neighbors) {
+		int count = 0;
+		for (int i = 0; i < table.capacity(); i++) {
+			if (table.contains(i) && hopOf(table, i, neighborIndex) >= 0) {
+				count++;
+			}
+		}
+		int capacity = 2;
+		while (capacity < count * 2) {
+			capacity <<= 1;
+		}
+		this.version = table.getVersion();
+		this.ownerID = ownerID;
+		this.entries = new long[capacity * 2];
+		this.mask = capacity - 1;
+		this.neighbors = neighbors;
+		this.size = count;
+		for (int i = 0; i < table.capacity(); i++) {
+			int hop = table.contains(i) ? hopOf(table, i, neighborIndex) : NO_ROUTE;
+			if (hop < 0) {
+				continue;
+			}
+			long destination = table.getDestination(i);
+			int slot = hash(destination) & mask;
+			while (entries[2 * slot + 1] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			entries[2 * slot] = destination;
+			entries[2 * slot + 1] = hop + 1;
+		}
+	}
+
+	/**
+	 * Returns the next hop towards a destination
+	 * 
+	 * @param destinationRouterID
+	 * @return the index of the adjacent router, to be resolved with {@link #getNeighbor(int)}, {@link #LOCAL} if
+	 *         the destination is the owner of the table or {@link #NO_ROUTE}
+	 */
+	public int nextHop(long destinationRouterID) {
+		if (destinationRouterID == ownerID) {
+			return LOCAL;
+		}
+		long[] entries = this.entries;
+		int slot = hash(destinationRouterID) & mask;
+		long hop;
+		while ((hop = entries[2 * slot + 1]) != 0) {
+			if (entries[2 * slot] == destinationRouterID) {
+				return (int) hop - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return NO_ROUTE;
+	}
+
+	/**
+	 * Returns the adjacent router with the given index
+	 * 
+	 * @param neighbor a next hop returned by {@link #nextHop(long)}
+	 * @return
+	 */
+	public RouterInfo getNeighbor(int neighbor) {
+		return neighbors[neighbor];
+	}
+
+	/**
+	 * Returns the version of the snapshot the table was compiled from
+	 * 
+	 * @return
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the number of destinations with a next hop, not counting the owner of the table
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Tells if the table still holds the next hops of the given snapshot, which is the case when the adjacent
+	 * routers are the same and no destination changed since the previous snapshot got a new next hop
+	 * 
+	 * @param table A snapshot published after the one this table was compiled from
+	 * @param neighborIndex
+	 * @param neighbors
+	 * @return
+	 */
+	boolean matches(TableSnapshot table, RouterIndex neighborIndex, RouterInfo[] neighbors) {
+		if (neighbors != this.neighbors) {
+			return false;
+		}
+		for (int k = 0; k < table.getChangeCount(); k++) {
+			long destination = table.getChange(k);
+			int i = table.indexOf(destination);
+			if (destination != ownerID && nextHop(destination) != (i < 0 || !table.contains(i) ? NO_ROUTE
+					: hopOf(table, i, neighborIndex))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the index of the gateway of a path of the snapshot
+	 * 
+	 * @param table
+	 * @param i the index of the destination on the snapshot
+	 * @param neighborIndex
+	 * @return the index of the gateway, or {@link #NO_ROUTE} if the path is unreachable or does not go through an
+	 *         adjacent router
+	 */
+	private static int hopOf(TableSnapshot table, int i, RouterIndex neighborIndex) {
+		if (table.getCost(i) >= Router.INFINITY) {
+			return NO_ROUTE;
+		}
+		return neighborIndex.indexOf(table.getGateway(i));
+	}
+
+	private static int hash(long value) {
+		long h = value * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
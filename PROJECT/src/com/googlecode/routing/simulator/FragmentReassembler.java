@@ -0,0 +1,276 @@
+package com.googlecode.routing.simulator;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * Rebuilds the advertisements of a single neighbor from their fragments, delivering them in the order of their
+ * sequence numbers. Up to {@link #MAX_PENDING} advertisements may be rebuilt at once, so a delta sent while the
+ * fragments of a full advertisement are still arriving does not discard it: an advertisement completed before an
+ * older one is held until the older one completes, and both are then delivered together. A full advertisement
+ * replaces everything older than it, so the older ones are discarded when it completes. An incomplete
+ * advertisement is waited for until it is the oldest of {@link #MAX_PENDING} being rebuilt. Fragments of
+ * advertisements not newer than the last one delivered are ignored, so the memory used is bounded by the size of
+ * {@link #MAX_PENDING} advertisements
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class FragmentReassembler {
+
+	/**
+	 * Largest number of fragments accepted for a single advertisement
+	 */
+	public static final int MAX_FRAGMENTS = 4096;
+
+	/**
+	 * Largest number of advertisements rebuilt at once. When a fragment of a newer one arrives with every slot in
+	 * use, the oldest advertisement, which is always incomplete, is discarded
+	 */
+	public static final int MAX_PENDING = 4;
+
+	/**
+	 * An advertisement being rebuilt
+	 */
+	private static class Slot {
+
+		/**
+		 * If the slot holds an advertisement
+		 */
+		boolean active;
+
+		/**
+		 * Sequence number of the advertisement
+		 */
+		long sequence;
+
+		/**
+		 * Type of the advertisement
+		 */
+		int type;
+
+		/**
+		 * Index of the last fragment, or -1 while it is unknown
+		 */
+		int lastIndex;
+
+		/**
+		 * Fragments already received
+		 */
+		final BitSet received = new BitSet();
+
+		/**
+		 * Entries of the fragments already received, reused between advertisements
+		 */
+		final PathList entries = new PathList();
+
+		boolean isComplete() {
+			return lastIndex >= 0 && received.cardinality() == lastIndex + 1;
+		}
+
+		void reset() {
+			active = false;
+			lastIndex = -1;
+			received.clear();
+			entries.clear();
+		}
+	}
+
+	private final Slot[] slots;
+
+	/**
+	 * Entries of the advertisements delivered together by the last call
+	 */
+	private final PathList combined;
+
+	/**
+	 * Slot whose entries were returned by the last call, released on the next one
+	 */
+	private Slot returned;
+
+	/**
+	 * Sequence number of the last advertisement delivered or discarded, older fragments are ignored
+	 */
+	private long lastSequence;
+
+	/**
+	 * Type of the advertisement returned by the last call
+	 */
+	private int type;
+
+	/**
+	 * Sequence number of the advertisement returned by the last call
+	 */
+	private long sequence;
+
+	public FragmentReassembler() {
+		this.slots = new Slot[MAX_PENDING];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = new Slot();
+			slots[i].reset();
+		}
+		this.combined = new PathList();
+		this.lastSequence = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Decodes a fragment and adds it to the advertisement it belongs to
+	 * 
+	 * @param header The header of the fragment, already read from the buffer
+	 * @param data The buffer positioned at the entries of the fragment
+	 * @return the entries of the advertisements delivered by this fragment, if the oldest one being rebuilt is now
+	 *         complete, or null. When more than one advertisement is delivered their entries are concatenated in the
+	 *         order of their sequence numbers. The list is reused, so it is only valid until the next call, and
+	 *         {@link #getType()} and {@link #getSequence()} describe it
+	 * @throws IllegalArgumentException if the fragment is malformed, in which case its advertisement is discarded
+	 */
+	public PathList add(MessageHeader header, ByteBuffer data) {
+		if (returned != null) {
+			returned.reset();
+			returned = null;
+		}
+		if (header.fragmentIndex >= MAX_FRAGMENTS || header.sequence <= lastSequence) {
+			return null;
+		}
+		Slot slot = find(header.sequence);
+		if (slot == null) {
+			slot = allocate(header.sequence);
+			if (slot == null) {
+				return null;
+			}
+			slot.active = true;
+			slot.sequence = header.sequence;
+			slot.type = header.type;
+		} else if (header.type != slot.type || slot.received.get(header.fragmentIndex)) {
+			return null;
+		}
+
+		try {
+			Router.deserialize(data, header, slot.entries);
+		} catch (IllegalArgumentException e) {
+			slot.reset();
+			throw e;
+		}
+		slot.received.set(header.fragmentIndex);
+		if (header.lastFragment) {
+			slot.lastIndex = header.fragmentIndex;
+		}
+		if (slot.isComplete() && slot.type == WireFormat.TYPE_FULL) {
+			for (Slot older : slots) {
+				if (older.active && older.sequence < slot.sequence) {
+					discard(older);
+				}
+			}
+		}
+		return deliver();
+	}
+
+	/**
+	 * Returns the type of the advertisement returned by the last call to {@link #add(MessageHeader, ByteBuffer)},
+	 * {@link WireFormat#TYPE_FULL} if it started with a full advertisement
+	 * 
+	 * @return
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the sequence number of the newest advertisement returned by the last call to
+	 * {@link #add(MessageHeader, ByteBuffer)}
+	 * 
+	 * @return
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Delivers the complete advertisements that are older than any incomplete one
+	 * 
+	 * @return the entries of the delivered advertisements, or null if the oldest one is still incomplete
+	 */
+	private PathList deliver() {
+		Slot first = oldest(lastSequence);
+		if (first == null || !first.isComplete()) {
+			return null;
+		}
+		type = first.type;
+		sequence = first.sequence;
+		lastSequence = first.sequence;
+		Slot next = oldest(lastSequence);
+		if (next == null || !next.isComplete()) {
+			returned = first;
+			return first.entries;
+		}
+		combined.clear();
+		append(first);
+		for (; next != null && next.isComplete(); next = oldest(lastSequence)) {
+			sequence = next.sequence;
+			lastSequence = next.sequence;
+			append(next);
+		}
+		return combined;
+	}
+
+	private void append(Slot slot) {
+		for (int i = 0; i < slot.entries.size(); i++) {
+			combined.add(slot.entries.getDestination(i), slot.entries.getGateway(i), slot.entries.getCost(i));
+		}
+		slot.reset();
+	}
+
+	/**
+	 * Returns the slot of an advertisement being rebuilt
+	 */
+	private Slot find(long advertisementSequence) {
+		for (Slot slot : slots) {
+			if (slot.active && slot.sequence == advertisementSequence) {
+				return slot;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the active slot with the lowest sequence number above the given one
+	 */
+	private Slot oldest(long above) {
+		Slot oldest = null;
+		for (Slot slot : slots) {
+			if (slot.active && slot.sequence > above && (oldest == null || slot.sequence < oldest.sequence)) {
+				oldest = slot;
+			}
+		}
+		return oldest;
+	}
+
+	/**
+	 * Returns a free slot for a new advertisement, discarding the oldest one if none is free
+	 * 
+	 * @return the slot, or null if the new advertisement is older than all the ones being rebuilt
+	 */
+	private Slot allocate(long advertisementSequence) {
+		for (Slot slot : slots) {
+			if (!slot.active) {
+				return slot;
+			}
+		}
+		Slot oldest = oldest(Long.MIN_VALUE);
+		if (advertisementSequence < oldest.sequence) {
+			return null;
+		}
+		discard(oldest);
+		return oldest;
+	}
+
+	/**
+	 * Discards an incomplete advertisement, so its late fragments are ignored
+	 */
+	private void discard(Slot slot) {
+		lastSequence = Math.max(lastSequence, slot.sequence);
+		slot.reset();
+	}
+
+}
@@ -0,0 +1,138 @@
+package com.googlecode.routing.simulator;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Shared medium that connects all the {@link InMemoryTransport}s of a simulation running inside a single process.
+ * Messages are copied straight into the queue of the destination, without going through the network stack
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class InMemoryNetwork {
+
+	/**
+	 * Default number of messages that can wait on the queue of a router before new ones are discarded
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+	/**
+	 * Default size of the largest message, the same that fits in an Ethernet frame
+	 */
+	public static final int DEFAULT_MAX_DATAGRAM_SIZE = UdpTransport.DEFAULT_MTU - UdpTransport.IPV4_UDP_HEADERS_SIZE;
+
+	/**
+	 * The transports attached to this network, indexed by the address and port they listen on
+	 */
+	private final Map<InetSocketAddress, InMemoryTransport> transports;
+
+	/**
+	 * Maximum number of pending messages per router
+	 */
+	private final int queueCapacity;
+
+	/**
+	 * Size of the largest message accepted by the network
+	 */
+	private final int maxDatagramSize;
+
+	/**
+	 * Executor that pushes the messages to the handlers of the routers, null if they are received by blocking
+	 * threads
+	 */
+	private final Executor deliveryExecutor;
+
+	/**
+	 * Creates a network whose queues hold up to {@link #DEFAULT_QUEUE_CAPACITY} messages of up to
+	 * {@link #DEFAULT_MAX_DATAGRAM_SIZE} bytes, received by blocking threads
+	 */
+	public InMemoryNetwork() {
+		this(null);
+	}
+
+	/**
+	 * Creates a network whose queues hold up to {@link #DEFAULT_QUEUE_CAPACITY} messages of up to
+	 * {@link #DEFAULT_MAX_DATAGRAM_SIZE} bytes
+	 * 
+	 * @param deliveryExecutor The executor that pushes the messages to the handlers of the routers, or null if they
+	 *            are received by blocking threads
+	 */
+	public InMemoryNetwork(Executor deliveryExecutor) {
+		this(DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_DATAGRAM_SIZE, deliveryExecutor);
+	}
+
+	/**
+	 * Creates a network with the given capacity for the queue of each router
+	 * 
+	 * @param queueCapacity
+	 * @param maxDatagramSize Size of the largest message accepted by the network
+	 * @param deliveryExecutor The executor that pushes the messages to the handlers of the routers, or null if they
+	 *            are received by blocking threads
+	 */
+	public InMemoryNetwork(int queueCapacity, int maxDatagramSize, Executor deliveryExecutor) {
+		this.transports = new ConcurrentHashMap<InetSocketAddress, InMemoryTransport>();
+		this.queueCapacity = queueCapacity;
+		this.maxDatagramSize = maxDatagramSize;
+		this.deliveryExecutor = deliveryExecutor;
+	}
+
+	/**
+	 * Returns the size of the largest message accepted by the network
+	 * 
+	 * @return
+	 */
+	public int getMaxDatagramSize() {
+		return maxDatagramSize;
+	}
+
+	/**
+	 * Creates and attaches the transport of the given router
+	 * 
+	 * @param routerInfo
+	 * @return the transport bound to the address and port of the router
+	 */
+	public InMemoryTransport attach(RouterInfo routerInfo) {
+		InMemoryTransport transport = new InMemoryTransport(this, routerInfo, queueCapacity, deliveryExecutor);
+		if (transports.putIfAbsent(new InetSocketAddress(routerInfo.ipAddress, routerInfo.port), transport) != null) {
+			throw new IllegalStateException("Address already in use: " + routerInfo.ipAddress + ":" + routerInfo.port);
+		}
+		return transport;
+	}
+
+	/**
+	 * Removes the transport of the given router from the network
+	 * 
+	 * @param routerInfo
+	 */
+	void detach(RouterInfo routerInfo) {
+		transports.remove(new InetSocketAddress(routerInfo.ipAddress, routerInfo.port));
+	}
+
+	/**
+	 * Copies the message to the queue of the destination. As on UDP, the message is silently discarded if it is
+	 * too large, if nobody listens on the destination or if its queue is full
+	 * 
+	 * @param source The router that sends the message
+	 * @param destination The router that should receive the message
+	 * @param data
+	 * @param length
+	 * @return if the message was queued
+	 */
+	boolean deliver(RouterInfo source, RouterInfo destination, byte[] data, int length) {
+		if (length > maxDatagramSize) {
+			return false;
+		}
+		InMemoryTransport transport = transports.get(new InetSocketAddress(destination.ipAddress, destination.port));
+		if (transport == null) {
+			return false;
+		}
+		byte[] copy = new byte[length];
+		System.arraycopy(data, 0, copy, 0, length);
+		return transport.enqueue(source, copy);
+	}
+
+}
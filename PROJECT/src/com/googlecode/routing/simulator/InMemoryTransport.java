@@ -0,0 +1,216 @@
+package com.googlecode.routing.simulator;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.DatagramPacket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Transport of a router attached to an {@link InMemoryNetwork}. The messages are either taken by a thread blocked on
+ * {@link #receive(DatagramPacket)} or, when the network has a delivery executor, pushed to the {@link PacketHandler}
+ * of the router by its tasks, so no thread has to wait for messages
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class InMemoryTransport implements BlockingTransport {
+
+	/**
+	 * Maximum number of messages handed to the handler by a single task, so a busy router does not hold a thread of
+	 * a shared executor for too long
+	 */
+	public static final int DELIVERY_BATCH = 64;
+
+	/**
+	 * A message waiting to be received
+	 */
+	private static class Message {
+
+		/**
+		 * The router that sent the message
+		 */
+		final RouterInfo source;
+
+		/**
+		 * The content of the message
+		 */
+		final byte[] data;
+
+		Message(RouterInfo source, byte[] data) {
+			this.source = source;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * The network this transport is attached to
+	 */
+	private final InMemoryNetwork network;
+
+	/**
+	 * The router that owns this transport
+	 */
+	private final RouterInfo routerInfo;
+
+	/**
+	 * Messages delivered to the router that were not received yet
+	 */
+	private final BlockingQueue<Message> queue;
+
+	/**
+	 * The handler the messages are pushed to, null while they are received with {@link #receive(DatagramPacket)}
+	 */
+	private volatile PacketHandler handler;
+
+	/**
+	 * The executor that runs the delivery to the handler, null if the messages are only received with
+	 * {@link #receive(DatagramPacket)}
+	 */
+	private final Executor executor;
+
+	/**
+	 * If the delivery task is scheduled or running, guarded by this transport
+	 */
+	private boolean delivering;
+
+	/**
+	 * The delivery task
+	 */
+	private final Runnable delivery;
+
+	/**
+	 * Creates the transport. Should be called only by {@link InMemoryNetwork#attach(RouterInfo)}
+	 * 
+	 * @param network
+	 * @param routerInfo
+	 * @param queueCapacity
+	 * @param executor The executor that runs the delivery to the handler, which may be shared by many transports, or
+	 *            null
+	 */
+	InMemoryTransport(InMemoryNetwork network, RouterInfo routerInfo, int queueCapacity, Executor executor) {
+		this.network = network;
+		this.routerInfo = routerInfo;
+		this.executor = executor;
+		this.queue = new ArrayBlockingQueue<Message>(queueCapacity);
+		this.delivery = new Runnable() {
+			@Override
+			public void run() {
+				deliver();
+			}
+		};
+	}
+
+	/**
+	 * Pushes the messages to the given handler from now on, instead of waiting for them to be received, if the
+	 * network has a delivery executor. The handler is called by a single task at a time
+	 * 
+	 * @param handler
+	 * @return false if the network has no delivery executor
+	 */
+	@Override
+	public boolean setHandler(PacketHandler handler) {
+		if (executor == null) {
+			return false;
+		}
+		this.handler = handler;
+		scheduleDelivery();
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void send(RouterInfo destination, byte[] data, int length) throws IOException {
+		network.deliver(routerInfo, destination, data, length);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receive(DatagramPacket packet) throws IOException {
+		Message message;
+		try {
+			message = queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a message");
+		}
+		int length = Math.min(message.data.length, packet.getData().length - packet.getOffset());
+		System.arraycopy(message.data, 0, packet.getData(), packet.getOffset(), length);
+		packet.setLength(length);
+		packet.setAddress(message.source.ipAddress);
+		packet.setPort(message.source.port);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getMaxDatagramSize() {
+		return network.getMaxDatagramSize();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		network.detach(routerInfo);
+		queue.clear();
+	}
+
+	/**
+	 * Queues a message delivered by the network
+	 * 
+	 * @param source
+	 * @param data
+	 * @return false if the queue is full and the message was discarded
+	 */
+	boolean enqueue(RouterInfo source, byte[] data) {
+		if (!queue.offer(new Message(source, data))) {
+			return false;
+		}
+		if (handler != null) {
+			scheduleDelivery();
+		}
+		return true;
+	}
+
+	/**
+	 * Schedules the delivery task if there are messages and it is not already pending
+	 */
+	private void scheduleDelivery() {
+		synchronized (this) {
+			if (delivering || queue.isEmpty()) {
+				return;
+			}
+			delivering = true;
+		}
+		executor.execute(delivery);
+	}
+
+	/**
+	 * The delivery task: hands up to {@link #DELIVERY_BATCH} messages to the handler and schedules itself again if
+	 * more are left
+	 */
+	private void deliver() {
+		for (int i = 0; i < DELIVERY_BATCH; i++) {
+			Message message = queue.poll();
+			if (message == null) {
+				break;
+			}
+			handler.handlePacket(message.source.ipAddress, message.source.port, ByteBuffer.wrap(message.data));
+		}
+		synchronized (this) {
+			delivering = false;
+		}
+		scheduleDelivery();
+	}
+
+}
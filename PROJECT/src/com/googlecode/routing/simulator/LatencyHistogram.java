@@ -0,0 +1,122 @@
+package com.googlecode.routing.simulator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with one bucket per power of two nanoseconds. Recording is a few atomic increments, so it
+ * can be used on the hot paths, and percentiles are precise up to a factor of two
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Number of values recorded on each bucket. Bucket b holds the values from 2^b to 2^(b+1) - 1 nanoseconds
+	 */
+	private final AtomicLongArray buckets;
+
+	/**
+	 * Number of values recorded
+	 */
+	private final AtomicLong count;
+
+	/**
+	 * Sum of the values recorded
+	 */
+	private final AtomicLong sum;
+
+	/**
+	 * Largest value recorded
+	 */
+	private final AtomicLong max;
+
+	/**
+	 * Creates an empty histogram
+	 */
+	public LatencyHistogram() {
+		this.buckets = new AtomicLongArray(64);
+		this.count = new AtomicLong();
+		this.sum = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+	/**
+	 * Records a duration
+	 * 
+	 * @param nanos
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos | 1));
+		count.incrementAndGet();
+		sum.addAndGet(nanos);
+		long previous;
+		while (nanos > (previous = max.get()) && !max.compareAndSet(previous, nanos)) {
+		}
+	}
+
+	/**
+	 * Returns the number of durations recorded
+	 * 
+	 * @return
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the sum of the durations recorded, in nanoseconds
+	 * 
+	 * @return
+	 */
+	public long getTotal() {
+		return sum.get();
+	}
+
+	/**
+	 * Returns the average duration, in nanoseconds
+	 * 
+	 * @return 0 if nothing was recorded
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * Returns the largest duration recorded, in nanoseconds
+	 * 
+	 * @return
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns an upper bound of the given percentile, in nanoseconds
+	 * 
+	 * @param percentile between 0 and 1
+	 * @return 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile * n);
+		long seen = 0;
+		for (int b = 0; b < buckets.length(); b++) {
+			seen += buckets.get(b);
+			if (seen >= rank) {
+				return Math.min(max.get(), (2L << b) - 1);
+			}
+		}
+		return max.get();
+	}
+
+}
@@ -0,0 +1,211 @@
+package com.googlecode.routing.simulator;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the link configuration file and applies its changes to running routers, without restarting them. Only
+ * the links that differ from the previous version of the file are applied, each one to the routers at its ends,
+ * through {@link Router#updateLink(RouterInfo, double)} and {@link Router#removeLink(long)}; the paths that changed
+ * are published and sent at once to the neighbors by the {@link RouterClient} of each router, as a triggered
+ * update.
+ * 
+ * The watcher runs until its thread is interrupted. The changes may also be applied directly with
+ * {@link #apply(LinkTable)}, without a file
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class LinkConfigWatcher implements Runnable {
+
+	/**
+	 * Time waited after a change of the file for further changes, so a file written in many steps is read once, in
+	 * milliseconds
+	 */
+	public static final long SETTLE_TIME = 200;
+
+	/**
+	 * Path to the link configuration file
+	 */
+	private final String linkConfigFilePath;
+
+	/**
+	 * The table with the metadata of all the routers of the network
+	 */
+	private final RouterTable routerTable;
+
+	/**
+	 * The routers that receive the changes, indexed by their ids
+	 */
+	private final Map<Long, Router> routers;
+
+	/**
+	 * Where the changes are reported
+	 */
+	private final PrintStream out;
+
+	/**
+	 * The links currently applied to the routers
+	 */
+	private volatile LinkTable linkTable;
+
+	/**
+	 * Creates the watcher
+	 * 
+	 * @param linkConfigFilePath Path to the link configuration file
+	 * @param linkTable The links the routers were created with
+	 * @param routerTable The table with the metadata of all the routers of the network
+	 * @param routers The routers that receive the changes, indexed by their ids
+	 * @param out Where the changes are reported
+	 */
+	public LinkConfigWatcher(String linkConfigFilePath, LinkTable linkTable, RouterTable routerTable,
+			Map<Long, Router> routers, PrintStream out) {
+		this.linkConfigFilePath = linkConfigFilePath;
+		this.linkTable = linkTable;
+		this.routerTable = routerTable;
+		this.routers = routers;
+		this.out = out;
+	}
+
+	/**
+	 * Returns the links currently applied to the routers
+	 * 
+	 * @return
+	 */
+	public LinkTable getLinkTable() {
+		return linkTable;
+	}
+
+	/**
+	 * Reads the link configuration file again and applies what changed
+	 * 
+	 * @return the number of routers whose links changed
+	 * @throws IOException if the file can not be read or parsed, in which case nothing is applied
+	 */
+	public int reload() throws IOException {
+		LinkTable links = new LinkTable(linkConfigFilePath);
+		links.parseConfigFile();
+		return apply(links);
+	}
+
+	/**
+	 * Applies the differences between the given links and the current ones to the routers at their ends: links
+	 * added or whose cost changed are updated and links missing from the given table are removed. Each changed
+	 * router then sends its changes to its neighbors, once its table is released
+	 * 
+	 * @param links The new links of the network
+	 * @return the number of routers whose links changed
+	 */
+	public synchronized int apply(LinkTable links) {
+		LinkTable previous = linkTable;
+		int changedRouters = 0;
+		for (Router router : routers.values()) {
+			long id = router.routerInfo.id;
+			Map<Long, LinkInfo> before = previous.getLinksForRouter(id);
+			Map<Long, LinkInfo> after = links.getLinksForRouter(id);
+			boolean changed = false;
+			synchronized (router.minimumPathTable) {
+				for (Map.Entry<Long, LinkInfo> entry : after.entrySet()) {
+					long neighborID = entry.getKey();
+					LinkInfo link = before.get(neighborID);
+					if (link != null && link.cost == entry.getValue().cost) {
+						continue;
+					}
+					RouterInfo neighbor = routerTable.getInfo(neighborID);
+					if (neighbor == null) {
+						router.out.println("[" + id + "] Roteador [" + neighborID + "] desconhecido, enlace ignorado");
+						continue;
+					}
+					router.updateLink(neighbor, entry.getValue().cost);
+					router.out.println("[" + id + "] Enlace com o roteador [" + neighborID + "] "
+							+ (link == null ? "adicionado" : "alterado") + ", custo " + entry.getValue().cost);
+					changed = true;
+				}
+				for (Long neighborID : before.keySet()) {
+					if (!after.containsKey(neighborID)) {
+						router.removeLink(neighborID);
+						router.out.println("[" + id + "] Enlace com o roteador [" + neighborID + "] removido");
+						changed = true;
+					}
+				}
+				if (changed) {
+					router.publishSnapshot();
+				}
+			}
+			if (changed) {
+				changedRouters++;
+				RouterClient client = router.client;
+				if (client != null) {
+					try {
+						client.sendChangesToNeighbors();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+		linkTable = links;
+		return changedRouters;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void run() {
+		Path file = Paths.get(linkConfigFilePath).toAbsolutePath();
+		WatchService watcher;
+		try {
+			watcher = FileSystems.getDefault().newWatchService();
+			file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				WatchKey key = watcher.take();
+				boolean modified = false;
+				while (key != null) {
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (file.getFileName().equals(event.context())) {
+							modified = true;
+						}
+					}
+					key.reset();
+					key = watcher.poll(SETTLE_TIME, TimeUnit.MILLISECONDS);
+				}
+				if (!modified) {
+					continue;
+				}
+				try {
+					int changed = reload();
+					out.println("Enlaces recarregados de " + linkConfigFilePath + ": " + changed
+							+ " roteadores alterados");
+				} catch (IOException e) {
+					out.println("Erro ao recarregar " + linkConfigFilePath + ": " + e.getMessage());
+				}
+			}
+		} catch (InterruptedException e) {
+			return;
+		} finally {
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+}
@@ -1,17 +1,22 @@
 package com.googlecode.routing.simulator;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Contains the set of information about the links to other routers that are connected to the one
- *  that owns this entity
+ *  that owns this entity.
+ *  
+ * The links are stored as primitive arrays and indexed as a compressed adjacency structure (CSR): the neighbors of
+ * each router are kept contiguous, so they can be listed in time proportional to its degree
+ *  
+ * A table opened from a {@link TopologyFile} reads the links and the adjacency structure straight from the mapped
+ * file instead, until a link is added to it
  *  
  * @author Felipe Ribeiro
  * @author Michelly Guedes
@@ -25,9 +30,55 @@ public class LinkTable {
 	private final String linkConfigFilePath;
 
 	/**
-	 * The set of LinkInfos with information about the link to other routers 
+	 * The source router of each link
+	 */
+	private long[] linkA;
+
+	/**
+	 * The destination router of each link
+	 */
+	private long[] linkB;
+
+	/**
+	 * The cost of each link
+	 */
+	private double[] linkCost;
+
+	/**
+	 * Number of links in the table
+	 */
+	private int linkCount;
+
+	/**
+	 * Sum of the costs of all the links
+	 */
+	private double costsSum;
+
+	/**
+	 * Dense index of the routers that have at least one link, built with the adjacency structure
 	 */
-	private final Set<LinkInfo> links;
+	private RouterIndex routers;
+
+	/**
+	 * Position on {@link #adjacentNodes} of the first neighbor of each router (by index), with one extra
+	 * element marking the end of the last one
+	 */
+	private int[] adjacencyOffsets;
+
+	/**
+	 * Index of the neighbor at each position of the adjacency structure
+	 */
+	private int[] adjacentNodes;
+
+	/**
+	 * The link that connects to the neighbor at each position of the adjacency structure
+	 */
+	private int[] adjacentLinks;
+
+	/**
+	 * The mapped file the links are read from, or null once they are held in the arrays
+	 */
+	private TopologyFile topology;
 
 	/**
 	 * Creates a new LinkTable and assigns the path of the text file that contains the data to be loaded
@@ -37,26 +88,74 @@ public class LinkTable {
 	 */
 	public LinkTable(String linkConfigFilePath) {
 		this.linkConfigFilePath = linkConfigFilePath;
-		this.links = new HashSet<LinkInfo>();
+		this.linkA = new long[16];
+		this.linkB = new long[16];
+		this.linkCost = new double[16];
+	}
+
+	/**
+	 * Creates an empty LinkTable, to be filled with {@link #addLink(long, long, double)}
+	 */
+	public LinkTable() {
+		this((String) null);
+	}
+
+	/**
+	 * Creates a LinkTable that reads the links of the given topology file, without copying them
+	 * 
+	 * @param topology
+	 */
+	public LinkTable(TopologyFile topology) {
+		this.linkConfigFilePath = topology.getPath();
+		this.topology = topology;
+		this.linkCount = topology.getLinkCount();
+		this.costsSum = topology.getCostsSum();
 	}
 
 	/**
-	 * Parses the text file and mounts the table containing the information about the links
+	 * Parses the text file and mounts the table containing the information about the links. The file is read as a
+	 * stream, each line holding the ids of the two routers and the cost of the link
 	 * 
 	 * @throws IOException
 	 */
 	public void parseConfigFile() throws IOException {
-		BufferedReader buf = new BufferedReader(new InputStreamReader(new FileInputStream(linkConfigFilePath)));
-		String line;
-		while ((line = buf.readLine()) != null) {
-			String[] strLine = line.trim().split("\\s+");
-			LinkInfo info = new LinkInfo();
-			info.routerAID = Long.parseLong(strLine[0]);
-			info.routerBID = Long.parseLong(strLine[1]);
-			info.cost = Double.parseDouble(strLine[2]);
-			links.add(info);
+		InputStream in = new BufferedInputStream(new FileInputStream(linkConfigFilePath), 1 << 16);
+		try {
+			ConfigReader reader = new ConfigReader(in);
+			while (reader.nextLine()) {
+				long routerAID = reader.readLong();
+				long routerBID = reader.readLong();
+				double cost = reader.readDouble();
+				addLink(routerAID, routerBID, cost);
+			}
+		} finally {
+			in.close();
 		}
-		buf.close();
+	}
+
+	/**
+	 * Adds a link to the table
+	 * 
+	 * @param routerAID
+	 * @param routerBID
+	 * @param cost
+	 */
+	public synchronized void addLink(long routerAID, long routerBID, double cost) {
+		if (topology != null) {
+			copyLinks();
+		}
+		if (linkCount == linkA.length) {
+			int capacity = linkCount * 2;
+			linkA = Arrays.copyOf(linkA, capacity);
+			linkB = Arrays.copyOf(linkB, capacity);
+			linkCost = Arrays.copyOf(linkCost, capacity);
+		}
+		linkA[linkCount] = routerAID;
+		linkB[linkCount] = routerBID;
+		linkCost[linkCount] = cost;
+		linkCount++;
+		costsSum += cost;
+		routers = null;
 	}
 
 	/**
@@ -67,12 +166,18 @@ public class LinkTable {
 	 */
 	public Map<Long, LinkInfo> getLinksForRouter(long routerID) {
 		Map<Long, LinkInfo> result = new HashMap<Long, LinkInfo>();
-		for (LinkInfo info : links) {
-			if (info.routerAID == routerID) {
-				result.put(info.routerBID, info);
-			} else if (info.routerBID == routerID) {
-				result.put(info.routerAID, info);
-			}
+		int node = indexOf(routerID);
+		if (node < 0) {
+			return result;
+		}
+		int end = getAdjacencyEnd(node);
+		for (int position = getAdjacencyStart(node); position < end; position++) {
+			int link = getAdjacentLink(position);
+			LinkInfo info = new LinkInfo();
+			info.routerAID = getLinkA(link);
+			info.routerBID = getLinkB(link);
+			info.cost = getLinkCost(link);
+			result.put(getRouterID(getAdjacentNode(position)), info);
 		}
 		return result;
 	}
@@ -83,11 +188,223 @@ public class LinkTable {
 	 * @return the maximum size of the graph
 	 */
 	public double getCostsSum() {
-		double maxDist = 0;
-		for (LinkInfo info : links) {
-			maxDist += info.cost;
+		return costsSum;
+	}
+
+	/**
+	 * Returns the number of links in the table
+	 * 
+	 * @return
+	 */
+	public int getLinkCount() {
+		return linkCount;
+	}
+
+	/**
+	 * Returns the source router of the given link
+	 * 
+	 * @param link between zero and {@link #getLinkCount()} (exclusive)
+	 * @return
+	 */
+	public long getLinkA(int link) {
+		TopologyFile topology = this.topology;
+		return topology != null ? topology.getLinkA(link) : linkA[link];
+	}
+
+	/**
+	 * Returns the destination router of the given link
+	 * 
+	 * @param link between zero and {@link #getLinkCount()} (exclusive)
+	 * @return
+	 */
+	public long getLinkB(int link) {
+		TopologyFile topology = this.topology;
+		return topology != null ? topology.getLinkB(link) : linkB[link];
+	}
+
+	/**
+	 * Returns the cost of the given link
+	 * 
+	 * @param link between zero and {@link #getLinkCount()} (exclusive)
+	 * @return
+	 */
+	public double getLinkCost(int link) {
+		TopologyFile topology = this.topology;
+		return topology != null ? topology.getLinkCost(link) : linkCost[link];
+	}
+
+	/**
+	 * Returns the number of routers that have at least one link
+	 * 
+	 * @return
+	 */
+	public int getRouterCount() {
+		TopologyFile topology = this.topology;
+		return topology != null ? topology.getNodeCount() : getRouterIndex().size();
+	}
+
+	/**
+	 * Returns the dense index of the given router on the adjacency structure
+	 * 
+	 * @param routerID
+	 * @return the index, or -1 if the router has no links
+	 */
+	public int indexOf(long routerID) {
+		TopologyFile topology = this.topology;
+		return topology != null ? topology.indexOfNode(routerID) : getRouterIndex().indexOf(routerID);
+	}
+
+	/**
+	 * Returns the id of the router with the given index on the adjacency structure
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public long getRouterID(int node) {
+		TopologyFile topology = this.topology;
+		return topology != null ? topology.getNodeID(node) : getRouterIndex().idOf(node);
+	}
+
+	/**
+	 * Returns the position of the first neighbor of the given router on the adjacency structure. Like the other
+	 * accessors that take an index, it must be called only after the index was obtained from
+	 * {@link #indexOf(long)} or {@link #getRouterCount()}
+	 * 
+	 * @param node the index of the router
+	 * @return
+	 */
+	public int getAdjacencyStart(int node) {
+		TopologyFile topology = this.topology;
+		return topology != null ? topology.getAdjacencyStart(node) : adjacencyOffsets[node];
+	}
+
+	/**
+	 * Returns the position right after the last neighbor of the given router on the adjacency structure
+	 * 
+	 * @param node the index of the router
+	 * @return
+	 */
+	public int getAdjacencyEnd(int node) {
+		TopologyFile topology = this.topology;
+		return topology != null ? topology.getAdjacencyEnd(node) : adjacencyOffsets[node + 1];
+	}
+
+	/**
+	 * Returns the index of the neighbor at the given position of the adjacency structure
+	 * 
+	 * @param position
+	 * @return
+	 */
+	public int getAdjacentNode(int position) {
+		TopologyFile topology = this.topology;
+		return topology != null ? topology.getAdjacentNode(position) : adjacentNodes[position];
+	}
+
+	/**
+	 * Returns the cost of the link to the neighbor at the given position of the adjacency structure
+	 * 
+	 * @param position
+	 * @return
+	 */
+	public double getAdjacentCost(int position) {
+		TopologyFile topology = this.topology;
+		if (topology != null) {
+			return topology.getLinkCost(topology.getAdjacentLink(position));
 		}
-		return maxDist;
+		return linkCost[adjacentLinks[position]];
+	}
+
+	/**
+	 * Returns the link, numbered as on {@link #getLinkA(int)}, that connects to the neighbor at the given position of
+	 * the adjacency structure
+	 * 
+	 * @param position
+	 * @return
+	 */
+	public int getAdjacentLink(int position) {
+		TopologyFile topology = this.topology;
+		return topology != null ? topology.getAdjacentLink(position) : adjacentLinks[position];
+	}
+
+	/**
+	 * Returns the index of the routers, building the adjacency structure if links were added since it was last
+	 * built
+	 * 
+	 * @return
+	 */
+	private synchronized RouterIndex getRouterIndex() {
+		if (routers == null) {
+			buildAdjacency();
+		}
+		return routers;
+	}
+
+	/**
+	 * Copies the links of the mapped file to the arrays, so links can be added to them. The adjacency structure is
+	 * built again from the arrays when it is next needed
+	 */
+	private void copyLinks() {
+		int capacity = Math.max(16, linkCount * 2);
+		long[] a = new long[capacity];
+		long[] b = new long[capacity];
+		double[] cost = new double[capacity];
+		for (int link = 0; link < linkCount; link++) {
+			a[link] = topology.getLinkA(link);
+			b[link] = topology.getLinkB(link);
+			cost[link] = topology.getLinkCost(link);
+		}
+		this.linkA = a;
+		this.linkB = b;
+		this.linkCost = cost;
+		this.routers = null;
+		this.topology = null;
+	}
+
+	/**
+	 * Builds the adjacency structure: counts the degree of each router, turns the counts into offsets and then
+	 * places each link on the lists of both of its routers
+	 */
+	private void buildAdjacency() {
+		RouterIndex index = new RouterIndex(linkCount);
+		int[] linkNodeA = new int[linkCount];
+		int[] linkNodeB = new int[linkCount];
+		int[] degrees = new int[16];
+		for (int link = 0; link < linkCount; link++) {
+			linkNodeA[link] = index.getOrAdd(linkA[link]);
+			linkNodeB[link] = index.getOrAdd(linkB[link]);
+			if (index.size() >= degrees.length) {
+				degrees = Arrays.copyOf(degrees, Math.max(degrees.length * 2, index.size() + 1));
+			}
+			degrees[linkNodeA[link]]++;
+			if (linkNodeB[link] != linkNodeA[link]) {
+				degrees[linkNodeB[link]]++;
+			}
+		}
+
+		int nodeCount = index.size();
+		int[] offsets = new int[nodeCount + 1];
+		for (int node = 0; node < nodeCount; node++) {
+			offsets[node + 1] = offsets[node] + degrees[node];
+		}
+
+		int[] next = Arrays.copyOf(offsets, nodeCount);
+		int[] nodes = new int[offsets[nodeCount]];
+		int[] links = new int[offsets[nodeCount]];
+		for (int link = 0; link < linkCount; link++) {
+			int a = linkNodeA[link];
+			int b = linkNodeB[link];
+			nodes[next[a]] = b;
+			links[next[a]++] = link;
+			if (a != b) {
+				nodes[next[b]] = a;
+				links[next[b]++] = link;
+			}
+		}
+
+		this.adjacencyOffsets = offsets;
+		this.adjacentNodes = nodes;
+		this.adjacentLinks = links;
+		this.routers = index;
 	}
 
 }
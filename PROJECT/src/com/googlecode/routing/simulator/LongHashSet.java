@@ -0,0 +1,204 @@
+package com.googlecode.routing.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive longs meant to be reused: values are kept in insertion order, can be iterated by index and
+ * {@link #clear()} runs in constant time, so a set that reached its working size never allocates again
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class LongHashSet {
+
+	/**
+	 * The values of the set, in insertion order
+	 */
+	private long[] values;
+
+	/**
+	 * Open addressing table with the position of each value inside {@link #values}
+	 */
+	private int[] slots;
+
+	/**
+	 * Generation in which each slot was written, a slot is only in use if it matches {@link #generation}
+	 */
+	private int[] stamps;
+
+	/**
+	 * Current generation, incremented at each {@link #clear()}
+	 */
+	private int generation;
+
+	/**
+	 * Number of values in the set
+	 */
+	private int size;
+
+	/**
+	 * Creates an empty set with room for a few values
+	 */
+	public LongHashSet() {
+		this(16);
+	}
+
+	/**
+	 * Creates an empty set with room for the given number of values before growing
+	 * 
+	 * @param expectedSize
+	 */
+	public LongHashSet(int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		this.values = new long[capacity / 2];
+		this.slots = new int[capacity];
+		this.stamps = new int[capacity];
+		this.generation = 1;
+	}
+
+	/**
+	 * Adds a value to the set
+	 * 
+	 * @param value
+	 * @return true if the value was not in the set
+	 */
+	public boolean add(long value) {
+		int mask = slots.length - 1;
+		int slot = hash(value) & mask;
+		while (stamps[slot] == generation) {
+			if (values[slots[slot]] == value) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (size == values.length) {
+			grow();
+			return add(value);
+		}
+		stamps[slot] = generation;
+		slots[slot] = size;
+		values[size++] = value;
+		return true;
+	}
+
+	/**
+	 * Adds all the values of another set
+	 * 
+	 * @param other
+	 */
+	public void addAll(LongHashSet other) {
+		for (int i = 0; i < other.size; i++) {
+			add(other.values[i]);
+		}
+	}
+
+	/**
+	 * Checks if a value is in the set
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public boolean contains(long value) {
+		int mask = slots.length - 1;
+		int slot = hash(value) & mask;
+		while (stamps[slot] == generation) {
+			if (values[slots[slot]] == value) {
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the value at the given position of the insertion order
+	 * 
+	 * @param index between zero and {@link #size()} (exclusive)
+	 * @return
+	 */
+	public long get(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException(index + " >= " + size);
+		}
+		return values[index];
+	}
+
+	/**
+	 * Returns the number of values in the set
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns if the set is empty
+	 * 
+	 * @return
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the values in the order they were added
+	 * 
+	 * @return a new array
+	 */
+	public long[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	/**
+	 * Removes all the values, keeping the allocated space
+	 */
+	public void clear() {
+		if (size == 0) {
+			return;
+		}
+		size = 0;
+		if (++generation == 0) {
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		StringBuilder bld = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				bld.append(", ");
+			}
+			bld.append(values[i]);
+		}
+		return bld.append("]").toString();
+	}
+
+	private void grow() {
+		long[] oldValues = values;
+		int oldSize = size;
+		values = new long[oldValues.length * 2];
+		slots = new int[slots.length * 2];
+		stamps = new int[stamps.length * 2];
+		generation = 1;
+		size = 0;
+		for (int i = 0; i < oldSize; i++) {
+			add(oldValues[i]);
+		}
+	}
+
+	private static int hash(long value) {
+		long h = value * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
@@ -1,9 +1,14 @@
 package com.googlecode.routing.simulator;
 
 import java.io.IOException;
-import java.util.HashSet;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+
+import javax.management.JMException;
 
 /**
  * Initializes the environment and execute the router algorithm
@@ -25,14 +30,51 @@ public class Main {
 	/**
 	 * Executes the main routine
 	 * 
-	 * @param args The id of the router that is being bootstrapped (passed on the console) 
+	 * @param args The id of the router that is being bootstrapped (passed on the console), optionally followed by
+	 *            "-nio" to use the non-blocking transport, "-diff" to write only the changed paths instead of the whole
+	 *            table, "-mode" followed by the protocol mode (basic, split_horizon or poison_reverse), "-holddown"
+	 *            followed by the duration of the hold-down in milliseconds, "-watch" to apply the changes of the link
+	 *            configuration file while running, "-topology" followed by a file compiled by {@link TopologyFile} to
+	 *            be mapped instead of parsing the configuration files and "-metrics" followed by the interval in
+	 *            seconds between the reports of the metrics of the router
 	 * @throws IOException
 	 * @throws InterruptedException
 	 */
 	public static void main(String[] args) throws IOException, InterruptedException {
 
+		boolean nio = false;
+		TableChangeLogger.Format format = TableChangeLogger.Format.SNAPSHOT;
+		long metricsInterval = 0;
+		Router.ProtocolMode protocolMode = Router.ProtocolMode.BASIC;
+		long holdDownTime = 0;
+		boolean watch = false;
+		String topologyFile = null;
+		try {
+			for (int arg = 1; arg < args.length; arg++) {
+				if (args[arg].equals("-nio")) {
+					nio = true;
+				} else if (args[arg].equals("-diff")) {
+					format = TableChangeLogger.Format.DIFF;
+				} else if (args[arg].equals("-mode")) {
+					protocolMode = Router.ProtocolMode.valueOf(args[++arg].toUpperCase());
+				} else if (args[arg].equals("-holddown")) {
+					holdDownTime = Long.parseLong(args[++arg]);
+				} else if (args[arg].equals("-watch")) {
+					watch = true;
+				} else if (args[arg].equals("-topology")) {
+					topologyFile = args[++arg];
+				} else if (args[arg].equals("-metrics")) {
+					metricsInterval = Long.parseLong(args[++arg]) * 1000;
+				} else {
+					throw new IllegalArgumentException(args[arg]);
+				}
+			}
+		} catch (RuntimeException e) {
+			args = new String[0];
+		}
 		if (args.length < 1) {
-			System.err.println("USAGE: <router_id>");
+			System.err.println("USAGE: <router_id> [-nio] [-diff] [-mode <basic|split_horizon|poison_reverse>]"
+					+ " [-holddown <ms>] [-watch] [-topology <file>] [-metrics <seconds>]");
 			System.exit(1);
 		}
 
@@ -46,8 +88,18 @@ public class Main {
 			System.exit(2);
 		}
 
-		RouterTable routerTable = new RouterTable(ROTEADOR_CONFIG_DIR);
-		routerTable.parseConfigFile();
+		RouterTable routerTable;
+		LinkTable linkTable;
+		if (topologyFile != null) {
+			TopologyFile topology = TopologyFile.open(topologyFile);
+			routerTable = new RouterTable(topology);
+			linkTable = new LinkTable(topology);
+		} else {
+			routerTable = new RouterTable(ROTEADOR_CONFIG_DIR);
+			routerTable.parseConfigFile();
+			linkTable = new LinkTable(ENLACES_CONFIG_DIR);
+			linkTable.parseConfigFile();
+		}
 
 		RouterInfo currentRouterInfo = routerTable.getInfo(id);
 		if (currentRouterInfo == null) {
@@ -55,19 +107,76 @@ public class Main {
 			System.exit(3);
 		}
 
-		LinkTable linkTable = new LinkTable(ENLACES_CONFIG_DIR);
-		linkTable.parseConfigFile();
+		Router router = createRouter(currentRouterInfo, routerTable, linkTable, System.out);
+		router.protocolMode = protocolMode;
+		router.holdDownTime = holdDownTime;
+		try {
+			router.metrics.register();
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+		TableChangeLogger changeLogger = new TableChangeLogger(System.out, format);
+		router.changeLogger = changeLogger;
+		new Thread(changeLogger).start();
+		if (watch) {
+			new Thread(new LinkConfigWatcher(ENLACES_CONFIG_DIR, linkTable, routerTable, Collections.singletonMap(id,
+					router), System.out)).start();
+		}
+		if (metricsInterval > 0) {
+			new Thread(new MetricsReporter(Collections.singleton(router), System.out, metricsInterval)).start();
+		}
+		Executor workers = RouterServer.newWorkerPool(Runtime.getRuntime().availableProcessors());
+		NioEventLoop eventLoop = null;
+		if (nio) {
+			eventLoop = new NioEventLoop();
+			router.initTransport(new NioTransport(currentRouterInfo, eventLoop));
+			System.out.println("Ouvindo em: " + currentRouterInfo.ipAddress + ":" + currentRouterInfo.port + " (NIO)");
+		} else {
+			router.initSocket();
+		}
+
+		RouterClient client = new RouterClient(router);
+		RouterServer server = new RouterServer(router, client, workers);
+		if (server.listen()) {
+			new Thread(eventLoop).start();
+		} else {
+			new Thread(server).start();
+		}
+		new Thread(client).start();
+	}
+
+	/**
+	 * Creates the router described by the given metadata, connected to the neighbors found on the link table
+	 * 
+	 * @param routerInfo The metadata of the router to be created
+	 * @param routerTable The table with the metadata of all the routers of the network
+	 * @param linkTable The table with all the links of the network
+	 * @param out The stream used by the router to output messages
+	 * @return the router, still without a transport
+	 */
+	public static Router createRouter(RouterInfo routerInfo, RouterTable routerTable, LinkTable linkTable, PrintStream out) {
+		return createRouter(routerInfo, routerTable, linkTable, out, Clock.SYSTEM);
+	}
 
+	/**
+	 * Creates the router described by the given metadata, connected to the neighbors found on the link table and
+	 * driven by the given clock
+	 * 
+	 * @param routerInfo The metadata of the router to be created
+	 * @param routerTable The table with the metadata of all the routers of the network
+	 * @param linkTable The table with all the links of the network
+	 * @param out The stream used by the router to output messages
+	 * @param clock The clock that drives the timers of the protocol
+	 * @return the router, still without a transport
+	 */
+	public static Router createRouter(RouterInfo routerInfo, RouterTable routerTable, LinkTable linkTable,
+			PrintStream out, Clock clock) {
+		long id = routerInfo.id;
 		Map<Long, LinkInfo> links = linkTable.getLinksForRouter(id);
-		Set<RouterInfo> adjacentRouters = new HashSet<RouterInfo>();
+		Set<RouterInfo> adjacentRouters = new LinkedHashSet<RouterInfo>();
 		for (LinkInfo info : links.values()) {
 			adjacentRouters.add(routerTable.getInfo(info.routerAID == id ? info.routerBID : info.routerAID));
 		}
-
-		Router router = new Router(currentRouterInfo, adjacentRouters, links, System.out, linkTable.getCostsSum());
-		router.initSocket();
-
-		new Thread(new RouterServer(router)).start();
-		new Thread(new RouterClient(router)).start();
+		return new Router(routerInfo, adjacentRouters, links, out, linkTable.getCostsSum(), clock);
 	}
 }
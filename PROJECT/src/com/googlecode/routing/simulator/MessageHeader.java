@@ -0,0 +1,48 @@
+package com.googlecode.routing.simulator;
+
+/**
+ * Header of the binary messages (fragments of an advertisement) exchanged by the routers. A single instance can be
+ * reused to decode any number of messages
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class MessageHeader {
+
+	/**
+	 * Version of the wire format used to encode the message
+	 */
+	public int version;
+
+	/**
+	 * Kind of the message, either {@link WireFormat#TYPE_FULL} or {@link WireFormat#TYPE_DELTA}
+	 */
+	public int type;
+
+	/**
+	 * The id of the router that sent the message
+	 */
+	public long senderID;
+
+	/**
+	 * Sequence number of the advertisement, incremented by the sender at each message
+	 */
+	public long sequence;
+
+	/**
+	 * Position of this fragment inside the advertisement, starting at zero
+	 */
+	public int fragmentIndex;
+
+	/**
+	 * If this is the last fragment of the advertisement
+	 */
+	public boolean lastFragment;
+
+	/**
+	 * Number of entries carried by the fragment
+	 */
+	public int entryCount;
+
+}
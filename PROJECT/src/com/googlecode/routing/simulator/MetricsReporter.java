@@ -0,0 +1,63 @@
+package com.googlecode.routing.simulator;
+
+import java.io.PrintStream;
+import java.util.Collection;
+
+/**
+ * Prints the metrics of a group of routers periodically, until its thread is interrupted
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class MetricsReporter implements Runnable {
+
+	/**
+	 * The routers whose metrics are printed
+	 */
+	private final Collection<Router> routers;
+
+	/**
+	 * Where the metrics are printed
+	 */
+	private final PrintStream out;
+
+	/**
+	 * Interval between the reports, in milliseconds
+	 */
+	private final long interval;
+
+	/**
+	 * Creates the reporter
+	 * 
+	 * @param routers The routers whose metrics are printed
+	 * @param out Where the metrics are printed
+	 * @param interval Interval between the reports, in milliseconds
+	 */
+	public MetricsReporter(Collection<Router> routers, PrintStream out, long interval) {
+		this.routers = routers;
+		this.out = out;
+		this.interval = interval;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void run() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				Thread.sleep(interval);
+			} catch (InterruptedException e) {
+				return;
+			}
+			StringBuilder report = new StringBuilder();
+			for (Router router : routers) {
+				router.metrics.updateRates();
+				report.append(router.metrics).append('\n');
+			}
+			out.print(report);
+		}
+	}
+
+}
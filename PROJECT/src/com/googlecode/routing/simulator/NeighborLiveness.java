@@ -0,0 +1,224 @@
+package com.googlecode.routing.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Tracks which adjacent routers are alive with a hashed timer wheel. Each neighbor has a deadline, renewed by every
+ * message it sends; the wheel is a ring of buckets, each one holding the neighbors whose deadline falls on the same
+ * tick modulo the size of the ring.
+ * 
+ * Renewing a deadline only writes it, without moving the neighbor between buckets: when its bucket is reached, a
+ * neighbor whose deadline was pushed forward is simply placed on the bucket of the new deadline. So the receive path
+ * pays a single write per message, and {@link #expire(long, LongHashSet)} only visits the buckets of the ticks that
+ * passed, reporting just the neighbors that actually expired. The time is always given by the caller, in
+ * milliseconds, so the wheel can run on a simulated clock
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class NeighborLiveness {
+
+	/**
+	 * Default number of buckets of the wheel
+	 */
+	public static final int DEFAULT_WHEEL_SIZE = 64;
+
+	/**
+	 * The state of a neighbor
+	 */
+	private static class Entry {
+
+		final long routerID;
+
+		/**
+		 * Time until which the neighbor is considered alive
+		 */
+		volatile long deadline;
+
+		/**
+		 * If the neighbor is alive, in which case it is on a bucket of the wheel
+		 */
+		volatile boolean alive;
+
+		/**
+		 * Next neighbor on the same bucket, guarded by the wheel
+		 */
+		Entry next;
+
+		Entry(long routerID) {
+			this.routerID = routerID;
+		}
+	}
+
+	/**
+	 * Time without messages after which a neighbor is considered dead, in milliseconds
+	 */
+	private final long timeout;
+
+	/**
+	 * Duration of each tick of the wheel, in milliseconds
+	 */
+	private final long tickDuration;
+
+	/**
+	 * Dense index of the ids of the neighbors, replaced by a copy when a neighbor is added
+	 */
+	private volatile RouterIndex index;
+
+	/**
+	 * The neighbors, addressed by their position on {@link #index}, replaced by a copy when a neighbor is added
+	 */
+	private volatile Entry[] entries;
+
+	/**
+	 * First neighbor of each bucket, guarded by the wheel
+	 */
+	private final Entry[] buckets;
+
+	/**
+	 * The last tick whose bucket was visited, guarded by the wheel
+	 */
+	private long lastTick;
+
+	/**
+	 * Creates a wheel with {@link #DEFAULT_WHEEL_SIZE} buckets that spans the timeout twice
+	 * 
+	 * @param timeout Time without messages after which a neighbor is considered dead, in milliseconds
+	 */
+	public NeighborLiveness(long timeout) {
+		this(timeout, Math.max(1, 2 * timeout / DEFAULT_WHEEL_SIZE), DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * Creates a wheel
+	 * 
+	 * @param timeout Time without messages after which a neighbor is considered dead, in milliseconds
+	 * @param tickDuration Duration of each tick, which bounds how late an expiration may be detected
+	 * @param wheelSize Number of buckets, a power of two
+	 */
+	public NeighborLiveness(long timeout, long tickDuration, int wheelSize) {
+		if (tickDuration <= 0 || Integer.bitCount(wheelSize) != 1) {
+			throw new IllegalArgumentException("Invalid wheel: " + wheelSize + " ticks of " + tickDuration + " ms");
+		}
+		this.timeout = timeout;
+		this.tickDuration = tickDuration;
+		this.index = new RouterIndex(16);
+		this.entries = new Entry[0];
+		this.buckets = new Entry[wheelSize];
+		this.lastTick = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Adds a neighbor to be tracked, initially dead until its first message
+	 * 
+	 * @param routerID
+	 */
+	public synchronized void add(long routerID) {
+		if (index.indexOf(routerID) >= 0) {
+			return;
+		}
+		RouterIndex copy = new RouterIndex(index);
+		int i = copy.getOrAdd(routerID);
+		Entry[] copyEntries = Arrays.copyOf(entries, Math.max(entries.length, i + 1));
+		copyEntries[i] = new Entry(routerID);
+		entries = copyEntries;
+		index = copy;
+	}
+
+	/**
+	 * Records that a message of a neighbor arrived, extending its deadline
+	 * 
+	 * @param routerID
+	 * @param now The current time, in milliseconds
+	 * @return false if the router is not tracked
+	 */
+	public boolean refresh(long routerID, long now) {
+		Entry entry = get(routerID);
+		if (entry == null) {
+			return false;
+		}
+		entry.deadline = now + timeout;
+		if (!entry.alive) {
+			synchronized (this) {
+				if (!entry.alive) {
+					entry.alive = true;
+					schedule(entry);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tells if a neighbor sent a message within the timeout, as of the last call to
+	 * {@link #expire(long, LongHashSet)}
+	 * 
+	 * @param routerID
+	 * @return
+	 */
+	public boolean isAlive(long routerID) {
+		Entry entry = get(routerID);
+		return entry != null && entry.alive;
+	}
+
+	/**
+	 * Advances the wheel to the given time, marking as dead the neighbors whose deadline passed
+	 * 
+	 * @param now The current time, in milliseconds
+	 * @param expired Receives the ids of the neighbors that expired
+	 */
+	public synchronized void expire(long now, LongHashSet expired) {
+		long tick = now / tickDuration;
+		long first = tick - buckets.length + 1;
+		if (lastTick != Long.MIN_VALUE && lastTick + 1 > first) {
+			first = lastTick + 1;
+		}
+		for (long t = first; t <= tick; t++) {
+			lastTick = t;
+			int bucket = (int) (t & (buckets.length - 1));
+			Entry entry = buckets[bucket];
+			buckets[bucket] = null;
+			while (entry != null) {
+				Entry next = entry.next;
+				entry.next = null;
+				if (entry.deadline > now) {
+					schedule(entry);
+				} else {
+					entry.alive = false;
+					if (entry.deadline > now) {
+						// a message arrived while it was being expired
+						entry.alive = true;
+						schedule(entry);
+					} else {
+						expired.add(entry.routerID);
+					}
+				}
+				entry = next;
+			}
+		}
+	}
+
+	/**
+	 * Places a neighbor on the bucket of its deadline, or on the next bucket to be visited if the deadline is on a
+	 * tick already passed
+	 * 
+	 * @param entry
+	 */
+	private void schedule(Entry entry) {
+		long tick = entry.deadline / tickDuration;
+		if (lastTick != Long.MIN_VALUE && tick <= lastTick) {
+			tick = lastTick + 1;
+		}
+		int bucket = (int) (tick & (buckets.length - 1));
+		entry.next = buckets[bucket];
+		buckets[bucket] = entry;
+	}
+
+	private Entry get(long routerID) {
+		int i = index.indexOf(routerID);
+		Entry[] entries = this.entries;
+		return i < 0 || i >= entries.length ? null : entries[i];
+	}
+
+}
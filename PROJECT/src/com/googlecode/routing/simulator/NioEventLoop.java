@@ -0,0 +1,160 @@
+package com.googlecode.routing.simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Single thread that serves the {@link NioTransport}s of any number of routers. Each wakeup drains all the pending
+ * datagrams of the ready channels, handing them to the {@link PacketHandler} of their router, and flushes the sends
+ * that could not be completed right away
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class NioEventLoop implements Runnable {
+
+	/**
+	 * Maximum number of datagrams read from the same channel per wakeup, so a busy router can not starve the others
+	 */
+	public static final int MAX_READS_PER_WAKEUP = 64;
+
+	/**
+	 * Maximum number of idle send buffers kept by the pool
+	 */
+	public static final int MAX_IDLE_BUFFERS = 256;
+
+	/**
+	 * The selector that watches the channels
+	 */
+	private final Selector selector;
+
+	/**
+	 * Transports waiting to be registered on the selector
+	 */
+	private final Queue<NioTransport> registrations;
+
+	/**
+	 * Transports whose interest on writing changed
+	 */
+	private final Queue<NioTransport> writeInterests;
+
+	/**
+	 * Buffer reused to read every datagram
+	 */
+	private final ByteBuffer receiveBuffer;
+
+	/**
+	 * Pool of the buffers used to send datagrams
+	 */
+	private final BufferPool sendBufferPool;
+
+	/**
+	 * Creates a new event loop. It only starts serving the transports when {@link #run()} is called
+	 * 
+	 * @throws IOException
+	 */
+	public NioEventLoop() throws IOException {
+		this.selector = Selector.open();
+		this.registrations = new ConcurrentLinkedQueue<NioTransport>();
+		this.writeInterests = new ConcurrentLinkedQueue<NioTransport>();
+		this.receiveBuffer = ByteBuffer.allocateDirect(WireFormat.MAX_DATAGRAM_SIZE);
+		this.sendBufferPool = new BufferPool(WireFormat.MAX_DATAGRAM_SIZE, MAX_IDLE_BUFFERS);
+	}
+
+	/**
+	 * Returns the pool of buffers used by the transports of this loop to send datagrams
+	 * 
+	 * @return
+	 */
+	public BufferPool getSendBufferPool() {
+		return sendBufferPool;
+	}
+
+	/**
+	 * Schedules the registration of a transport on this loop
+	 * 
+	 * @param transport
+	 */
+	void register(NioTransport transport) {
+		registrations.add(transport);
+		selector.wakeup();
+	}
+
+	/**
+	 * Asks the loop to update the interest of a transport on writing, after sends were queued or flushed
+	 * 
+	 * @param transport
+	 */
+	void updateWriteInterest(NioTransport transport) {
+		writeInterests.add(transport);
+		selector.wakeup();
+	}
+
+	/**
+	 * Serves the registered transports until the thread is interrupted
+	 */
+	@Override
+	public void run() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				selector.select();
+				processRegistrations();
+				processWriteInterests();
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					NioTransport transport = (NioTransport) key.attachment();
+					try {
+						if (key.isValid() && key.isWritable() && transport.flush()) {
+							key.interestOps(SelectionKey.OP_READ);
+						}
+						if (key.isValid() && key.isReadable()) {
+							transport.drain(receiveBuffer, MAX_READS_PER_WAKEUP);
+						}
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				selector.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void processRegistrations() {
+		NioTransport transport;
+		while ((transport = registrations.poll()) != null) {
+			try {
+				transport.getChannel().register(selector, SelectionKey.OP_READ, transport);
+			} catch (ClosedChannelException e) {
+				// the transport was closed before being registered
+			}
+		}
+	}
+
+	private void processWriteInterests() {
+		NioTransport transport;
+		while ((transport = writeInterests.poll()) != null) {
+			SelectionKey key = transport.getChannel().keyFor(selector);
+			if (key != null && key.isValid()) {
+				key.interestOps(transport.hasPendingSends() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,212 @@
+package com.googlecode.routing.simulator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Non-blocking transport built on a {@link DatagramChannel}. Messages are received by a {@link NioEventLoop}, that
+ * may be shared by many routers, and handed to the {@link PacketHandler} of the router, so no thread waits for
+ * them. Sends never block: datagrams that do not fit in the socket buffer are queued and flushed by the
+ * event loop
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class NioTransport implements Transport {
+
+	/**
+	 * Maximum number of datagrams waiting to be sent, the ones sent beyond that are discarded
+	 */
+	public static final int MAX_PENDING_SENDS = 1024;
+
+	/**
+	 * A datagram waiting to be sent
+	 */
+	private static class PendingSend {
+
+		final ByteBuffer buffer;
+
+		final InetSocketAddress address;
+
+		PendingSend(ByteBuffer buffer, InetSocketAddress address) {
+			this.buffer = buffer;
+			this.address = address;
+		}
+	}
+
+	/**
+	 * The event loop that serves this transport
+	 */
+	private final NioEventLoop eventLoop;
+
+	/**
+	 * The channel bound to the address and port of the router
+	 */
+	private final DatagramChannel channel;
+
+	/**
+	 * Largest datagram that fits in the MTU of the interface the channel is bound to
+	 */
+	private final int maxDatagramSize;
+
+	/**
+	 * Socket address of each destination, so they are not created again at each send
+	 */
+	private final Map<RouterInfo, InetSocketAddress> addresses;
+
+	/**
+	 * Datagrams waiting for space on the socket buffer
+	 */
+	private final Queue<PendingSend> pendingSends;
+
+	/**
+	 * Receives the messages of this transport
+	 */
+	private PacketHandler handler;
+
+	/**
+	 * Opens a non-blocking channel bound to the address and port of the given router
+	 * 
+	 * @param routerInfo The metadata of the router that owns this transport
+	 * @param eventLoop The event loop that will serve this transport
+	 * @throws IOException
+	 */
+	public NioTransport(RouterInfo routerInfo, NioEventLoop eventLoop) throws IOException {
+		this.eventLoop = eventLoop;
+		this.channel = DatagramChannel.open();
+		this.channel.configureBlocking(false);
+		this.channel.socket().bind(new InetSocketAddress(routerInfo.ipAddress, routerInfo.port));
+		this.maxDatagramSize = UdpTransport.getMaxDatagramSize(routerInfo.ipAddress);
+		this.addresses = new ConcurrentHashMap<RouterInfo, InetSocketAddress>();
+		this.pendingSends = new ConcurrentLinkedQueue<PendingSend>();
+	}
+
+	/**
+	 * Registers the handler of the received messages and starts being served by the event loop
+	 * 
+	 * @param handler
+	 * @return always true
+	 */
+	@Override
+	public boolean setHandler(PacketHandler handler) {
+		this.handler = handler;
+		eventLoop.register(this);
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void send(RouterInfo destination, byte[] data, int length) throws IOException {
+		InetSocketAddress address = addresses.get(destination);
+		if (address == null) {
+			address = new InetSocketAddress(destination.ipAddress, destination.port);
+			addresses.put(destination, address);
+		}
+		BufferPool pool = eventLoop.getSendBufferPool();
+		ByteBuffer buffer = pool.acquire();
+		buffer.put(data, 0, length);
+		buffer.flip();
+		if (pendingSends.isEmpty() && channel.send(buffer, address) > 0) {
+			pool.release(buffer);
+			return;
+		}
+		if (pendingSends.size() >= MAX_PENDING_SENDS) {
+			pool.release(buffer);
+			return;
+		}
+		boolean wasEmpty = pendingSends.isEmpty();
+		pendingSends.add(new PendingSend(buffer, address));
+		if (wasEmpty) {
+			eventLoop.updateWriteInterest(this);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getMaxDatagramSize() {
+		return maxDatagramSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		PendingSend pending;
+		while ((pending = pendingSends.poll()) != null) {
+			eventLoop.getSendBufferPool().release(pending.buffer);
+		}
+	}
+
+	/**
+	 * Reads the datagrams available on the channel and hands them to the handler
+	 * 
+	 * @param buffer The buffer used to read the datagrams
+	 * @param maxReads Maximum number of datagrams to be read
+	 * @throws IOException
+	 */
+	void drain(ByteBuffer buffer, int maxReads) throws IOException {
+		for (int i = 0; i < maxReads; i++) {
+			buffer.clear();
+			InetSocketAddress source = (InetSocketAddress) channel.receive(buffer);
+			if (source == null) {
+				return;
+			}
+			buffer.flip();
+			handler.handlePacket(source.getAddress(), source.getPort(), buffer);
+		}
+	}
+
+	/**
+	 * Sends the queued datagrams while there is space on the socket buffer
+	 * 
+	 * @return if every queued datagram was sent
+	 * @throws IOException
+	 */
+	synchronized boolean flush() throws IOException {
+		PendingSend pending;
+		while ((pending = pendingSends.peek()) != null) {
+			if (channel.send(pending.buffer, pending.address) == 0) {
+				return false;
+			}
+			pendingSends.poll();
+			eventLoop.getSendBufferPool().release(pending.buffer);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns if there are datagrams waiting to be sent
+	 * 
+	 * @return
+	 */
+	boolean hasPendingSends() {
+		return !pendingSends.isEmpty();
+	}
+
+	/**
+	 * Returns the channel of this transport
+	 * 
+	 * @return
+	 */
+	DatagramChannel getChannel() {
+		return channel;
+	}
+
+}
@@ -0,0 +1,24 @@
+package com.googlecode.routing.simulator;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the messages delivered by an event driven transport
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public interface PacketHandler {
+
+	/**
+	 * Handles a received message. The buffer is only valid until this method returns
+	 * 
+	 * @param address The address of the sender
+	 * @param port The port of the sender
+	 * @param data The buffer positioned at the beginning of the message and limited to its end
+	 */
+	void handlePacket(InetAddress address, int port, ByteBuffer data);
+
+}
@@ -0,0 +1,72 @@
+package com.googlecode.routing.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of paths stored as parallel primitive arrays (destination, gateway and cost). Used to hold the
+ * entries of a received advertisement until they can be applied to the tables of the router, and reused between
+ * advertisements
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class PathList {
+
+	private long[] destinations;
+
+	private long[] gateways;
+
+	private double[] costs;
+
+	private int size;
+
+	public PathList() {
+		this.destinations = new long[16];
+		this.gateways = new long[16];
+		this.costs = new double[16];
+	}
+
+	/**
+	 * Appends a path to the list
+	 * 
+	 * @param destinationRouterID
+	 * @param gatewayRouterID
+	 * @param cost
+	 */
+	public void add(long destinationRouterID, long gatewayRouterID, double cost) {
+		if (size == destinations.length) {
+			destinations = Arrays.copyOf(destinations, size * 2);
+			gateways = Arrays.copyOf(gateways, size * 2);
+			costs = Arrays.copyOf(costs, size * 2);
+		}
+		destinations[size] = destinationRouterID;
+		gateways[size] = gatewayRouterID;
+		costs[size] = cost;
+		size++;
+	}
+
+	public long getDestination(int i) {
+		return destinations[i];
+	}
+
+	public long getGateway(int i) {
+		return gateways[i];
+	}
+
+	public double getCost(int i) {
+		return costs[i];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all the paths, keeping the allocated space
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+}
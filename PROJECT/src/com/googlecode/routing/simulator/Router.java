@@ -1,15 +1,17 @@
 package com.googlecode.routing.simulator;
 
 import java.io.PrintStream;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.Map.Entry;
 
 /**
  * Represents the Router and calls the actions to communicate and receive messages from other Routers
@@ -20,15 +22,47 @@ import java.util.Map.Entry;
  */
 public class Router {
 
+	/**
+	 * The variants of the distance vector protocol, which differ on what is advertised to each neighbor
+	 */
+	public enum ProtocolMode {
+		/**
+		 * Every neighbor receives the whole table
+		 */
+		BASIC,
+		/**
+		 * The paths whose gateway is a neighbor are not advertised back to it. As the deltas carry no removals, a
+		 * path that changed to that gateway is withdrawn by advertising it as unreachable
+		 */
+		SPLIT_HORIZON,
+		/**
+		 * The paths whose gateway is a neighbor are advertised back to it as unreachable
+		 */
+		POISON_REVERSE
+	}
+
 	/**
 	 * The interval between sent messages containing the table of links
 	 */
 	public static final long SLEEP_TIME = 4000;
+
+	/**
+	 * Every how many periodic rounds the whole table is sent to the neighbors. In the other rounds only the
+	 * changed paths are sent, so lost deltas are repaired at most after this number of rounds
+	 */
+	public static final long FULL_REFRESH_ROUNDS = 4;
+
+	/**
+	 * Time without messages from a neighbor after which it is considered unavailable
+	 */
+	public static final long NEIGHBOR_TIMEOUT = 5 * SLEEP_TIME;
 	
 	/**
-	 * A map that contains the minimum known path to any know node of the graph
+	 * The table that contains the minimum known path to any know node of the graph and the last vector received
+	 * from each neighbor. Also the lock that serializes the threads that change the routing state of the router;
+	 * threads that only read the table use the published {@link TableSnapshot} instead
 	 */
-	public final Map<Long, Map<Long, PathInfo>> minimumPathTable;
+	public final RoutingTable minimumPathTable;
 	
 	/**
 	 * The metadata of the router
@@ -36,20 +70,69 @@ public class Router {
 	public final RouterInfo routerInfo;
 	
 	/**
-	 * The known links to other routers
+	 * The known links to other routers, indexed by the id of the adjacent router. Replaced by a copy when a link
+	 * changes
 	 */
-	public final Map<Long, LinkInfo> links;
+	public volatile Map<Long, LinkInfo> links;
 	
 	/**
-	 * The set of routers that are directly connected to this one
+	 * The set of routers that are directly connected to this one. Replaced by a copy when a link is added or removed
+	 */
+	public volatile Set<RouterInfo> adjacentRouters;
+
+	/**
+	 * Dense index of the ids of the adjacent routers, replaced by a copy when a router is added
+	 */
+	private volatile RouterIndex adjacentIndex;
+
+	/**
+	 * The adjacent routers, addressed by their position on {@link #adjacentIndex}; removed routers are left as null
 	 */
-	public final Set<RouterInfo> adjacentRouters;
+	private volatile RouterInfo[] adjacentByIndex;
+
+	/**
+	 * The adjacent routers, indexed by the address and port they send from
+	 */
+	private volatile Map<InetSocketAddress, RouterInfo> adjacentByAddress;
 	
 	/**
-	 * The map that contains the timestamp of the last message of each adjacent router.
+	 * The deadlines of the messages of each adjacent router.
 	 * Useful to identify disconnections
 	 */
-	public Map<Long, Long> lastPing;
+	public final NeighborLiveness liveness;
+
+	/**
+	 * The destinations whose path changed since the last published snapshot. Guarded by {@link #minimumPathTable}
+	 */
+	public final LongHashSet pendingChanges;
+
+	/**
+	 * The latest snapshot of the table
+	 */
+	private volatile TableSnapshot snapshot;
+
+	/**
+	 * The forwarding table compiled from the latest snapshot
+	 */
+	private volatile ForwardingTable forwardingTable;
+
+	/**
+	 * Copy of the index of the destinations shared by the snapshots while no destination is added. Guarded by
+	 * {@link #minimumPathTable}
+	 */
+	private RouterIndex snapshotIndex;
+
+	/**
+	 * The destinations changed by the last call to {@link #relaxEdges(long)}, reused between calls
+	 */
+	private final LongHashSet lastChanges;
+
+
+	/**
+	 * The sequence number of the last advertisement accepted from each adjacent router. Guarded by
+	 * {@link #minimumPathTable}
+	 */
+	public final Map<Long, Long> lastSequence;
 	
 	/**
 	 * Maximum value to consider on count to infinity
@@ -67,12 +150,67 @@ public class Router {
 	public final PrintStream out;
 
 	/**
-	 * Socket that is used to send and receive messages
+	 * Transport that is used to send and receive messages
 	 */
-	public DatagramSocket serverSocket;
+	public Transport transport;
 
 	/**
-	 * Initializes the Router
+	 * The clock that drives the timers of the protocol
+	 */
+	public final Clock clock;
+
+	/**
+	 * Counters and histograms of the hot paths of the router
+	 */
+	public final RouterMetrics metrics;
+
+	/**
+	 * Receives the changes of the table to be written on the background, null if the changes are not written
+	 */
+	public volatile TableChangeLogger changeLogger;
+
+	/**
+	 * The client that advertises the table, used to send a triggered update when the table is changed from outside
+	 * the server, null until the client is created
+	 */
+	public volatile RouterClient client;
+
+	/**
+	 * What is advertised to each neighbor
+	 */
+	public volatile ProtocolMode protocolMode;
+
+	/**
+	 * Time during which a path that got worse only accepts updates from its previous gateway, in milliseconds, or
+	 * zero to disable the hold-down
+	 */
+	public volatile long holdDownTime;
+
+	/**
+	 * Time until which the path to each destination is held down, indexed as the table. Guarded by
+	 * {@link #minimumPathTable}
+	 */
+	private long[] holdDownUntil;
+
+	/**
+	 * The gateway of each path when its hold-down started. Guarded by {@link #minimumPathTable}
+	 */
+	private long[] holdDownGateway;
+
+	/**
+	 * The feasible successor of each destination, indexed as the table, or -1 if there is none. Guarded by
+	 * {@link #minimumPathTable}
+	 */
+	private long[] backupGateway;
+
+	/**
+	 * The cost of the path through the feasible successor of each destination. Guarded by
+	 * {@link #minimumPathTable}
+	 */
+	private double[] backupCost;
+
+	/**
+	 * Initializes the Router, driven by the wall clock
 	 * @param routerInfo Metadata about the router
 	 * @param adjacentRouters Set of directly connected routers
 	 * @param links Map containing the data used to connect to any known node of the graph
@@ -80,39 +218,125 @@ public class Router {
 	 * @param maxCountToInfinity
 	 */
 	public Router(RouterInfo routerInfo, Set<RouterInfo> adjacentRouters, Map<Long, LinkInfo> links, PrintStream out, double maxCountToInfinity) {
+		this(routerInfo, adjacentRouters, links, out, maxCountToInfinity, Clock.SYSTEM);
+	}
+
+	/**
+	 * Initializes the Router
+	 * @param routerInfo Metadata about the router
+	 * @param adjacentRouters Set of directly connected routers
+	 * @param links Map containing the data used to connect to any known node of the graph
+	 * @param out The output entity
+	 * @param maxCountToInfinity
+	 * @param clock The clock that drives the timers of the protocol
+	 */
+	public Router(RouterInfo routerInfo, Set<RouterInfo> adjacentRouters, Map<Long, LinkInfo> links, PrintStream out,
+			double maxCountToInfinity, Clock clock) {
 
 		this.routerInfo = routerInfo;
 		this.adjacentRouters = adjacentRouters;
+		this.adjacentIndex = new RouterIndex(adjacentRouters.size());
+		this.adjacentByIndex = new RouterInfo[adjacentRouters.size()];
+		this.adjacentByAddress = new HashMap<InetSocketAddress, RouterInfo>();
+		this.liveness = new NeighborLiveness(NEIGHBOR_TIMEOUT);
+		for (RouterInfo info : adjacentRouters) {
+			indexAdjacentRouter(info);
+			liveness.add(info.id);
+		}
 		this.links = links;
-		this.minimumPathTable = new HashMap<Long, Map<Long, PathInfo>>();
-		this.lastPing = new HashMap<Long, Long>();
+		this.minimumPathTable = new RoutingTable(routerInfo.id, links.size() + 1);
+		this.pendingChanges = new LongHashSet();
+		this.lastChanges = new LongHashSet();
+		this.lastSequence = new HashMap<Long, Long>();
 		this.maxCountToInfinity = maxCountToInfinity;
 		this.out = out;
+		this.clock = clock;
+		this.metrics = new RouterMetrics(this);
+		this.protocolMode = ProtocolMode.BASIC;
+		this.holdDownUntil = new long[0];
+		this.holdDownGateway = new long[0];
+		this.backupGateway = new long[0];
+		this.backupCost = new double[0];
 
-		Map<Long, PathInfo> distanceVector = new HashMap<Long, PathInfo>();
+		DistanceVector distanceVector = minimumPathTable.getOwnVector();
+		distanceVector.put(routerInfo.id, 0, routerInfo.id);
 		for (LinkInfo info : links.values()) {
-			PathInfo path = new PathInfo();
-			path.cost = info.cost;
-			path.destinationRouterID = (info.routerAID == routerInfo.id) ? info.routerBID : info.routerAID;
-			path.gatewayRouterID = path.destinationRouterID;
-			distanceVector.put(path.destinationRouterID, path);
-		}
-		PathInfo pathToMyself = new PathInfo();
-		pathToMyself.cost = 0;
-		pathToMyself.destinationRouterID = routerInfo.id;
-		pathToMyself.gatewayRouterID = pathToMyself.destinationRouterID;
-		distanceVector.put(pathToMyself.destinationRouterID, pathToMyself);
-		this.minimumPathTable.put(this.routerInfo.id, distanceVector);
+			long destinationRouterID = (info.routerAID == routerInfo.id) ? info.routerBID : info.routerAID;
+			distanceVector.put(destinationRouterID, info.cost, destinationRouterID);
+		}
 
+		this.publishSnapshot();
 		this.printDistanceTable();
 	}
 
 	/**
-	 * Returns the map containing the minimum known distance to each known node
+	 * Returns a read-only view of the minimum known distance to each known node, as of the latest snapshot
 	 * @return
 	 */
 	public Map<Long, PathInfo> getDistanceTable() {
-		return this.minimumPathTable.get(this.routerInfo.id);
+		return snapshot.asMap();
+	}
+
+	/**
+	 * Returns the minimum known distance to each known node. The vector is changed in place, so it must only be
+	 * used while holding the lock on {@link #minimumPathTable}; other threads should use {@link #getSnapshot()}
+	 * @return
+	 */
+	public DistanceVector getDistanceVector() {
+		return minimumPathTable.getOwnVector();
+	}
+
+	/**
+	 * Returns the latest published snapshot of the table, which can be read without any lock
+	 * 
+	 * @return
+	 */
+	public TableSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Returns the forwarding table compiled from the latest snapshot, which can be read without any lock
+	 * 
+	 * @return
+	 */
+	public ForwardingTable getForwardingTable() {
+		return forwardingTable;
+	}
+
+	/**
+	 * Publishes a snapshot of the table with the changes made since the previous one and passes it to the
+	 * {@link #changeLogger}, if any. The forwarding table is compiled again only if a next hop changed. Must be
+	 * called holding the lock on {@link #minimumPathTable}
+	 * 
+	 * @return the latest snapshot, which is the previous one if nothing changed
+	 */
+	public TableSnapshot publishSnapshot() {
+		TableSnapshot previous = snapshot;
+		if (previous != null && pendingChanges.isEmpty()) {
+			return previous;
+		}
+		RouterIndex index = minimumPathTable.getIndex();
+		if (snapshotIndex == null || snapshotIndex.size() != index.size()) {
+			snapshotIndex = new RouterIndex(index);
+		}
+		TableSnapshot published = new TableSnapshot(previous == null ? 0 : previous.getVersion() + 1,
+				new DistanceVector(getDistanceVector(), snapshotIndex), pendingChanges.toArray());
+		pendingChanges.clear();
+		if (previous != null) {
+			previous.setNext(published);
+		}
+		snapshot = published;
+		ForwardingTable forwarding = forwardingTable;
+		if (forwarding == null || !forwarding.matches(published, adjacentIndex, adjacentByIndex)) {
+			forwardingTable = new ForwardingTable(published, routerInfo.id, adjacentIndex, adjacentByIndex);
+		}
+
+		TableChangeLogger logger = changeLogger;
+		if (logger != null && published.getChangeCount() > 0) {
+			logger.changed(this, published);
+		}
+		return published;
 	}
 
 	/**
@@ -122,10 +346,19 @@ public class Router {
 	 * @throws UnknownHostException
 	 */
 	public void initSocket() throws SocketException, UnknownHostException {
-		serverSocket = new DatagramSocket(routerInfo.port, routerInfo.ipAddress);
+		initTransport(new UdpTransport(routerInfo));
 		System.out.println("Ouvindo em: " + routerInfo.ipAddress + ":" + routerInfo.port);
 	}
 
+	/**
+	 * Assigns the transport used to exchange messages with the neighbors
+	 * 
+	 * @param transport
+	 */
+	public void initTransport(Transport transport) {
+		this.transport = transport;
+	}
+
 	/**
 	 * Based on the ip address and port used, this method can identify what is the ID of the router
 	 * @param inetAddr
@@ -133,111 +366,556 @@ public class Router {
 	 * @return the complete metadata of the router
 	 */
 	public RouterInfo getAdjacentByIPAndPort(InetAddress inetAddr, int port) {
-		for (RouterInfo info : adjacentRouters) {
-			if (info.ipAddress.equals(inetAddr) && info.port == port) {
-				return info;
+		return adjacentByAddress.get(new InetSocketAddress(inetAddr, port));
+	}
+
+	/**
+	 * Identifies the adjacent router that sent a message, based on the sender id carried by the message. The id is
+	 * only trusted if the message came from the address and port configured for that router
+	 * 
+	 * @param senderID The id of the sender, as declared on the message
+	 * @param inetAddr The address the message came from
+	 * @param port The port the message came from
+	 * @return the complete metadata of the router, or null if it is not adjacent or the address does not match
+	 */
+	public RouterInfo getAdjacent(long senderID, InetAddress inetAddr, int port) {
+		int i = adjacentIndex.indexOf(senderID);
+		RouterInfo[] adjacentByIndex = this.adjacentByIndex;
+		if (i < 0 || i >= adjacentByIndex.length) {
+			return null;
+		}
+		RouterInfo info = adjacentByIndex[i];
+		if (info == null || info.port != port || !info.ipAddress.equals(inetAddr)) {
+			return null;
+		}
+		return info;
+	}
+
+	/**
+	 * Adds a router to the indices used to identify the senders of the messages
+	 * 
+	 * @param info
+	 */
+	private void indexAdjacentRouter(RouterInfo info) {
+		int i = adjacentIndex.getOrAdd(info.id);
+		if (i >= adjacentByIndex.length) {
+			adjacentByIndex = Arrays.copyOf(adjacentByIndex, Math.max(adjacentByIndex.length * 2, i + 1));
+		}
+		adjacentByIndex[i] = info;
+		adjacentByAddress.put(new InetSocketAddress(info.ipAddress, info.port), info);
+	}
+
+	/**
+	 * Publishes copies of the indices of the adjacent routers with the given router added or removed, so the threads
+	 * that identify the senders never see them half changed
+	 * 
+	 * @param neighborID
+	 * @param info the metadata of the router to be added, or null to remove it
+	 */
+	private void replaceAdjacentRouter(long neighborID, RouterInfo info) {
+		RouterIndex index = new RouterIndex(adjacentIndex);
+		int i = index.getOrAdd(neighborID);
+		RouterInfo[] byIndex = Arrays.copyOf(adjacentByIndex, Math.max(adjacentByIndex.length, i + 1));
+		Map<InetSocketAddress, RouterInfo> byAddress = new HashMap<InetSocketAddress, RouterInfo>(adjacentByAddress);
+		Set<RouterInfo> routers = new LinkedHashSet<RouterInfo>();
+		for (RouterInfo adjacent : adjacentRouters) {
+			if (adjacent.id != neighborID) {
+				routers.add(adjacent);
+			}
+		}
+		if (byIndex[i] != null) {
+			byAddress.remove(new InetSocketAddress(byIndex[i].ipAddress, byIndex[i].port));
+		}
+		byIndex[i] = info;
+		if (info != null) {
+			byAddress.put(new InetSocketAddress(info.ipAddress, info.port), info);
+			routers.add(info);
+			liveness.add(neighborID);
+		}
+		adjacentByIndex = byIndex;
+		adjacentIndex = index;
+		adjacentByAddress = byAddress;
+		adjacentRouters = routers;
+	}
+
+	/**
+	 * Changes the cost of the direct link to a router, which becomes adjacent if it was not. Only the paths that may
+	 * use the link are recomputed: if the cost decreased, the vector of the router is relaxed again with the new
+	 * cost; if it increased, the paths through the router are also compared with the vectors of the other
+	 * neighbors. The feasible successors through the router are searched again, as their cost includes the link.
+	 * Must be called holding the lock on {@link #minimumPathTable}
+	 * 
+	 * @param neighbor The metadata of the router at the other end of the link
+	 * @param cost The new cost of the link
+	 * @return if any path changed
+	 */
+	public boolean updateLink(RouterInfo neighbor, double cost) {
+		long neighborID = neighbor.id;
+		LinkInfo previous = links.get(neighborID);
+		if (previous != null && previous.cost == cost) {
+			return false;
+		}
+		LinkInfo link = new LinkInfo();
+		link.routerAID = routerInfo.id;
+		link.routerBID = neighborID;
+		link.cost = cost;
+		Map<Long, LinkInfo> copy = new HashMap<Long, LinkInfo>(links);
+		copy.put(neighborID, link);
+		links = copy;
+		if (previous == null) {
+			replaceAdjacentRouter(neighborID, neighbor);
+		}
+
+		long now = holdDownTime > 0 ? clock.currentTimeMillis() : 0;
+		DistanceVector myDistanceVector = getDistanceVector();
+		int changed = 0;
+		int owner = minimumPathTable.getIndex().indexOf(neighborID);
+		if (owner < 0 || !myDistanceVector.contains(owner) || cost < myDistanceVector.getCost(owner)
+				|| myDistanceVector.getGateway(owner) == neighborID) {
+			myDistanceVector.put(neighborID, cost, neighborID);
+			pendingChanges.add(neighborID);
+			changed++;
+		}
+		metrics.routesChanged(changed);
+		if (minimumPathTable.getVector(neighborID) == null) {
+			return changed > 0;
+		}
+
+		LongHashSet changes = relaxEdges(neighborID);
+		changed += changes.size();
+		int worse = 0;
+		if (previous != null && cost > previous.cost) {
+			RouterIndex index = minimumPathTable.getIndex();
+			int me = index.indexOf(routerInfo.id);
+			for (int i = 0; i < myDistanceVector.capacity(); i++) {
+				if (i != me && myDistanceVector.contains(i) && myDistanceVector.getGateway(i) == neighborID
+						&& reconsiderPath(i, now)) {
+					pendingChanges.add(index.idOf(i));
+					worse++;
+				}
+			}
+			metrics.routesChanged(worse);
+		}
+		for (int i = 0; i < backupGateway.length; i++) {
+			if (backupGateway[i] == neighborID) {
+				findBackup(i);
 			}
 		}
-		return null;
+		return changed + worse > 0;
 	}
 
 	/**
-	 * Attributes new weights to the edges
+	 * Removes the direct link to an adjacent router, handled as the loss of the router by
+	 * {@link #invalidateNeighbor(long)}. Must be called holding the lock on {@link #minimumPathTable}
+	 * 
+	 * @param neighborID
+	 * @return if any path changed
+	 */
+	public boolean removeLink(long neighborID) {
+		if (!links.containsKey(neighborID)) {
+			return false;
+		}
+		Map<Long, LinkInfo> copy = new HashMap<Long, LinkInfo>(links);
+		copy.remove(neighborID);
+		links = copy;
+		replaceAdjacentRouter(neighborID, null);
+		lastSequence.remove(neighborID);
+		return invalidateNeighbor(neighborID);
+	}
+
+	/**
+	 * Compares the path to a destination with the paths offered by every neighbor, switching to the cheapest one.
+	 * Paths held down only accept their previous gateway
+	 * 
+	 * @param i the index of the destination
+	 * @param now
+	 * @return if the path changed
+	 */
+	private boolean reconsiderPath(int i, long now) {
+		DistanceVector myDistanceVector = getDistanceVector();
+		double cost = myDistanceVector.getCost(i);
+		long gateway = myDistanceVector.getGateway(i);
+		LongHashSet owners = minimumPathTable.getVectorOwners();
+		for (int j = 0; j < owners.size(); j++) {
+			long owner = owners.get(j);
+			DistanceVector vector = minimumPathTable.getVector(owner);
+			if (owner == routerInfo.id || !vector.contains(i) || isHeldDown(i, owner, now)) {
+				continue;
+			}
+			double offered = vector.getCost(i) + getLinkCost(owner);
+			if (offered < cost) {
+				cost = offered;
+				gateway = owner;
+			}
+		}
+		if (gateway == myDistanceVector.getGateway(i)) {
+			return false;
+		}
+		myDistanceVector.set(i, cost, gateway);
+		findBackup(i);
+		return true;
+	}
+
+	/**
+	 * Attributes new weights to the edges, based on the distance vector of the given router. Every path is
+	 * compared with its previous value as it is updated, so no copy of the table is made. Paths learned from the
+	 * vector use the cost of the direct link to its owner, as the owner is the gateway of those paths. Paths held
+	 * down only accept the vector of their previous gateway. The feasible successors of the destinations visited are
+	 * updated on the way
 	 * 
 	 * @param changedVectorRouterID
-	 * @return if there was any information that wasn't already registered
+	 * @return the destinations whose path changed; the set is reused by the next call, so it must be read before
+	 *         releasing the lock on {@link #minimumPathTable}
 	 */
-	public boolean relaxEdges(long changedVectorRouterID) {
+	public LongHashSet relaxEdges(long changedVectorRouterID) {
+
+		long start = System.nanoTime();
+		long now = holdDownTime > 0 ? clock.currentTimeMillis() : 0;
+		LongHashSet changes = this.lastChanges;
+		changes.clear();
+
+		DistanceVector myDistanceVector = getDistanceVector();
+		DistanceVector receivedVector = minimumPathTable.getVector(changedVectorRouterID);
+		RouterIndex index = minimumPathTable.getIndex();
 
-		Map<Long, PathInfo> myDistanceTable = getDistanceTable();
-		Map<Long, PathInfo> beforeList = new HashMap<Long, PathInfo>();
-		for (Entry<Long, PathInfo> entry : myDistanceTable.entrySet()) {
-			beforeList.put(entry.getKey(), new PathInfo(entry.getValue()));
+		int owner = index.indexOf(changedVectorRouterID);
+		double costToOwner = myDistanceVector.getCost(owner);
+		long gatewayToOwner = myDistanceVector.getGateway(owner);
+		if (gatewayToOwner == changedVectorRouterID && changedVectorRouterID != routerInfo.id) {
+			costToOwner = Router.INFINITY;
 		}
+		double linkCost = getLinkCost(changedVectorRouterID);
+		if (costToOwner > linkCost) {
+			costToOwner = linkCost;
+			gatewayToOwner = changedVectorRouterID;
+		}
+
+		int me = index.indexOf(routerInfo.id);
+		int size = index.size();
+		ensureBackupCapacity(size);
+		for (int i = 0; i < size; i++) {
+			boolean known = myDistanceVector.contains(i);
+			boolean received = receivedVector.contains(i);
+			if (!known && !received) {
+				continue;
+			}
 
-		for (PathInfo path : myDistanceTable.values()) {
-			if (path.gatewayRouterID == changedVectorRouterID && path.destinationRouterID != routerInfo.id) {
-				path.cost = Router.INFINITY;
+			double cost = Router.INFINITY;
+			long gateway = changedVectorRouterID;
+			if (i == owner) {
+				cost = costToOwner;
+				gateway = gatewayToOwner;
+			} else if (known) {
+				cost = myDistanceVector.getCost(i);
+				gateway = myDistanceVector.getGateway(i);
+				if (gateway == changedVectorRouterID && i != me) {
+					cost = Router.INFINITY;
+				}
+			}
+
+			if (received) {
+				double offered = receivedVector.getCost(i) + linkCost;
+				if ((!known || cost > offered) && !isHeldDown(i, changedVectorRouterID, now)) {
+					cost = offered >= Router.INFINITY ? Router.INFINITY : Math.min(offered, maxCountToInfinity);
+					gateway = changedVectorRouterID;
+				}
+			}
+
+			boolean changed = !known || cost != myDistanceVector.getCost(i) || gateway != myDistanceVector.getGateway(i);
+			if (changed) {
+				if (known && cost > myDistanceVector.getCost(i)) {
+					startHoldDown(i, myDistanceVector.getGateway(i), now);
+				}
+				myDistanceVector.set(i, cost, gateway);
+				changes.add(index.idOf(i));
+			}
+			if (i == me) {
+				continue;
+			}
+			if (changed || backupGateway[i] == changedVectorRouterID) {
+				updateBackup(i, changed, changedVectorRouterID, received ? receivedVector.getCost(i) : Router.INFINITY,
+						linkCost);
+			} else if (received && gateway != changedVectorRouterID && receivedVector.getCost(i) < cost
+					&& (backupGateway[i] == -1 || receivedVector.getCost(i) + linkCost < backupCost[i])) {
+				updateBackup(i, false, changedVectorRouterID, receivedVector.getCost(i), linkCost);
 			}
 		}
 
-		Map<Long, PathInfo> receivedMap = minimumPathTable.get(changedVectorRouterID);
+		pendingChanges.addAll(changes);
+		metrics.routesChanged(changes.size());
+		metrics.relaxEdges.record(System.nanoTime() - start);
+		return changes;
+	}
 
-		PathInfo pathFromMeToDistanceVectorOwner = myDistanceTable.get(changedVectorRouterID);
-		if (lastPing.containsKey(changedVectorRouterID) && lastPing.get(changedVectorRouterID) > 0 && links.containsKey(changedVectorRouterID)
-				&& pathFromMeToDistanceVectorOwner.cost > links.get(changedVectorRouterID).cost) {
-			pathFromMeToDistanceVectorOwner.cost = links.get(changedVectorRouterID).cost;
-			pathFromMeToDistanceVectorOwner.gatewayRouterID = changedVectorRouterID;
+	/**
+	 * Handles the loss of an adjacent router: forgets its vector and switches each path that used it as gateway to
+	 * the feasible successor of the destination, if there is one. As the successor was already chosen, the switch
+	 * takes constant time for each path; a new successor is then searched among the other stored vectors, so a
+	 * failure of the new gateway also fails over at once. Paths without a feasible successor become unreachable, and are held down
+	 * if enabled, until the other neighbors advertise a new path. Must be called holding the lock on
+	 * {@link #minimumPathTable}
+	 * 
+	 * @param neighborID
+	 * @return if any path changed
+	 */
+	public boolean invalidateNeighbor(long neighborID) {
+		DistanceVector myDistanceVector = getDistanceVector();
+		RouterIndex index = minimumPathTable.getIndex();
+		DistanceVector neighborVector = minimumPathTable.getVector(neighborID);
+		if (neighborVector != null) {
+			neighborVector.clear();
 		}
 
-		for (PathInfo receivedPath : receivedMap.values()) {
-			if (!myDistanceTable.containsKey(receivedPath.destinationRouterID)) {
-				PathInfo newInfo = new PathInfo();
-				newInfo.destinationRouterID = receivedPath.destinationRouterID;
-				newInfo.gatewayRouterID = changedVectorRouterID;
-				newInfo.cost = receivedPath.cost + pathFromMeToDistanceVectorOwner.cost;
-				myDistanceTable.put(newInfo.destinationRouterID, newInfo);
-				if (newInfo.cost > maxCountToInfinity) {
-					newInfo.cost = maxCountToInfinity;
+		long now = holdDownTime > 0 ? clock.currentTimeMillis() : 0;
+		ensureBackupCapacity(myDistanceVector.capacity());
+		int me = index.indexOf(routerInfo.id);
+		int changed = 0;
+		int failovers = 0;
+		for (int i = 0; i < myDistanceVector.capacity(); i++) {
+			if (i == me || !myDistanceVector.contains(i)) {
+				continue;
+			}
+			if (myDistanceVector.getGateway(i) != neighborID) {
+				if (backupGateway[i] == neighborID) {
+					findBackup(i);
 				}
+				continue;
+			}
+			if (backupGateway[i] != -1) {
+				myDistanceVector.set(i, backupCost[i], backupGateway[i]);
+				findBackup(i);
+				failovers++;
 			} else {
-				PathInfo pathFromMeToDestination = myDistanceTable.get(receivedPath.destinationRouterID);
-				if (pathFromMeToDestination.cost > receivedPath.cost + pathFromMeToDistanceVectorOwner.cost) {
-					pathFromMeToDestination.cost = receivedPath.cost + pathFromMeToDistanceVectorOwner.cost;
-					pathFromMeToDestination.gatewayRouterID = changedVectorRouterID;
-					if (pathFromMeToDestination.cost > maxCountToInfinity) {
-						pathFromMeToDestination.cost = maxCountToInfinity;
-					}
-				}
+				startHoldDown(i, neighborID, now);
+				myDistanceVector.set(i, Router.INFINITY, -1);
 			}
+			pendingChanges.add(index.idOf(i));
+			changed++;
 		}
+		metrics.routesChanged(changed);
+		metrics.failedOver(failovers);
+		return changed > 0;
+	}
 
-		Set<PathInfo> currentSet = new HashSet<PathInfo>(myDistanceTable.values());
-		Set<PathInfo> previousSet = new HashSet<PathInfo>(beforeList.values());
-		return !currentSet.containsAll(previousSet) || !previousSet.containsAll(currentSet);
+	/**
+	 * Returns the feasible successor of the given destination. Must be called holding the lock on
+	 * {@link #minimumPathTable}
+	 * 
+	 * @param destinationRouterID
+	 * @return the id of the neighbor, or -1 if there is none
+	 */
+	public long getBackupGateway(long destinationRouterID) {
+		int i = minimumPathTable.getIndex().indexOf(destinationRouterID);
+		return i < 0 || i >= backupGateway.length ? -1 : backupGateway[i];
 	}
 
 	/**
-	 * Outputs the table of dustances
+	 * Updates the feasible successor of a destination after the vector of a neighbor was relaxed. A neighbor is a
+	 * feasible successor if it is not the gateway and the cost it advertises is lower than the cost of the current
+	 * path (the DUAL feasibility condition): its own path then can not go through this router, so switching to it
+	 * never creates a loop. The other neighbors are only searched when the path or the successor got worse
+	 * 
+	 * @param i the index of the destination
+	 * @param pathChanged if the path to the destination changed
+	 * @param neighborID the neighbor whose vector was relaxed
+	 * @param reportedCost the cost advertised by the neighbor
+	 * @param linkCost the cost of the link to the neighbor
 	 */
-	public void printDistanceTable() {
-		out.println("| ID |  COST  |  GATEWAY |");
-		for (PathInfo info : minimumPathTable.get(routerInfo.id).values()) {
-			out.println("|  " + info.destinationRouterID + " |   " + (info.cost == INFINITY ? "N/A" : info.cost) + "  |     " + info.gatewayRouterID
-					+ "    |");
+	private void updateBackup(int i, boolean pathChanged, long neighborID, double reportedCost, double linkCost) {
+		DistanceVector myDistanceVector = getDistanceVector();
+		double feasibleDistance = myDistanceVector.getCost(i);
+		boolean feasible = neighborID != myDistanceVector.getGateway(i) && reportedCost < feasibleDistance
+				&& linkCost < Router.INFINITY;
+		if (pathChanged) {
+			findBackup(i);
+		} else if (backupGateway[i] == neighborID) {
+			if (!feasible || reportedCost + linkCost > backupCost[i]) {
+				findBackup(i);
+			} else {
+				backupCost[i] = reportedCost + linkCost;
+			}
+		} else if (feasible && (backupGateway[i] == -1 || reportedCost + linkCost < backupCost[i])) {
+			backupGateway[i] = neighborID;
+			backupCost[i] = reportedCost + linkCost;
+		}
+	}
+
+	/**
+	 * Searches the vectors of all the neighbors for the cheapest feasible successor of a destination
+	 * 
+	 * @param i the index of the destination
+	 */
+	private void findBackup(int i) {
+		DistanceVector myDistanceVector = getDistanceVector();
+		double feasibleDistance = myDistanceVector.getCost(i);
+		long gateway = myDistanceVector.getGateway(i);
+		long backup = -1;
+		double cost = Router.INFINITY;
+		LongHashSet owners = minimumPathTable.getVectorOwners();
+		for (int j = 0; j < owners.size(); j++) {
+			long owner = owners.get(j);
+			if (owner == routerInfo.id || owner == gateway) {
+				continue;
+			}
+			DistanceVector vector = minimumPathTable.getVector(owner);
+			if (!vector.contains(i) || vector.getCost(i) >= feasibleDistance) {
+				continue;
+			}
+			double candidate = vector.getCost(i) + getLinkCost(owner);
+			if (candidate < cost) {
+				cost = candidate;
+				backup = owner;
+			}
+		}
+		backupGateway[i] = backup;
+		backupCost[i] = cost;
+	}
+
+	private void ensureBackupCapacity(int capacity) {
+		if (capacity > backupGateway.length) {
+			int length = backupGateway.length;
+			capacity = Math.max(capacity, length * 2);
+			backupGateway = Arrays.copyOf(backupGateway, capacity);
+			backupCost = Arrays.copyOf(backupCost, capacity);
+			Arrays.fill(backupGateway, length, capacity, -1);
+			Arrays.fill(backupCost, length, capacity, Router.INFINITY);
+		}
+	}
+
+	/**
+	 * Tells if the path to a destination is held down for updates from the given gateway
+	 * 
+	 * @param i the index of the destination
+	 * @param gatewayRouterID
+	 * @param now
+	 * @return
+	 */
+	private boolean isHeldDown(int i, long gatewayRouterID, long now) {
+		return holdDownTime > 0 && i < holdDownUntil.length && holdDownUntil[i] > now
+				&& holdDownGateway[i] != gatewayRouterID;
+	}
+
+	/**
+	 * Starts the hold-down of the path to a destination, if enabled
+	 * 
+	 * @param i the index of the destination
+	 * @param gatewayRouterID the gateway of the path before it got worse
+	 * @param now
+	 */
+	private void startHoldDown(int i, long gatewayRouterID, long now) {
+		if (holdDownTime <= 0) {
+			return;
+		}
+		if (i >= holdDownUntil.length) {
+			int capacity = Math.max(i + 1, holdDownUntil.length * 2);
+			holdDownUntil = Arrays.copyOf(holdDownUntil, capacity);
+			holdDownGateway = Arrays.copyOf(holdDownGateway, capacity);
+		}
+		holdDownUntil[i] = now + holdDownTime;
+		holdDownGateway[i] = gatewayRouterID;
+	}
+
+	/**
+	 * Returns the cost of the direct link to an adjacent router, or {@link #INFINITY} if it is not available
+	 * 
+	 * @param neighborID
+	 * @return
+	 */
+	private double getLinkCost(long neighborID) {
+		LinkInfo link = links.get(neighborID);
+		if (link == null || !liveness.isAlive(neighborID)) {
+			return Router.INFINITY;
 		}
-		out.println();
+		return link.cost;
 	}
 
 	/**
-	 * Serializes the table of distances to send through the network
+	 * Applies an advertisement received from an adjacent router to the copy of its distance vector. A full
+	 * advertisement replaces the copy, while a delta only overwrites the entries it carries. Advertisements of
+	 * either type that are not newer than the last accepted one are ignored, so a late full advertisement never
+	 * replaces the paths of newer deltas
 	 * 
-	 * @param map
-	 * @return the serialized data
+	 * @param senderID The id of the adjacent router that sent the message
+	 * @param type The type of the advertisement, {@link WireFormat#TYPE_FULL} or {@link WireFormat#TYPE_DELTA}
+	 * @param sequence The sequence number of the advertisement
+	 * @param receivedPaths The entries carried by the message
+	 * @return if the advertisement was applied
 	 */
-	public static byte[] serialize(Map<Long, PathInfo> map) {
+	public boolean applyAdvertisement(long senderID, int type, long sequence, PathList receivedPaths) {
+		Long last = lastSequence.get(senderID);
+		if (last != null && sequence <= last) {
+			return false;
+		}
+		DistanceVector storedVector = minimumPathTable.getVector(senderID);
+		if (storedVector == null) {
+			storedVector = new DistanceVector(minimumPathTable.getIndex());
+			minimumPathTable.putVector(senderID, storedVector);
+		} else if (type == WireFormat.TYPE_FULL) {
+			storedVector.clear();
+		}
+		for (int i = 0; i < receivedPaths.size(); i++) {
+			storedVector.put(receivedPaths.getDestination(i), receivedPaths.getCost(i), receivedPaths.getGateway(i));
+		}
+		lastSequence.put(senderID, sequence);
+		return true;
+	}
+
+	/**
+	 * Records that the path to the given destination changed and should be sent on the next advertisement
+	 * 
+	 * @param destinationRouterID
+	 */
+	public void markChanged(long destinationRouterID) {
+		pendingChanges.add(destinationRouterID);
+		metrics.routesChanged(1);
+	}
+
+	/**
+	 * Outputs the table of dustances
+	 */
+	public void printDistanceTable() {
 		StringBuilder bld = new StringBuilder();
-		for (PathInfo entry : map.values()) {
-			bld.append(entry.toString() + "\n");
+		appendDistanceTable(bld);
+		out.println(bld);
+	}
+
+	/**
+	 * Appends the latest snapshot of the table of distances to the given builder
+	 * 
+	 * @param bld
+	 */
+	public void appendDistanceTable(StringBuilder bld) {
+		bld.append("| ID |  COST  |  GATEWAY |\n");
+		TableSnapshot table = snapshot;
+		for (int i = 0; i < table.capacity(); i++) {
+			if (table.contains(i)) {
+				double cost = table.getCost(i);
+				bld.append("|  ").append(table.getDestination(i)).append(" |   ").append(cost == INFINITY ? "N/A" : String.valueOf(cost))
+						.append("  |     ").append(table.getGateway(i)).append("    |\n");
+			}
 		}
-		String result = bld.toString();
-		return result.substring(0, result.length() - 1).getBytes();
 	}
 
 	/**
-	 * Deserialize the data and mounts a table of distances
+	 * Deserialize the entries of a fragment of an advertisement, whose header was already read with
+	 * {@link WireFormat#readHeader(ByteBuffer, MessageHeader)}. Advertisements are serialized by
+	 * {@link AdvertisementEncoder}
 	 * 
-	 * @param array
-	 * @return the table of distances
+	 * @param buffer the buffer positioned right after the header of the fragment
+	 * @param header the header of the fragment
+	 * @param paths the list that receives the entries of the fragment
+	 * @throws IllegalArgumentException if the message is truncated or malformed
 	 */
-	public static Map<Long, PathInfo> deserialize(byte[] array) {
-		String string = new String(array);
-		Map<Long, PathInfo> map = new HashMap<Long, PathInfo>();
-		for (String s : string.split("\n")) {
-			PathInfo info = PathInfo.buildPathInfo(s);
-			map.put(info.destinationRouterID, info);
+	public static void deserialize(ByteBuffer buffer, MessageHeader header, PathList paths) {
+		try {
+			for (int i = 0; i < header.entryCount; i++) {
+				long destinationRouterID = WireFormat.readVarLong(buffer);
+				long gatewayRouterID = WireFormat.readVarLong(buffer);
+				paths.add(destinationRouterID, gatewayRouterID, WireFormat.readCost(buffer));
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated message");
 		}
-		return map;
 	}
 
 }
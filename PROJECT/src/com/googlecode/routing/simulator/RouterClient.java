@@ -1,15 +1,18 @@
 package com.googlecode.routing.simulator;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.Map.Entry;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implements the client side of the router that sends messages to other routers
  * that are directly connected to this one
+ * 
+ * It either runs its own loop on a dedicated thread or is scheduled as a periodic task on an executor shared by many
+ * routers
  *  
  * @author Felipe Ribeiro
  * @author Michelly Guedes
@@ -23,12 +26,48 @@ public class RouterClient implements Runnable {
 	private final Router router;
 
 	/**
-	 * Initialize the client attributing an owner
+	 * Encoder reused to split the advertisements in fragments that fit in the MTU of the transport
+	 */
+	private final AdvertisementEncoder encoder;
+
+	/**
+	 * Sequence number of the last advertisement sent. It starts at the time the client was created, so a router
+	 * restarted before its neighbors find it dead keeps sending sequence numbers above the ones they already accepted
+	 */
+	private long sequence;
+
+	/**
+	 * Number of periodic rounds executed so far
+	 */
+	private long rounds;
+
+	/**
+	 * The snapshot of the table sent on the last advertisement
+	 */
+	private TableSnapshot lastSent;
+
+	/**
+	 * The destinations changed since the last advertisement, reused between the advertisements
+	 */
+	private final LongHashSet changes;
+
+	/**
+	 * The neighbors found dead by the last check, reused between the checks
+	 */
+	private final LongHashSet expired;
+
+	/**
+	 * Initialize the client attributing an owner. The transport of the router must already be initialized
 	 * @param router
 	 */
 	public RouterClient(Router router) {
 		this.router = router;
-
+		this.encoder = new AdvertisementEncoder(router.transport.getMaxDatagramSize());
+		this.lastSent = router.getSnapshot();
+		this.sequence = router.clock.currentTimeMillis();
+		this.changes = new LongHashSet();
+		this.expired = new LongHashSet();
+		router.client = this;
 	}
 
 	/**
@@ -36,20 +75,53 @@ public class RouterClient implements Runnable {
 	 */
 	@Override
 	public void run() {
-		while (true) {
+		while (!Thread.currentThread().isInterrupted()) {
 
-			try {
-				this.checkNeighborsTimeout();
-				this.sendDistanceVectorToNeighbors();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+			tick();
 
 			try {
 				Thread.sleep(Router.SLEEP_TIME);
 			} catch (InterruptedException e) {
-				e.printStackTrace();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Schedules the periodic rounds of this client on the given executor, every {@link Router#SLEEP_TIME}. The first
+	 * round starts after a random fraction of the period, so the routers started together do not all advertise at
+	 * the same instant
+	 * 
+	 * @param scheduler
+	 * @return the future used to cancel the rounds
+	 */
+	public ScheduledFuture<?> schedule(ScheduledExecutorService scheduler) {
+		return scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					tick();
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+		}, ThreadLocalRandom.current().nextLong(Router.SLEEP_TIME), Router.SLEEP_TIME, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Executes a periodic round: checks the timeouts of the neighbors and sends them either the whole table or only
+	 * the changes
+	 */
+	public void tick() {
+		try {
+			this.checkNeighborsTimeout();
+			if (rounds++ % Router.FULL_REFRESH_ROUNDS == 0) {
+				this.sendDistanceVectorToNeighbors();
+			} else {
+				this.sendChangesToNeighbors();
 			}
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 	}
 
@@ -57,69 +129,139 @@ public class RouterClient implements Runnable {
 	 * Sends the table of distance to the neighbors
 	 * @throws IOException
 	 */
-	private void sendDistanceVectorToNeighbors() throws IOException {
+	private synchronized void sendDistanceVectorToNeighbors() throws IOException {
 
-		byte[] byteMap;
-		synchronized (router.minimumPathTable) {
-			byteMap = Router.serialize(router.getDistanceTable());
+		advertise(WireFormat.TYPE_FULL, router.getSnapshot(), null);
+	}
+
+	/**
+	 * Sends to the neighbors only the paths that changed since the last advertisement, following the snapshots
+	 * published since then. When nothing changed, the empty message still tells the neighbors that this router is
+	 * alive
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void sendChangesToNeighbors() throws IOException {
+
+		TableSnapshot table = router.getSnapshot();
+		changes.clear();
+		for (TableSnapshot published = lastSent; published != table;) {
+			published = published.getNext();
+			for (int i = 0; i < published.getChangeCount(); i++) {
+				changes.add(published.getChange(i));
+			}
 		}
-		for (RouterInfo routerInfo : router.adjacentRouters) {
-			DatagramPacket sendPacket = new DatagramPacket(byteMap, byteMap.length, routerInfo.ipAddress, routerInfo.port);
-			router.serverSocket.send(sendPacket);
+		advertise(WireFormat.TYPE_DELTA, table, changes);
+	}
+
+	/**
+	 * Encodes and sends an advertisement of the given snapshot. On {@link Router.ProtocolMode#BASIC} the same
+	 * fragments go to every neighbor; on the other modes the advertisement is encoded again for each neighbor
+	 * 
+	 * @param type
+	 * @param table
+	 * @param destinations the destinations to be sent, or null to send the whole table
+	 * @throws IOException
+	 */
+	private void advertise(int type, TableSnapshot table, LongHashSet destinations) throws IOException {
+		long advertisementSequence = ++sequence;
+		Router.ProtocolMode mode = router.protocolMode;
+		if (mode == Router.ProtocolMode.BASIC) {
+			encode(type, advertisementSequence, table, destinations, mode, -1);
+			for (RouterInfo routerInfo : router.adjacentRouters) {
+				sendToNeighbor(routerInfo);
+			}
+		} else {
+			for (RouterInfo routerInfo : router.adjacentRouters) {
+				encode(type, advertisementSequence, table, destinations, mode, routerInfo.id);
+				sendToNeighbor(routerInfo);
+			}
 		}
+		lastSent = table;
 	}
 
 	/**
-	 * Checks if a neighbor has got in touch before the timeout, if not, mark as unavailable
+	 * Encodes the paths to be advertised to a neighbor. The paths whose gateway is the neighbor are left out or
+	 * sent as unreachable, as required by the protocol mode
 	 * 
+	 * @param type
+	 * @param advertisementSequence
+	 * @param table
+	 * @param destinations the destinations to be sent, or null to send the whole table
+	 * @param mode
+	 * @param neighborID the neighbor that receives the advertisement, ignored on {@link Router.ProtocolMode#BASIC}
+	 */
+	private void encode(int type, long advertisementSequence, TableSnapshot table, LongHashSet destinations,
+			Router.ProtocolMode mode, long neighborID) {
+		encoder.begin(type, router.routerInfo.id, advertisementSequence);
+		int count = destinations == null ? table.capacity() : destinations.size();
+		for (int k = 0; k < count; k++) {
+			int i = destinations == null ? k : table.indexOf(destinations.get(k));
+			if (i < 0 || !table.contains(i)) {
+				continue;
+			}
+			long gateway = table.getGateway(i);
+			double cost = table.getCost(i);
+			if (mode != Router.ProtocolMode.BASIC && gateway == neighborID) {
+				if (mode == Router.ProtocolMode.SPLIT_HORIZON && destinations == null) {
+					continue;
+				}
+				cost = Router.INFINITY;
+			}
+			encoder.add(table.getDestination(i), gateway, cost);
+		}
+		encoder.finish();
+	}
+
+	/**
+	 * Sends every fragment of the last encoded advertisement to a neighbor
+	 * 
+	 * @param routerInfo
 	 * @throws IOException
 	 */
-	private void checkNeighborsTimeout() throws IOException {
+	private void sendToNeighbor(RouterInfo routerInfo) throws IOException {
+		for (int i = 0; i < encoder.getFragmentCount(); i++) {
+			ByteBuffer fragment = encoder.getFragment(i);
+			router.transport.send(routerInfo, fragment.array(), fragment.limit());
+			router.metrics.packetSent(fragment.limit());
+		}
+	}
 
-		long currentTime = System.currentTimeMillis();
+	/**
+	 * Checks if a neighbor has got in touch before the timeout, if not, mark as unavailable. Only the neighbors that
+	 * expired since the last check are visited, and only the paths through them are recomputed
+	 * 
+	 * @throws IOException
+	 */
+	private void checkNeighborsTimeout() throws IOException {
 
-		Set<Entry<Long, Long>> set;
-		synchronized (router.lastPing) {
-			set = new HashSet<Entry<Long, Long>>(router.lastPing.entrySet());
+		expired.clear();
+		router.liveness.expire(router.clock.currentTimeMillis(), expired);
+		if (expired.isEmpty()) {
+			return;
 		}
 
 		boolean changed = false;
+		long waitStart = System.nanoTime();
 		synchronized (router.minimumPathTable) {
-			Map<Long, PathInfo> myDistanceVector = router.getDistanceTable();
-			for (Entry<Long, Long> e : set) {
-				if (e.getValue() > 0 && currentTime - e.getValue() > 5 * Router.SLEEP_TIME) {
-					Long id = e.getKey();
-					if (myDistanceVector.get(id).cost != Router.INFINITY) {
-						myDistanceVector.get(id).cost = Router.INFINITY;
-						e.setValue(0L);
-
-						for (PathInfo info : myDistanceVector.values()) {
-							if (info.gatewayRouterID == id) {
-								info.gatewayRouterID = -1;
-								info.cost = Router.INFINITY;
-							}
-						}
-
-						for(PathInfo path : router.minimumPathTable.get(id).values()) {
-							path.cost = Router.INFINITY;
-							path.gatewayRouterID = -1;
-						}
-
-						for (Long entry : router.minimumPathTable.keySet()) {
-							router.relaxEdges(entry);
-						}
-
-						router.out.println("[" + router.routerInfo.id + "] Timeout para resposta do roteador [" + id
-								+ "] atingido, marcando como indisponivel");
-
-						changed = true;
-					}
+			router.metrics.lockWait.record(System.nanoTime() - waitStart);
+			for (int i = 0; i < expired.size(); i++) {
+				long id = expired.get(i);
+				if (router.liveness.isAlive(id)) {
+					continue;
+				}
+				router.metrics.timeoutFired();
+				if (router.invalidateNeighbor(id)) {
+					changed = true;
 				}
+				router.out.println("[" + router.routerInfo.id + "] Timeout para resposta do roteador [" + id
+						+ "] atingido, marcando como indisponivel");
 			}
+			router.publishSnapshot();
 		}
 
 		if (changed) {
-			router.printDistanceTable();
+			sendChangesToNeighbors();
 		}
 	}
 }
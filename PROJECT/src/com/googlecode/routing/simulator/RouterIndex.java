@@ -0,0 +1,143 @@
+package com.googlecode.routing.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Maps the ids of the routers to dense int indices, so the tables of a router can be stored in plain arrays.
+ * Indices are assigned in the order the ids are first seen and are never reused
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class RouterIndex {
+
+	/**
+	 * Marks a free slot of {@link #slots}
+	 */
+	private static final int FREE = -1;
+
+	/**
+	 * The id of each index
+	 */
+	private long[] ids;
+
+	/**
+	 * Open addressing table with the index of each id
+	 */
+	private int[] slots;
+
+	/**
+	 * Number of ids already indexed
+	 */
+	private int size;
+
+	/**
+	 * Creates an empty index with room for the given number of routers before growing
+	 * 
+	 * @param expectedSize
+	 */
+	public RouterIndex(int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		this.ids = new long[capacity / 2];
+		this.slots = new int[capacity];
+		Arrays.fill(slots, FREE);
+	}
+
+	/**
+	 * Creates a copy of the given index
+	 * 
+	 * @param source
+	 */
+	public RouterIndex(RouterIndex source) {
+		this.ids = source.ids.clone();
+		this.slots = source.slots.clone();
+		this.size = source.size;
+	}
+
+	/**
+	 * Returns the index of the given router
+	 * 
+	 * @param id
+	 * @return the index, or -1 if the id was never indexed
+	 */
+	public int indexOf(long id) {
+		int mask = slots.length - 1;
+		int slot = hash(id) & mask;
+		int index;
+		while ((index = slots[slot]) != FREE) {
+			if (ids[index] == id) {
+				return index;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the given router, assigning a new one if the id was never indexed
+	 * 
+	 * @param id
+	 * @return the index
+	 */
+	public int getOrAdd(long id) {
+		int mask = slots.length - 1;
+		int slot = hash(id) & mask;
+		int index;
+		while ((index = slots[slot]) != FREE) {
+			if (ids[index] == id) {
+				return index;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (size == ids.length) {
+			grow();
+			return getOrAdd(id);
+		}
+		ids[size] = id;
+		slots[slot] = size;
+		return size++;
+	}
+
+	/**
+	 * Returns the id of the router with the given index
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public long idOf(int index) {
+		return ids[index];
+	}
+
+	/**
+	 * Returns the number of indexed routers, all indices are below this value
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void grow() {
+		ids = Arrays.copyOf(ids, ids.length * 2);
+		slots = new int[slots.length * 2];
+		Arrays.fill(slots, FREE);
+		int mask = slots.length - 1;
+		for (int index = 0; index < size; index++) {
+			int slot = hash(ids[index]) & mask;
+			while (slots[slot] != FREE) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = index;
+		}
+	}
+
+	private static int hash(long value) {
+		long h = value * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
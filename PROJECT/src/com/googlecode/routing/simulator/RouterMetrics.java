@@ -0,0 +1,402 @@
+package com.googlecode.routing.simulator;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and histograms of the hot paths of a router. They are updated with atomic operations only, and can be
+ * read through JMX (see {@link #register()}) or printed periodically by a {@link MetricsReporter}
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class RouterMetrics implements RouterMetricsMBean {
+
+	/**
+	 * Domain of the names of the MBeans of the routers
+	 */
+	public static final String DOMAIN = "com.googlecode.routing.simulator";
+
+	/**
+	 * The router whose metrics are collected
+	 */
+	private final Router router;
+
+	private final AtomicLong packetsIn;
+
+	private final AtomicLong packetsOut;
+
+	private final AtomicLong bytesIn;
+
+	private final AtomicLong bytesOut;
+
+	private final AtomicLong invalidPackets;
+
+	private final AtomicLong droppedPackets;
+
+	private final AtomicLong coalescedAdvertisements;
+
+	private final AtomicLong routeChanges;
+
+	private final AtomicLong timeouts;
+
+	private final AtomicLong failovers;
+
+	private final AtomicLong droppedTableChanges;
+
+	/**
+	 * Time of the last change of the table, in milliseconds
+	 */
+	private volatile long lastChangeTime;
+
+	/**
+	 * Time spent decoding the fragments received
+	 */
+	public final LatencyHistogram decode;
+
+	/**
+	 * Time spent by {@link Router#relaxEdges(long)}
+	 */
+	public final LatencyHistogram relaxEdges;
+
+	/**
+	 * Time spent waiting for the lock on {@link Router#minimumPathTable}
+	 */
+	public final LatencyHistogram lockWait;
+
+	/**
+	 * Values of the counters on the last call to {@link #updateRates()}
+	 */
+	private long lastRateTime;
+
+	private long lastPacketsIn;
+
+	private long lastPacketsOut;
+
+	private long lastBytesIn;
+
+	private long lastBytesOut;
+
+	/**
+	 * Rates computed by the last call to {@link #updateRates()}
+	 */
+	private volatile double packetsInPerSecond;
+
+	private volatile double packetsOutPerSecond;
+
+	private volatile double bytesInPerSecond;
+
+	private volatile double bytesOutPerSecond;
+
+	/**
+	 * Creates the metrics of the given router
+	 * 
+	 * @param router
+	 */
+	public RouterMetrics(Router router) {
+		this.router = router;
+		this.packetsIn = new AtomicLong();
+		this.packetsOut = new AtomicLong();
+		this.bytesIn = new AtomicLong();
+		this.bytesOut = new AtomicLong();
+		this.invalidPackets = new AtomicLong();
+		this.droppedPackets = new AtomicLong();
+		this.coalescedAdvertisements = new AtomicLong();
+		this.routeChanges = new AtomicLong();
+		this.timeouts = new AtomicLong();
+		this.failovers = new AtomicLong();
+		this.droppedTableChanges = new AtomicLong();
+		this.decode = new LatencyHistogram();
+		this.relaxEdges = new LatencyHistogram();
+		this.lockWait = new LatencyHistogram();
+		this.lastChangeTime = router.clock.currentTimeMillis();
+		this.lastRateTime = System.nanoTime();
+	}
+
+	/**
+	 * Records a packet received
+	 * 
+	 * @param bytes
+	 */
+	public void packetReceived(int bytes) {
+		packetsIn.incrementAndGet();
+		bytesIn.addAndGet(bytes);
+	}
+
+	/**
+	 * Records a packet sent
+	 * 
+	 * @param bytes
+	 */
+	public void packetSent(int bytes) {
+		packetsOut.incrementAndGet();
+		bytesOut.addAndGet(bytes);
+	}
+
+	/**
+	 * Records a packet discarded because it could not be decoded
+	 */
+	public void invalidPacket() {
+		invalidPackets.incrementAndGet();
+	}
+
+	/**
+	 * Records a packet discarded because the receive queue of its sender was full
+	 */
+	public void packetDropped() {
+		droppedPackets.incrementAndGet();
+	}
+
+	/**
+	 * Records advertisements merged with a newer one of the same neighbor before being relaxed
+	 * 
+	 * @param count
+	 */
+	public void advertisementsCoalesced(int count) {
+		coalescedAdvertisements.addAndGet(count);
+	}
+
+	/**
+	 * Records changed paths of the table
+	 * 
+	 * @param count the number of destinations whose path changed
+	 */
+	public void routesChanged(int count) {
+		if (count > 0) {
+			routeChanges.addAndGet(count);
+			lastChangeTime = router.clock.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Records a neighbor marked as unavailable after its timeout
+	 */
+	public void timeoutFired() {
+		timeouts.incrementAndGet();
+	}
+
+	/**
+	 * Records paths switched to their feasible successor when their gateway was lost
+	 * 
+	 * @param count
+	 */
+	public void failedOver(int count) {
+		failovers.addAndGet(count);
+	}
+
+	/**
+	 * Records changes of the table not written by the {@link TableChangeLogger} because its buffer was full
+	 * 
+	 * @param count
+	 */
+	public void tableChangesDropped(int count) {
+		droppedTableChanges.addAndGet(count);
+	}
+
+	/**
+	 * Computes the rates of packets and bytes since the last call
+	 */
+	public synchronized void updateRates() {
+		long now = System.nanoTime();
+		double seconds = (now - lastRateTime) / 1e9;
+		if (seconds <= 0) {
+			return;
+		}
+		long in = packetsIn.get();
+		long out = packetsOut.get();
+		long inBytes = bytesIn.get();
+		long outBytes = bytesOut.get();
+		packetsInPerSecond = (in - lastPacketsIn) / seconds;
+		packetsOutPerSecond = (out - lastPacketsOut) / seconds;
+		bytesInPerSecond = (inBytes - lastBytesIn) / seconds;
+		bytesOutPerSecond = (outBytes - lastBytesOut) / seconds;
+		lastPacketsIn = in;
+		lastPacketsOut = out;
+		lastBytesIn = inBytes;
+		lastBytesOut = outBytes;
+		lastRateTime = now;
+	}
+
+	/**
+	 * Returns the name of the MBean of the router
+	 * 
+	 * @return
+	 * @throws JMException
+	 */
+	public ObjectName getObjectName() throws JMException {
+		return new ObjectName(DOMAIN + ":type=Router,id=" + router.routerInfo.id);
+	}
+
+	/**
+	 * Publishes the metrics on the platform MBean server, replacing any router with the same id
+	 * 
+	 * @throws JMException
+	 */
+	public void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = getObjectName();
+		if (server.isRegistered(name)) {
+			server.unregisterMBean(name);
+		}
+		server.registerMBean(this, name);
+	}
+
+	/**
+	 * Removes the metrics from the platform MBean server
+	 * 
+	 * @throws JMException
+	 */
+	public void unregister() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = getObjectName();
+		if (server.isRegistered(name)) {
+			server.unregisterMBean(name);
+		}
+	}
+
+	@Override
+	public long getRouterID() {
+		return router.routerInfo.id;
+	}
+
+	@Override
+	public long getPacketsIn() {
+		return packetsIn.get();
+	}
+
+	@Override
+	public long getPacketsOut() {
+		return packetsOut.get();
+	}
+
+	@Override
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	@Override
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	@Override
+	public double getPacketsInPerSecond() {
+		return packetsInPerSecond;
+	}
+
+	@Override
+	public double getPacketsOutPerSecond() {
+		return packetsOutPerSecond;
+	}
+
+	@Override
+	public double getBytesInPerSecond() {
+		return bytesInPerSecond;
+	}
+
+	@Override
+	public double getBytesOutPerSecond() {
+		return bytesOutPerSecond;
+	}
+
+	@Override
+	public long getInvalidPackets() {
+		return invalidPackets.get();
+	}
+
+	@Override
+	public long getDroppedPackets() {
+		return droppedPackets.get();
+	}
+
+	@Override
+	public long getCoalescedAdvertisements() {
+		return coalescedAdvertisements.get();
+	}
+
+	@Override
+	public double getDecodeMeanMicros() {
+		return decode.getMean() / 1e3;
+	}
+
+	@Override
+	public double getDecodeP99Micros() {
+		return decode.getPercentile(0.99) / 1e3;
+	}
+
+	@Override
+	public double getRelaxEdgesMeanMicros() {
+		return relaxEdges.getMean() / 1e3;
+	}
+
+	@Override
+	public double getRelaxEdgesP99Micros() {
+		return relaxEdges.getPercentile(0.99) / 1e3;
+	}
+
+	@Override
+	public double getLockWaitMeanMicros() {
+		return lockWait.getMean() / 1e3;
+	}
+
+	@Override
+	public double getLockWaitMaxMicros() {
+		return lockWait.getMax() / 1e3;
+	}
+
+	@Override
+	public long getLockWaitTotalMillis() {
+		return lockWait.getTotal() / 1000000;
+	}
+
+	@Override
+	public int getTableSize() {
+		return router.getSnapshot().size();
+	}
+
+	@Override
+	public long getRouteChanges() {
+		return routeChanges.get();
+	}
+
+	@Override
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	@Override
+	public long getFailovers() {
+		return failovers.get();
+	}
+
+	@Override
+	public long getDroppedTableChanges() {
+		return droppedTableChanges.get();
+	}
+
+	@Override
+	public long getMillisSinceLastChange() {
+		return router.clock.currentTimeMillis() - lastChangeTime;
+	}
+
+	/**
+	 * Summary of the metrics in a single line
+	 */
+	@Override
+	public String toString() {
+		return String.format("[%d] in=%.1f pkt/s (%.0f B/s) out=%.1f pkt/s (%.0f B/s) invalidos=%d descartados=%d"
+				+ " agrupados=%d decode=%.1f/%.1f us relax=%.1f/%.1f us lock=%.1f/%.1f us tabela=%d mudancas=%d"
+				+ " timeouts=%d failovers=%d log_descartadas=%d ultima mudanca=%d ms", getRouterID(),
+				getPacketsInPerSecond(), getBytesInPerSecond(), getPacketsOutPerSecond(), getBytesOutPerSecond(),
+				getInvalidPackets(), getDroppedPackets(), getCoalescedAdvertisements(), getDecodeMeanMicros(),
+				getDecodeP99Micros(), getRelaxEdgesMeanMicros(), getRelaxEdgesP99Micros(), getLockWaitMeanMicros(),
+				getLockWaitMaxMicros(), getTableSize(), getRouteChanges(), getTimeouts(), getFailovers(),
+				getDroppedTableChanges(), getMillisSinceLastChange());
+	}
+
+}
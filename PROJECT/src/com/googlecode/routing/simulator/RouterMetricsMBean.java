@@ -0,0 +1,62 @@
+package com.googlecode.routing.simulator;
+
+/**
+ * Management interface of the {@link RouterMetrics} of a router, published through JMX
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public interface RouterMetricsMBean {
+
+	long getRouterID();
+
+	long getPacketsIn();
+
+	long getPacketsOut();
+
+	long getBytesIn();
+
+	long getBytesOut();
+
+	double getPacketsInPerSecond();
+
+	double getPacketsOutPerSecond();
+
+	double getBytesInPerSecond();
+
+	double getBytesOutPerSecond();
+
+	long getInvalidPackets();
+
+	long getDroppedPackets();
+
+	long getCoalescedAdvertisements();
+
+	double getDecodeMeanMicros();
+
+	double getDecodeP99Micros();
+
+	double getRelaxEdgesMeanMicros();
+
+	double getRelaxEdgesP99Micros();
+
+	double getLockWaitMeanMicros();
+
+	double getLockWaitMaxMicros();
+
+	long getLockWaitTotalMillis();
+
+	int getTableSize();
+
+	long getRouteChanges();
+
+	long getTimeouts();
+
+	long getFailovers();
+
+	long getDroppedTableChanges();
+
+	long getMillisSinceLastChange();
+
+}
@@ -2,16 +2,51 @@ package com.googlecode.routing.simulator;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Implements the routine of the router that receives messages from the neighbors and update the local information
+ * Implements the routine of the router that receives messages from the neighbors and update the local information.
+ * It can either run its own receive loop or be fed by an event loop shared by many routers.
+ * 
+ * The messages go through a pipeline: the receiving thread only identifies the sender and queues a copy of the
+ * message; the fragments of each neighbor are decoded in order by a task of the worker pool, and the complete
+ * advertisements are merged on a mailbox of the neighbor that keeps only the newest state of its vector; finally a
+ * single relaxation task applies the mailboxes of all the neighbors that changed and relaxes them under one
+ * acquisition of the lock, publishing one snapshot and sending one triggered update for the whole batch
  * 
  * @author Felipe Ribeiro
  * @author Michelly Guedes
  * @author Renato Miceli
  */
-public class RouterServer implements Runnable {
+public class RouterServer implements Runnable, PacketHandler {
+
+	/**
+	 * Largest number of messages of a single neighbor waiting to be decoded. Newer messages are dropped while the
+	 * queue is full, as a datagram socket would do
+	 */
+	public static final int MAX_QUEUED_PACKETS = 256;
+
+	/**
+	 * Executor that runs the stages on the calling thread, so the messages are processed one at a time as they are
+	 * received
+	 */
+	public static final Executor DIRECT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
 
 	/**
 	 * The router that owns this entity
@@ -19,76 +54,429 @@ public class RouterServer implements Runnable {
 	private final Router router;
 
 	/**
-	 * Initializes the entity for the given Router
+	 * The client of the same router, used to send triggered updates as soon as the table changes
+	 */
+	private final RouterClient client;
+
+	/**
+	 * The pool that runs the decoding and relaxation stages
+	 */
+	private final Executor workers;
+
+	/**
+	 * Header reused to identify the sender of the messages
+	 */
+	private final MessageHeader header;
+
+	/**
+	 * The stages of each neighbor, only accessed by the receiving thread
+	 */
+	private final Map<Long, NeighborStage> neighbors;
+
+	/**
+	 * The neighbors whose mailbox changed since the last relaxation, guarded by itself
+	 */
+	private final ArrayDeque<NeighborStage> dirtyNeighbors;
+
+	/**
+	 * If the relaxation task is scheduled or running, guarded by {@link #dirtyNeighbors}
+	 */
+	private boolean relaxing;
+
+	/**
+	 * The neighbors being relaxed, only accessed by the relaxation task
+	 */
+	private final List<NeighborStage> batch;
+
+	/**
+	 * The relaxation stage
+	 */
+	private final Runnable relaxation;
+
+	/**
+	 * Initializes the entity for the given Router, processing each message on the thread that receives it
+	 * 
+	 * @param router
+	 * @param client The client of the same router
+	 */
+	public RouterServer(Router router, RouterClient client) {
+		this(router, client, DIRECT_EXECUTOR);
+	}
+
+	/**
+	 * Initializes the entity for the given Router, decoding and relaxing the messages on the given pool. The pool
+	 * may be shared by many routers
 	 * 
 	 * @param router
+	 * @param client The client of the same router
+	 * @param workers
 	 */
-	public RouterServer(Router router) {
+	public RouterServer(Router router, RouterClient client, Executor workers) {
 		this.router = router;
+		this.client = client;
+		this.workers = workers;
+		this.header = new MessageHeader();
+		this.neighbors = new HashMap<Long, NeighborStage>();
+		this.dirtyNeighbors = new ArrayDeque<NeighborStage>();
+		this.batch = new ArrayList<NeighborStage>();
+		this.relaxation = new Runnable() {
+			@Override
+			public void run() {
+				relax();
+			}
+		};
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Creates a pool of daemon threads to run the stages of the servers
+	 * 
+	 * @param threads the number of threads of the pool
+	 * @return
+	 */
+	public static ExecutorService newWorkerPool(int threads) {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "receive-worker-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Starts being fed by the transport of the router, if it delivers the messages itself. The transport of the
+	 * router must already be initialized
+	 * 
+	 * @return true if this server was registered as the handler of the transport, false if the transport is a
+	 *         {@link BlockingTransport} whose messages must be received by a thread running {@link #run()}
+	 * @throws IllegalStateException if the transport neither accepts a handler nor is a {@link BlockingTransport}
+	 */
+	public boolean listen() {
+		if (router.transport.setHandler(this)) {
+			return true;
+		}
+		if (!(router.transport instanceof BlockingTransport)) {
+			throw new IllegalStateException("The transport neither accepts a handler nor blocks on receive");
+		}
+		return false;
+	}
+
+	/**
+	 * Receives the messages from the transport of the router until the thread is interrupted. The transport of the
+	 * router must already be initialized and be a {@link BlockingTransport}, see {@link #listen()}
 	 */
 	@Override
 	public void run() {
 
-		while (true) {
+		BlockingTransport transport = (BlockingTransport) router.transport;
+		byte[] receiveData = new byte[transport.getMaxDatagramSize()];
+		DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
+		ByteBuffer receiveBuffer = ByteBuffer.wrap(receiveData);
+
+		while (!Thread.currentThread().isInterrupted()) {
 
-			DatagramPacket receivedPacket;
 			try {
-				receivedPacket = receiveData();
+				receivePacket.setLength(receiveData.length);
+				transport.receive(receivePacket);
 			} catch (IOException e) {
+				if (Thread.currentThread().isInterrupted()) {
+					return;
+				}
 				e.printStackTrace();
 				continue;
 			}
 
-			Map<Long, PathInfo> receivedMap = Router.deserialize(receivedPacket.getData());
+			receiveBuffer.clear();
+			receiveBuffer.limit(receivePacket.getLength());
+			handlePacket(receivePacket.getAddress(), receivePacket.getPort(), receiveBuffer);
+		}
 
-			RouterInfo info = router.getAdjacentByIPAndPort(receivedPacket.getAddress(), receivedPacket.getPort());
-			if (info == null) {
-				continue;
-			}
+	}
 
-			updatePingTable(info.id);
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void handlePacket(InetAddress address, int port, ByteBuffer data) {
 
-			synchronized (router.minimumPathTable) {
-				router.minimumPathTable.put(info.id, receivedMap);
+		router.metrics.packetReceived(data.remaining());
+		try {
+			WireFormat.readHeader(data.duplicate(), header);
+		} catch (IllegalArgumentException e) {
+			router.metrics.invalidPacket();
+			router.out.println("[" + router.routerInfo.id + "] Mensagem invalida descartada: " + e);
+			return;
+		}
+
+		RouterInfo info = router.getAdjacent(header.senderID, address, port);
+		if (info == null) {
+			return;
+		}
+
+		router.liveness.refresh(info.id, router.clock.currentTimeMillis());
+
+		NeighborStage stage = neighbors.get(info.id);
+		if (stage == null) {
+			stage = new NeighborStage(info.id);
+			neighbors.put(info.id, stage);
+		}
+		stage.offer(data);
+	}
+
+	/**
+	 * Queues a neighbor to be relaxed, scheduling the relaxation task if it is not already pending
+	 * 
+	 * @param stage
+	 */
+	private void markDirty(NeighborStage stage) {
+		synchronized (dirtyNeighbors) {
+			dirtyNeighbors.add(stage);
+			if (relaxing) {
+				return;
+			}
+			relaxing = true;
+		}
+		workers.execute(relaxation);
+	}
+
+	/**
+	 * The relaxation stage: applies the mailboxes of every dirty neighbor and relaxes them in batches, until no
+	 * neighbor is left dirty. Only one instance runs at a time for each router
+	 */
+	private void relax() {
+		while (true) {
+			synchronized (dirtyNeighbors) {
+				if (dirtyNeighbors.isEmpty()) {
+					relaxing = false;
+					return;
+				}
+				batch.addAll(dirtyNeighbors);
+				dirtyNeighbors.clear();
 			}
 
-			boolean changed;
+			boolean changed = false;
+			long waitStart = System.nanoTime();
 			synchronized (router.minimumPathTable) {
-				changed = router.relaxEdges(info.id);
+				router.metrics.lockWait.record(System.nanoTime() - waitStart);
+				for (int i = 0; i < batch.size(); i++) {
+					NeighborStage stage = batch.get(i);
+					if (!stage.apply()) {
+						batch.set(i, null);
+					}
+				}
+				for (int i = 0; i < batch.size(); i++) {
+					NeighborStage stage = batch.get(i);
+					if (stage != null && !router.relaxEdges(stage.neighborID).isEmpty()) {
+						changed = true;
+					}
+				}
+				router.publishSnapshot();
 			}
+			batch.clear();
 
 			if (changed) {
-				router.printDistanceTable();
+				try {
+					client.sendChangesToNeighbors();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
 			}
 		}
-
 	}
 
 	/**
-	 * Listen to the port and capture the packets
-	 * 
-	 * @return A network packet
-	 * @throws IOException
+	 * The decoding stage and the mailbox of a single neighbor. The messages are decoded in the order they were
+	 * received by a single task at a time, and the complete advertisements are merged on the mailbox: a full
+	 * advertisement replaces everything still pending, while the entries of a delta are appended, so applying the
+	 * mailbox in order leaves the same vector as applying every advertisement
 	 */
-	private DatagramPacket receiveData() throws IOException {
-		byte[] receiveData = new byte[1024];
-		DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
-		router.serverSocket.receive(receivePacket);
-		return receivePacket;
-	}
+	class NeighborStage implements Runnable {
 
-	/**
-	 * Updates the timestamp of the last message from a router
-	 * 
-	 * @param routerID
-	 */
-	private void updatePingTable(long routerID) {
-		synchronized (router.lastPing) {
-			router.lastPing.put(routerID, System.currentTimeMillis());
+		final long neighborID;
+
+		/**
+		 * Header reused to decode the messages, only accessed by the decoding task
+		 */
+		private final MessageHeader header;
+
+		/**
+		 * Reassembler of the advertisements, only accessed by the decoding task
+		 */
+		private final FragmentReassembler reassembler;
+
+		/**
+		 * Copies of the messages waiting to be decoded, guarded by this stage
+		 */
+		private final ArrayDeque<ByteBuffer> packets;
+
+		/**
+		 * Buffers of the messages already decoded, kept to be reused, guarded by this stage
+		 */
+		private final ArrayDeque<ByteBuffer> freeBuffers;
+
+		/**
+		 * If the decoding task is scheduled or running, guarded by this stage
+		 */
+		private boolean decoding;
+
+		/**
+		 * The entries received and not yet applied, guarded by this stage
+		 */
+		private PathList pending;
+
+		/**
+		 * If the pending entries start with a full advertisement, guarded by this stage
+		 */
+		private boolean pendingFull;
+
+		/**
+		 * Sequence number of the last advertisement merged on the mailbox, guarded by this stage
+		 */
+		private long sequence;
+
+		/**
+		 * If an advertisement was ever merged on the mailbox, guarded by this stage
+		 */
+		private boolean hasSequence;
+
+		/**
+		 * Number of advertisements merged since the mailbox was last applied, guarded by this stage
+		 */
+		private int merged;
+
+		/**
+		 * List swapped with the pending entries when they are applied, only accessed by the relaxation task
+		 */
+		private PathList applying;
+
+		NeighborStage(long neighborID) {
+			this.neighborID = neighborID;
+			this.header = new MessageHeader();
+			this.reassembler = new FragmentReassembler();
+			this.packets = new ArrayDeque<ByteBuffer>();
+			this.freeBuffers = new ArrayDeque<ByteBuffer>();
+			this.pending = new PathList();
+			this.applying = new PathList();
+		}
+
+		/**
+		 * Queues a copy of a message to be decoded, scheduling the decoding task if it is not already pending
+		 * 
+		 * @param data the message, which is not modified
+		 */
+		void offer(ByteBuffer data) {
+			synchronized (this) {
+				if (packets.size() >= MAX_QUEUED_PACKETS) {
+					router.metrics.packetDropped();
+					return;
+				}
+				ByteBuffer copy = freeBuffers.poll();
+				if (copy == null || copy.capacity() < data.remaining()) {
+					copy = ByteBuffer.allocate(Math.max(data.remaining(), router.transport.getMaxDatagramSize()));
+				}
+				copy.clear();
+				copy.put(data.duplicate());
+				copy.flip();
+				packets.add(copy);
+				if (decoding) {
+					return;
+				}
+				decoding = true;
+			}
+			workers.execute(this);
+		}
+
+		/**
+		 * The decoding task: decodes the queued messages until the queue is empty
+		 */
+		@Override
+		public void run() {
+			while (true) {
+				ByteBuffer packet;
+				synchronized (this) {
+					packet = packets.poll();
+					if (packet == null) {
+						decoding = false;
+						return;
+					}
+				}
+				decode(packet);
+				synchronized (this) {
+					freeBuffers.add(packet);
+				}
+			}
+		}
+
+		private void decode(ByteBuffer packet) {
+			PathList receivedPaths;
+			long decodeStart = System.nanoTime();
+			try {
+				WireFormat.readHeader(packet, header);
+				receivedPaths = reassembler.add(header, packet);
+			} catch (IllegalArgumentException e) {
+				router.metrics.invalidPacket();
+				router.out.println("[" + router.routerInfo.id + "] Mensagem invalida descartada: " + e);
+				return;
+			}
+			router.metrics.decode.record(System.nanoTime() - decodeStart);
+			if (receivedPaths != null && merge(reassembler.getType(), reassembler.getSequence(), receivedPaths)) {
+				markDirty(this);
+			}
+		}
+
+		/**
+		 * Merges a complete advertisement on the mailbox. Advertisements not newer than the last one merged are
+		 * ignored, like on {@link Router#applyAdvertisement(long, int, long, PathList)}
+		 * 
+		 * @param type The type of the advertisement
+		 * @param advertisementSequence The sequence number of the advertisement
+		 * @param receivedPaths
+		 * @return if the mailbox became dirty, so the neighbor must be queued for relaxation
+		 */
+		synchronized boolean merge(int type, long advertisementSequence, PathList receivedPaths) {
+			if (hasSequence && advertisementSequence <= sequence) {
+				return false;
+			}
+			if (type == WireFormat.TYPE_FULL) {
+				pending.clear();
+				pendingFull = true;
+			}
+			for (int i = 0; i < receivedPaths.size(); i++) {
+				pending.add(receivedPaths.getDestination(i), receivedPaths.getGateway(i), receivedPaths.getCost(i));
+			}
+			sequence = advertisementSequence;
+			hasSequence = true;
+			return merged++ == 0;
+		}
+
+		/**
+		 * Takes the pending entries of the mailbox and applies them to the copy of the vector of the neighbor. Must
+		 * be called by the relaxation task holding the lock on {@link Router#minimumPathTable}
+		 * 
+		 * @return if the vector was changed and the neighbor must be relaxed
+		 */
+		boolean apply() {
+			int type;
+			long appliedSequence;
+			synchronized (this) {
+				if (merged == 0) {
+					return false;
+				}
+				PathList taken = pending;
+				pending = applying;
+				applying = taken;
+				type = pendingFull ? WireFormat.TYPE_FULL : WireFormat.TYPE_DELTA;
+				appliedSequence = sequence;
+				pendingFull = false;
+				router.metrics.advertisementsCoalesced(merged - 1);
+				merged = 0;
+			}
+			boolean applied = router.applyAdvertisement(neighborID, type, appliedSequence, applying);
+			applying.clear();
+			return applied;
 		}
 	}
 
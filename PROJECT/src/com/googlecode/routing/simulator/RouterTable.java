@@ -5,12 +5,18 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.InetAddress;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages the list of routers available on the network
  * 
+ * A table opened from a {@link TopologyFile} decodes the metadata of each router from the mapped file only when it
+ * is first asked for, so a router process reads just itself and its neighbors
+ * 
  * @author Felipe Ribeiro
  * @author Michelly Guedes
  * @author Renato Miceli
@@ -27,6 +33,11 @@ public class RouterTable {
 	 */
 	private final Map<Long, RouterInfo> routers;
 
+	/**
+	 * The mapped file the routers are decoded from, or null
+	 */
+	private final TopologyFile topology;
+
 	/**
 	 * Initialize the entity passing the path to the file containing the settings
 	 * 
@@ -35,6 +46,26 @@ public class RouterTable {
 	public RouterTable(String routerConfigFilePath) {
 		this.routerConfigFilePath = routerConfigFilePath;
 		this.routers = new HashMap<Long, RouterInfo>();
+		this.topology = null;
+	}
+
+	/**
+	 * Initialize the entity over the routers of the given topology file, without reading them yet. The routers
+	 * decoded are kept on a concurrent map, as they may be first asked for by any thread
+	 * 
+	 * @param topology
+	 */
+	public RouterTable(TopologyFile topology) {
+		this.routerConfigFilePath = topology.getPath();
+		this.routers = new ConcurrentHashMap<Long, RouterInfo>();
+		this.topology = topology;
+	}
+
+	/**
+	 * Creates an empty table, to be filled with {@link #addRouter(RouterInfo)}
+	 */
+	public RouterTable() {
+		this((String) null);
 	}
 
 	/**
@@ -62,6 +93,15 @@ public class RouterTable {
 		buf.close();
 	}
 
+	/**
+	 * Adds a router to the table, replacing any router with the same id
+	 * 
+	 * @param info
+	 */
+	public void addRouter(RouterInfo info) {
+		routers.put(info.id, info);
+	}
+
 	/**
 	 * Returns the info of the router mapped with the given id
 	 * 
@@ -69,7 +109,31 @@ public class RouterTable {
 	 * @return the metadata of the router
 	 */
 	public RouterInfo getInfo(long id) {
-		return routers.get(id);
+		RouterInfo info = routers.get(id);
+		if (info == null && topology != null) {
+			int router = topology.findRouter(id);
+			if (router >= 0) {
+				RouterInfo previous = routers.putIfAbsent(id, info = topology.getRouterInfo(router));
+				if (previous != null) {
+					info = previous;
+				}
+			}
+		}
+		return info;
+	}
+
+	/**
+	 * Returns the metadata of all the routers loaded from the configuration file
+	 * 
+	 * @return an unmodifiable view of the routers of the network
+	 */
+	public Collection<RouterInfo> getRouters() {
+		if (topology != null) {
+			for (int router = 0; router < topology.getRouterCount(); router++) {
+				getInfo(topology.getRouterID(router));
+			}
+		}
+		return Collections.unmodifiableCollection(routers.values());
 	}
 
 }
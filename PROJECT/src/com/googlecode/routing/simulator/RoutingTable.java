@@ -0,0 +1,105 @@
+package com.googlecode.routing.simulator;
+
+import java.util.Arrays;
+
+/**
+ * All the routing state of a router: its own distance vector and the last distance vector received from each
+ * neighbor, sharing a single {@link RouterIndex}
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class RoutingTable {
+
+	/**
+	 * The id of the router that owns this table
+	 */
+	private final long ownerID;
+
+	/**
+	 * The index shared by all the vectors of this table
+	 */
+	private final RouterIndex index;
+
+	/**
+	 * The vectors of the table, addressed by the index of the router that owns each one
+	 */
+	private DistanceVector[] vectors;
+
+	/**
+	 * The ids of the routers that own a vector on this table, including the owner of the table
+	 */
+	private final LongHashSet vectorOwners;
+
+	/**
+	 * Creates a table with an empty vector for its owner
+	 * 
+	 * @param ownerID The id of the router that owns the table
+	 * @param expectedSize Number of routers expected on the network
+	 */
+	public RoutingTable(long ownerID, int expectedSize) {
+		this.ownerID = ownerID;
+		this.index = new RouterIndex(expectedSize);
+		this.vectors = new DistanceVector[16];
+		this.vectorOwners = new LongHashSet();
+		putVector(ownerID, new DistanceVector(index));
+	}
+
+	/**
+	 * Returns the index shared by the vectors of this table
+	 * 
+	 * @return
+	 */
+	public RouterIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the distance vector of the owner of the table
+	 * 
+	 * @return
+	 */
+	public DistanceVector getOwnVector() {
+		return vectors[index.indexOf(ownerID)];
+	}
+
+	/**
+	 * Returns the vector of the given router
+	 * 
+	 * @param routerID
+	 * @return the vector, or null if none was stored for the router
+	 */
+	public DistanceVector getVector(long routerID) {
+		int i = index.indexOf(routerID);
+		return i >= 0 && i < vectors.length ? vectors[i] : null;
+	}
+
+	/**
+	 * Stores the vector of the given router, replacing the previous one
+	 * 
+	 * @param routerID
+	 * @param vector
+	 * @return the vector that was replaced, or null
+	 */
+	public DistanceVector putVector(long routerID, DistanceVector vector) {
+		int i = index.getOrAdd(routerID);
+		if (i >= vectors.length) {
+			vectors = Arrays.copyOf(vectors, Math.max(vectors.length * 2, i + 1));
+		}
+		DistanceVector previous = vectors[i];
+		vectors[i] = vector;
+		vectorOwners.add(routerID);
+		return previous;
+	}
+
+	/**
+	 * Returns the ids of the routers that own a vector on this table
+	 * 
+	 * @return
+	 */
+	public LongHashSet getVectorOwners() {
+		return vectorOwners;
+	}
+
+}
@@ -0,0 +1,312 @@
+package com.googlecode.routing.simulator;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Centralized reference for the distributed algorithm: computes the shortest paths of the whole network straight
+ * from the {@link LinkTable} and compares them with the distance tables of the routers.
+ * 
+ * A Dijkstra is run from each destination in parallel over a fork-join pool. As the links are bidirectional, the
+ * distances from a destination are the distances of every router to it, so each destination is checked against all
+ * the routers as soon as it is computed and no all-pairs matrix is ever kept in memory
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class ShortestPathOracle {
+
+	/**
+	 * Number of destinations computed by each task of the pool without splitting
+	 */
+	private static final int DESTINATIONS_PER_TASK = 8;
+
+	/**
+	 * The topology of the network
+	 */
+	private final LinkTable linkTable;
+
+	/**
+	 * The pool that runs the computations
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates an oracle that runs on the common fork-join pool
+	 * 
+	 * @param linkTable The topology of the network
+	 */
+	public ShortestPathOracle(LinkTable linkTable) {
+		this(linkTable, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates an oracle that runs on the given pool
+	 * 
+	 * @param linkTable The topology of the network
+	 * @param pool
+	 */
+	public ShortestPathOracle(LinkTable linkTable, ForkJoinPool pool) {
+		this.linkTable = linkTable;
+		this.pool = pool;
+	}
+
+	/**
+	 * Returns the cost of the shortest path between the given router and every other router
+	 * 
+	 * @param routerID
+	 * @return the costs indexed as on {@link LinkTable#indexOf(long)}, {@link Router#INFINITY} for unreachable routers
+	 * @throws IllegalArgumentException if the router has no links
+	 */
+	public double[] getDistances(long routerID) {
+		int source = linkTable.indexOf(routerID);
+		if (source < 0) {
+			throw new IllegalArgumentException("Router " + routerID + " has no links");
+		}
+		Dijkstra dijkstra = new Dijkstra(linkTable);
+		dijkstra.run(source);
+		return Arrays.copyOf(dijkstra.distances, dijkstra.distances.length);
+	}
+
+	/**
+	 * Compares the distance table of each router with the shortest paths of the network. A path is correct if its
+	 * cost is the cost of the shortest path and its gateway is a neighbor through which such a path exists. The
+	 * latest snapshot of each table is read, so the routers may keep running
+	 * 
+	 * @param routers The routers to be checked, indexed by their ids
+	 * @param maxReported Maximum number of mismatches kept with their details on the report
+	 * @return
+	 */
+	public ConvergenceReport verify(Map<Long, Router> routers, int maxReported) {
+		Router[] byNode = new Router[linkTable.getRouterCount()];
+		for (int node = 0; node < byNode.length; node++) {
+			byNode[node] = routers.get(linkTable.getRouterID(node));
+		}
+		return pool.invoke(new VerifyTask(byNode, 0, byNode.length, maxReported));
+	}
+
+	/**
+	 * Checks the paths of every router to the destination whose distances were just computed
+	 * 
+	 * @param byNode
+	 * @param destination
+	 * @param distances
+	 * @param report
+	 */
+	private void verifyDestination(Router[] byNode, int destination, double[] distances, ConvergenceReport report) {
+		long destinationID = linkTable.getRouterID(destination);
+		for (int node = 0; node < byNode.length; node++) {
+			Router router = byNode[node];
+			if (router == null) {
+				continue;
+			}
+			double expected = distances[node];
+			double cost = Router.INFINITY;
+			long gateway = -1;
+			TableSnapshot table = router.getSnapshot();
+			int i = table.indexOf(destinationID);
+			if (i >= 0) {
+				cost = table.getCost(i);
+				gateway = table.getGateway(i);
+			}
+
+			report.checked++;
+			if (expected == Router.INFINITY) {
+				if (cost != Router.INFINITY) {
+					report.addMismatch(router.routerInfo.id, destinationID, expected, cost, gateway);
+				}
+			} else if (expected != cost || !isValidGateway(node, destination, gateway, distances)) {
+				report.addMismatch(router.routerInfo.id, destinationID, expected, cost, gateway);
+			}
+		}
+	}
+
+	/**
+	 * Tells if a path through the given gateway has the minimum cost
+	 * 
+	 * @param node the router that owns the path
+	 * @param destination
+	 * @param gateway the id of the gateway used by the router
+	 * @param distances the distances of every router to the destination
+	 * @return
+	 */
+	private boolean isValidGateway(int node, int destination, long gateway, double[] distances) {
+		if (node == destination) {
+			return gateway == linkTable.getRouterID(node);
+		}
+		int end = linkTable.getAdjacencyEnd(node);
+		for (int position = linkTable.getAdjacencyStart(node); position < end; position++) {
+			int neighbor = linkTable.getAdjacentNode(position);
+			if (linkTable.getRouterID(neighbor) == gateway
+					&& distances[node] == linkTable.getAdjacentCost(position) + distances[neighbor]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Verifies a range of destinations, splitting it between the workers of the pool
+	 */
+	private class VerifyTask extends RecursiveTask<ConvergenceReport> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Router[] byNode;
+
+		private final int from;
+
+		private final int to;
+
+		private final int maxReported;
+
+		VerifyTask(Router[] byNode, int from, int to, int maxReported) {
+			this.byNode = byNode;
+			this.from = from;
+			this.to = to;
+			this.maxReported = maxReported;
+		}
+
+		@Override
+		protected ConvergenceReport compute() {
+			if (to - from > DESTINATIONS_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				VerifyTask left = new VerifyTask(byNode, from, middle, maxReported);
+				VerifyTask right = new VerifyTask(byNode, middle, to, maxReported);
+				left.fork();
+				ConvergenceReport report = right.compute();
+				report.merge(left.join());
+				return report;
+			}
+
+			ConvergenceReport report = new ConvergenceReport(maxReported);
+			Dijkstra dijkstra = new Dijkstra(linkTable);
+			for (int destination = from; destination < to; destination++) {
+				dijkstra.run(destination);
+				verifyDestination(byNode, destination, dijkstra.distances, report);
+			}
+			return report;
+		}
+	}
+
+	/**
+	 * Dijkstra over the adjacency structure of the link table, with an indexed binary heap. The arrays are reused
+	 * between runs
+	 */
+	private static class Dijkstra {
+
+		private final LinkTable linkTable;
+
+		/**
+		 * Distance of each router to the source of the last run
+		 */
+		final double[] distances;
+
+		/**
+		 * The routers on the heap, ordered by distance
+		 */
+		private final int[] heap;
+
+		/**
+		 * Position of each router on the heap, -1 if it is not there
+		 */
+		private final int[] positions;
+
+		private int heapSize;
+
+		Dijkstra(LinkTable linkTable) {
+			int count = linkTable.getRouterCount();
+			this.linkTable = linkTable;
+			this.distances = new double[count];
+			this.heap = new int[count];
+			this.positions = new int[count];
+		}
+
+		void run(int source) {
+			Arrays.fill(distances, Router.INFINITY);
+			Arrays.fill(positions, -1);
+			heapSize = 0;
+			distances[source] = 0;
+			push(source);
+
+			while (heapSize > 0) {
+				int node = pop();
+				double distance = distances[node];
+				int end = linkTable.getAdjacencyEnd(node);
+				for (int position = linkTable.getAdjacencyStart(node); position < end; position++) {
+					int neighbor = linkTable.getAdjacentNode(position);
+					double candidate = distance + linkTable.getAdjacentCost(position);
+					if (candidate < distances[neighbor]) {
+						distances[neighbor] = candidate;
+						if (positions[neighbor] < 0) {
+							push(neighbor);
+						} else {
+							siftUp(positions[neighbor]);
+						}
+					}
+				}
+			}
+		}
+
+		private void push(int node) {
+			heap[heapSize] = node;
+			positions[node] = heapSize;
+			siftUp(heapSize++);
+		}
+
+		private int pop() {
+			int top = heap[0];
+			positions[top] = -1;
+			int last = heap[--heapSize];
+			if (heapSize > 0) {
+				heap[0] = last;
+				positions[last] = 0;
+				siftDown(0);
+			}
+			return top;
+		}
+
+		private void siftUp(int i) {
+			int node = heap[i];
+			double distance = distances[node];
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				int parentNode = heap[parent];
+				if (distances[parentNode] <= distance) {
+					break;
+				}
+				heap[i] = parentNode;
+				positions[parentNode] = i;
+				i = parent;
+			}
+			heap[i] = node;
+			positions[node] = i;
+		}
+
+		private void siftDown(int i) {
+			int node = heap[i];
+			double distance = distances[node];
+			int half = heapSize >>> 1;
+			while (i < half) {
+				int child = 2 * i + 1;
+				int right = child + 1;
+				if (right < heapSize && distances[heap[right]] < distances[heap[child]]) {
+					child = right;
+				}
+				int childNode = heap[child];
+				if (distance <= distances[childNode]) {
+					break;
+				}
+				heap[i] = childNode;
+				positions[childNode] = i;
+				i = child;
+			}
+			heap[i] = node;
+			positions[node] = i;
+		}
+	}
+
+}
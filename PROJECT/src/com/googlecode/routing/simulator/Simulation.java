@@ -0,0 +1,450 @@
+package com.googlecode.routing.simulator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+
+/**
+ * Runs every router of the network inside a single process. The configuration files are loaded only once and the
+ * routers talk to each other either through an {@link InMemoryNetwork}, without UDP sockets, or through
+ * {@link NioTransport}s all served by the same {@link NioEventLoop}.
+ * 
+ * Each router may either have its own threads or share a small pool with all the others, which lets a single process
+ * host thousands of routers
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class Simulation {
+
+	/**
+	 * The kinds of transport that can connect the routers of a simulation
+	 */
+	public enum TransportMode {
+		/**
+		 * Messages are copied between queues inside the process
+		 */
+		MEMORY,
+		/**
+		 * Messages go through UDP sockets served by a single event loop
+		 */
+		NIO
+	}
+
+	/**
+	 * The ways the clients and servers of the routers can be run
+	 */
+	public enum ExecutionMode {
+		/**
+		 * Each router has a thread for its client and, unless served by the event loop, one for its server
+		 */
+		THREADS,
+		/**
+		 * The rounds of the clients are periodic tasks of a shared scheduler and the messages are pushed to the
+		 * servers by the pool of workers, so no thread is dedicated to a router
+		 */
+		SCHEDULED
+	}
+
+	/**
+	 * Stream that discards everything written to it, used when the routers should run quietly
+	 */
+	public static final PrintStream NULL_OUTPUT = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	});
+
+	/**
+	 * The event loop that serves the transports of the routers, null unless running on {@link TransportMode#NIO}
+	 */
+	private final NioEventLoop eventLoop;
+
+	/**
+	 * The routers of the simulation, indexed by their ids
+	 */
+	private final Map<Long, Router> routers;
+
+	/**
+	 * The threads running the client and server of each router
+	 */
+	private final List<Thread> threads;
+
+	/**
+	 * How the clients and servers of the routers are run
+	 */
+	private final ExecutionMode execution;
+
+	/**
+	 * The scheduler of the rounds of the clients, null unless running on {@link ExecutionMode#SCHEDULED}
+	 */
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * The pool shared by the servers of all the routers to decode and relax the messages received
+	 */
+	private final ExecutorService workers;
+
+	/**
+	 * The table with the metadata of all the routers of the network
+	 */
+	private final RouterTable routerTable;
+
+	/**
+	 * The links the routers were created with
+	 */
+	private final LinkTable linkTable;
+
+	/**
+	 * Reference used to check the tables of the routers, rebuilt when the links are reloaded
+	 */
+	private ShortestPathOracle oracle;
+
+	/**
+	 * The links {@link #oracle} was built from
+	 */
+	private LinkTable oracleLinks;
+
+	/**
+	 * The watcher of the link configuration file, null unless {@link #watchLinks(String)} was called
+	 */
+	private volatile LinkConfigWatcher watcher;
+
+	/**
+	 * Creates all the routers found on the router table connected by the given kind of transport
+	 * 
+	 * @param routerTable The table with the metadata of all the routers of the network
+	 * @param linkTable The table with all the links of the network
+	 * @param out The stream shared by the routers to output messages
+	 * @param mode The kind of transport that connects the routers
+	 * @throws IOException if the sockets of the routers can not be bound
+	 */
+	public Simulation(RouterTable routerTable, LinkTable linkTable, PrintStream out, TransportMode mode) throws IOException {
+		this(routerTable, linkTable, out, mode, ExecutionMode.THREADS);
+	}
+
+	/**
+	 * Creates all the routers found on the router table connected by the given kind of transport and run the given
+	 * way
+	 * 
+	 * @param routerTable The table with the metadata of all the routers of the network
+	 * @param linkTable The table with all the links of the network
+	 * @param out The stream shared by the routers to output messages
+	 * @param mode The kind of transport that connects the routers
+	 * @param execution How the clients and servers of the routers are run
+	 * @throws IOException if the sockets of the routers can not be bound
+	 */
+	public Simulation(RouterTable routerTable, LinkTable linkTable, PrintStream out, TransportMode mode,
+			ExecutionMode execution) throws IOException {
+		if (mode == TransportMode.MEMORY) {
+			this.eventLoop = null;
+		} else {
+			this.eventLoop = new NioEventLoop();
+		}
+		this.routers = new HashMap<Long, Router>();
+		this.threads = new ArrayList<Thread>();
+		this.execution = execution;
+		this.workers = RouterServer.newWorkerPool(Runtime.getRuntime().availableProcessors());
+		if (execution == ExecutionMode.SCHEDULED) {
+			int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+			this.scheduler = Executors.newScheduledThreadPool(threads, new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "client-scheduler-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		} else {
+			this.scheduler = null;
+		}
+		this.routerTable = routerTable;
+		this.linkTable = linkTable;
+		this.oracle = new ShortestPathOracle(linkTable);
+		this.oracleLinks = linkTable;
+		InMemoryNetwork network = new InMemoryNetwork(execution == ExecutionMode.SCHEDULED ? workers : null);
+		for (RouterInfo info : routerTable.getRouters()) {
+			Router router = Main.createRouter(info, routerTable, linkTable, out);
+			if (eventLoop == null) {
+				router.initTransport(network.attach(info));
+			} else {
+				router.initTransport(new NioTransport(info, eventLoop));
+			}
+			routers.put(info.id, router);
+		}
+	}
+
+	/**
+	 * Starts the client and the server of every router
+	 */
+	public void start() {
+		for (Router router : routers.values()) {
+			try {
+				router.metrics.register();
+			} catch (JMException e) {
+				e.printStackTrace();
+			}
+		}
+		if (eventLoop != null) {
+			startThread(eventLoop, "nio-event-loop");
+		}
+		for (Router router : routers.values()) {
+			RouterClient client = new RouterClient(router);
+			RouterServer server = new RouterServer(router, client, workers);
+			if (!server.listen()) {
+				startThread(server, "server-" + router.routerInfo.id);
+			}
+			if (execution == ExecutionMode.SCHEDULED) {
+				client.schedule(scheduler);
+			} else {
+				startThread(client, "client-" + router.routerInfo.id);
+			}
+		}
+	}
+
+	/**
+	 * Selects the protocol run by every router
+	 * 
+	 * @param protocolMode What is advertised to each neighbor
+	 * @param holdDownTime Duration of the hold-down of the paths that get worse, in milliseconds, or zero to disable
+	 *            it
+	 */
+	public void setProtocol(Router.ProtocolMode protocolMode, long holdDownTime) {
+		for (Router router : routers.values()) {
+			router.protocolMode = protocolMode;
+			router.holdDownTime = holdDownTime;
+		}
+	}
+
+	/**
+	 * Returns the number of messages sent by all the routers so far
+	 * 
+	 * @return
+	 */
+	public long getPacketsSent() {
+		long packets = 0;
+		for (Router router : routers.values()) {
+			packets += router.metrics.getPacketsOut();
+		}
+		return packets;
+	}
+
+	/**
+	 * Prints the metrics of every router periodically, until the simulation is stopped
+	 * 
+	 * @param out Where the metrics are printed
+	 * @param interval Interval between the reports, in milliseconds
+	 */
+	public void reportMetrics(PrintStream out, long interval) {
+		startThread(new MetricsReporter(routers.values(), out, interval), "metrics-reporter");
+	}
+
+	/**
+	 * Writes the changes of the tables of every router on a background thread, until the simulation is stopped
+	 * 
+	 * @param out Where the changes are written
+	 * @param format Format of the output
+	 * @param interval Interval between the writes, in milliseconds
+	 */
+	public void logChanges(PrintStream out, TableChangeLogger.Format format, long interval) {
+		TableChangeLogger logger = new TableChangeLogger(out, format, interval, TableChangeLogger.DEFAULT_CAPACITY);
+		for (Router router : routers.values()) {
+			router.changeLogger = logger;
+		}
+		startThread(logger, "change-logger");
+	}
+
+	/**
+	 * Watches the link configuration file on a background thread, until the simulation is stopped, applying its
+	 * changes to the running routers
+	 * 
+	 * @param linkConfigFilePath Path to the file the links were loaded from
+	 * @return the watcher, which may also be used to apply changes directly
+	 */
+	public LinkConfigWatcher watchLinks(String linkConfigFilePath) {
+		LinkConfigWatcher watcher = new LinkConfigWatcher(linkConfigFilePath, linkTable, routerTable, routers,
+				System.out);
+		this.watcher = watcher;
+		startThread(watcher, "link-config-watcher");
+		return watcher;
+	}
+
+	private void startThread(Runnable runnable, String name) {
+		Thread thread = new Thread(runnable, name);
+		threads.add(thread);
+		thread.start();
+	}
+
+	/**
+	 * Stops every router and releases their transports
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void stop() throws InterruptedException {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler.awaitTermination(Router.SLEEP_TIME, TimeUnit.MILLISECONDS);
+		}
+		for (Thread thread : threads) {
+			thread.interrupt();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		threads.clear();
+		workers.shutdownNow();
+		workers.awaitTermination(Router.SLEEP_TIME, TimeUnit.MILLISECONDS);
+		for (Router router : routers.values()) {
+			router.transport.close();
+			try {
+				router.metrics.unregister();
+			} catch (JMException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Returns the routers of the simulation
+	 * 
+	 * @return an unmodifiable map of the routers indexed by their ids
+	 */
+	public Map<Long, Router> getRouters() {
+		return Collections.unmodifiableMap(routers);
+	}
+
+	/**
+	 * Compares the distance tables of the routers with the shortest paths of the network, as of the last reload of
+	 * the links
+	 * 
+	 * @param maxReported Maximum number of mismatches kept with their details on the report
+	 * @return
+	 */
+	public synchronized ConvergenceReport verify(int maxReported) {
+		LinkConfigWatcher watcher = this.watcher;
+		if (watcher != null && watcher.getLinkTable() != oracleLinks) {
+			oracleLinks = watcher.getLinkTable();
+			oracle = new ShortestPathOracle(oracleLinks);
+		}
+		return oracle.verify(routers, maxReported);
+	}
+
+	/**
+	 * Executes all the routers configured on the default files inside this process
+	 * 
+	 * @param args Optionally "-q" to suppress the output of the routers, "-diff" to write only the changed paths
+	 *            instead of the whole tables, "-nio" to connect them through UDP
+	 *            sockets served by a single event loop, "-scheduled" to run the routers on shared pools instead of
+	 *            their own threads, "-mode" followed by the protocol mode (basic, split_horizon or poison_reverse),
+	 *            "-holddown" followed by the duration of the hold-down in milliseconds, "-watch" to apply the changes of
+	 *            the link configuration file while running, "-verify" to check the tables periodically and stop once
+	 *            they converge and "-metrics" followed by the interval in seconds between the reports of the metrics
+	 *            of the routers, followed by the paths to the router and link configuration files
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int arg = 0;
+		PrintStream out = System.out;
+		TransportMode mode = TransportMode.MEMORY;
+		ExecutionMode execution = ExecutionMode.THREADS;
+		Router.ProtocolMode protocolMode = Router.ProtocolMode.BASIC;
+		long holdDownTime = 0;
+		boolean verify = false;
+		boolean watch = false;
+		TableChangeLogger.Format format = TableChangeLogger.Format.SNAPSHOT;
+		long metricsInterval = 0;
+		for (; args.length > arg && args[arg].startsWith("-"); arg++) {
+			if (args[arg].equals("-q")) {
+				out = NULL_OUTPUT;
+			} else if (args[arg].equals("-diff")) {
+				format = TableChangeLogger.Format.DIFF;
+			} else if (args[arg].equals("-nio")) {
+				mode = TransportMode.NIO;
+			} else if (args[arg].equals("-scheduled")) {
+				execution = ExecutionMode.SCHEDULED;
+			} else if (args[arg].equals("-mode") && args.length > arg + 1 && isProtocolMode(args[arg + 1])) {
+				protocolMode = Router.ProtocolMode.valueOf(args[++arg].toUpperCase());
+			} else if (args[arg].equals("-holddown") && args.length > arg + 1 && args[arg + 1].matches("\\d+")) {
+				holdDownTime = Long.parseLong(args[++arg]);
+			} else if (args[arg].equals("-watch")) {
+				watch = true;
+			} else if (args[arg].equals("-verify")) {
+				verify = true;
+			} else if (args[arg].equals("-metrics") && args.length > arg + 1 && args[arg + 1].matches("\\d+")) {
+				metricsInterval = Long.parseLong(args[++arg]) * 1000;
+			} else {
+				System.err.println("USAGE: [-q] [-diff] [-nio] [-scheduled] [-mode <basic|split_horizon|poison_reverse>]"
+						+ " [-holddown <ms>] [-watch] [-verify] [-metrics <seconds>] [<router_config> [<link_config>]]");
+				System.exit(1);
+			}
+		}
+		String routerConfig = args.length > arg ? args[arg++] : Main.ROTEADOR_CONFIG_DIR;
+		String linkConfig = args.length > arg ? args[arg++] : Main.ENLACES_CONFIG_DIR;
+
+		RouterTable routerTable = new RouterTable(routerConfig);
+		routerTable.parseConfigFile();
+
+		LinkTable linkTable = new LinkTable(linkConfig);
+		linkTable.parseConfigFile();
+
+		Simulation simulation = new Simulation(routerTable, linkTable, out, mode, execution);
+		simulation.setProtocol(protocolMode, holdDownTime);
+		System.out.println("Simulando " + simulation.getRouters().size() + " roteadores (" + mode + ", " + execution + ", "
+				+ protocolMode + ")");
+		if (out != NULL_OUTPUT) {
+			simulation.logChanges(out, format, TableChangeLogger.DEFAULT_INTERVAL);
+		}
+		long start = System.currentTimeMillis();
+		simulation.start();
+		if (watch) {
+			simulation.watchLinks(linkConfig);
+		}
+		if (metricsInterval > 0) {
+			simulation.reportMetrics(System.out, metricsInterval);
+		}
+		if (!verify) {
+			return;
+		}
+
+		ConvergenceReport report;
+		do {
+			Thread.sleep(Router.SLEEP_TIME);
+			report = simulation.verify(10);
+			System.out.println("Verificacao: " + report);
+		} while (!report.isConverged());
+		System.out.println("Convergiu em " + (System.currentTimeMillis() - start) + " ms, "
+				+ simulation.getPacketsSent() + " mensagens enviadas");
+		simulation.stop();
+	}
+
+	private static boolean isProtocolMode(String name) {
+		for (Router.ProtocolMode protocolMode : Router.ProtocolMode.values()) {
+			if (protocolMode.name().equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
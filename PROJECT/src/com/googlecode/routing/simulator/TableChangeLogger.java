@@ -0,0 +1,278 @@
+package com.googlecode.routing.simulator;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the changes of the routing tables of one or more routers on a background thread, so the threads that
+ * update the tables never wait for the output. The changes are kept on a bounded buffer and written at most once
+ * per interval: bursts of changes to the same router are coalesced into a single snapshot of its table, or into a
+ * single line with the last value of each changed path on the diff format. Changes that do not fit on the buffer
+ * are dropped and counted on the {@link RouterMetrics} of their router. The routers never take a lock: each
+ * snapshot claims its slots on the buffer with a single atomic operation, so routers sharing the logger do not wait
+ * for each other nor for the writing thread
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class TableChangeLogger implements Runnable {
+
+	/**
+	 * The formats of the output
+	 */
+	public enum Format {
+		/**
+		 * The whole table of each changed router
+		 */
+		SNAPSHOT,
+		/**
+		 * One line per changed router, with the destination, cost and gateway of each changed path
+		 */
+		DIFF
+	}
+
+	/**
+	 * Default interval between the writes, in milliseconds
+	 */
+	public static final long DEFAULT_INTERVAL = 1000;
+
+	/**
+	 * Default number of changes held between two writes
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	/**
+	 * Where the changes are written
+	 */
+	private final PrintStream out;
+
+	/**
+	 * Interval between the writes, in milliseconds
+	 */
+	private final long interval;
+
+	/**
+	 * Format of the output
+	 */
+	private final Format format;
+
+	/**
+	 * The buffer that receives the changes
+	 */
+	private volatile Buffer pending;
+
+	/**
+	 * The buffer being written, swapped with {@link #pending} at each interval. Only accessed by the writing thread,
+	 * and closed while it is not pending
+	 */
+	private Buffer draining;
+
+	/**
+	 * Number of changes dropped since the last write
+	 */
+	private final AtomicLong dropped;
+
+	/**
+	 * Creates a logger with the default interval and capacity
+	 * 
+	 * @param out Where the changes are written
+	 * @param format Format of the output
+	 */
+	public TableChangeLogger(PrintStream out, Format format) {
+		this(out, format, DEFAULT_INTERVAL, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a logger
+	 * 
+	 * @param out Where the changes are written
+	 * @param format Format of the output
+	 * @param interval Interval between the writes, in milliseconds
+	 * @param capacity Number of changes held between two writes
+	 */
+	public TableChangeLogger(PrintStream out, Format format, long interval, int capacity) {
+		this.out = out;
+		this.format = format;
+		this.interval = interval;
+		this.pending = new Buffer(capacity);
+		this.draining = new Buffer(capacity);
+		this.draining.claimed.set(Buffer.CLOSED);
+		this.dropped = new AtomicLong();
+	}
+
+	/**
+	 * Records the changes of a snapshot published by the given router. Never waits for room on the buffer nor takes
+	 * a lock
+	 * 
+	 * @param router
+	 * @param snapshot
+	 */
+	public void changed(Router router, TableSnapshot snapshot) {
+		int count = snapshot.getChangeCount();
+		Buffer buffer;
+		int first;
+		do {
+			buffer = pending;
+			first = buffer.claimed.getAndAdd(count);
+		} while (first < 0);
+
+		int claimed = Math.max(0, Math.min(count, buffer.routers.length - first));
+		for (int i = 0; i < claimed; i++) {
+			long destinationRouterID = snapshot.getChange(i);
+			int destination = snapshot.indexOf(destinationRouterID);
+			if (destination >= 0) {
+				buffer.set(first + i, router, destinationRouterID, snapshot.getCost(destination),
+						snapshot.getGateway(destination));
+			}
+		}
+		if (claimed > 0) {
+			buffer.committed.addAndGet(claimed);
+		}
+		if (claimed < count) {
+			dropped.addAndGet(count - claimed);
+			router.metrics.tableChangesDropped(count - claimed);
+		}
+	}
+
+	/**
+	 * Writes the changes at each interval until the thread is interrupted, then writes the last ones
+	 */
+	@Override
+	public void run() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				Thread.sleep(interval);
+			} catch (InterruptedException e) {
+				break;
+			}
+			flush();
+		}
+		flush();
+	}
+
+	/**
+	 * Writes the changes received since the last write
+	 */
+	private void flush() {
+		Buffer next = draining;
+		next.committed.set(0);
+		next.claimed.set(0);
+		Buffer buffer = pending;
+		pending = next;
+		buffer.size = Math.min(buffer.claimed.getAndSet(Buffer.CLOSED), buffer.routers.length);
+		while (buffer.committed.get() < buffer.size) {
+			Thread.yield();
+		}
+		draining = buffer;
+		long droppedNow = dropped.getAndSet(0);
+		if (buffer.size == 0 && droppedNow == 0) {
+			return;
+		}
+
+		StringBuilder builder = new StringBuilder();
+		if (format == Format.SNAPSHOT) {
+			Map<Router, Boolean> routers = new LinkedHashMap<Router, Boolean>();
+			for (int i = 0; i < buffer.size; i++) {
+				if (buffer.routers[i] != null) {
+					routers.put(buffer.routers[i], Boolean.TRUE);
+				}
+			}
+			for (Router router : routers.keySet()) {
+				builder.append('[').append(router.routerInfo.id).append("]\n");
+				router.appendDistanceTable(builder);
+				builder.append('\n');
+			}
+		} else {
+			Map<Router, Map<Long, Integer>> changes = new LinkedHashMap<Router, Map<Long, Integer>>();
+			for (int i = 0; i < buffer.size; i++) {
+				if (buffer.routers[i] == null) {
+					continue;
+				}
+				Map<Long, Integer> routerChanges = changes.get(buffer.routers[i]);
+				if (routerChanges == null) {
+					routerChanges = new LinkedHashMap<Long, Integer>();
+					changes.put(buffer.routers[i], routerChanges);
+				}
+				routerChanges.put(buffer.destinations[i], i);
+			}
+			for (Map.Entry<Router, Map<Long, Integer>> entry : changes.entrySet()) {
+				builder.append('[').append(entry.getKey().routerInfo.id).append(']');
+				for (int i : entry.getValue().values()) {
+					double cost = buffer.costs[i];
+					builder.append(' ').append(buffer.destinations[i]).append(':')
+							.append(cost == Router.INFINITY ? "N/A" : String.valueOf(cost)).append(':')
+							.append(buffer.gateways[i]);
+				}
+				builder.append('\n');
+			}
+		}
+		if (droppedNow > 0) {
+			builder.append(droppedNow).append(" mudancas descartadas\n");
+		}
+		buffer.clear();
+		out.print(builder);
+	}
+
+	/**
+	 * The changes received between two writes, stored on parallel arrays. The slots are claimed by the routers with
+	 * {@link #claimed} and counted on {@link #committed} once written, so the writing thread knows when the buffer
+	 * is complete. A slot whose router is null holds nothing
+	 */
+	private static class Buffer {
+
+		/**
+		 * Value of {@link #claimed} while the buffer does not accept changes, low enough to stay negative whatever is
+		 * added to it
+		 */
+		static final int CLOSED = Integer.MIN_VALUE;
+
+		/**
+		 * Number of slots claimed, which may exceed the capacity, or negative if the buffer is closed
+		 */
+		final AtomicInteger claimed = new AtomicInteger();
+
+		/**
+		 * Number of claimed slots already written
+		 */
+		final AtomicInteger committed = new AtomicInteger();
+
+		final Router[] routers;
+
+		final long[] destinations;
+
+		final double[] costs;
+
+		final long[] gateways;
+
+		/**
+		 * Number of slots to be written, set when the buffer is closed
+		 */
+		int size;
+
+		Buffer(int capacity) {
+			this.routers = new Router[capacity];
+			this.destinations = new long[capacity];
+			this.costs = new double[capacity];
+			this.gateways = new long[capacity];
+		}
+
+		void set(int slot, Router router, long destination, double cost, long gateway) {
+			routers[slot] = router;
+			destinations[slot] = destination;
+			costs[slot] = cost;
+			gateways[slot] = gateway;
+		}
+
+		void clear() {
+			for (int i = 0; i < size; i++) {
+				routers[i] = null;
+			}
+			size = 0;
+		}
+	}
+
+}
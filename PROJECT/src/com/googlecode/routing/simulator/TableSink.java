@@ -0,0 +1,63 @@
+package com.googlecode.routing.simulator;
+
+/**
+ * Loads a generated topology straight into a {@link RouterTable} and a {@link LinkTable}, without configuration
+ * files
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class TableSink implements TopologySink {
+
+	/**
+	 * The table that receives the routers
+	 */
+	private final RouterTable routerTable;
+
+	/**
+	 * The table that receives the links
+	 */
+	private final LinkTable linkTable;
+
+	/**
+	 * Creates the sink with empty tables
+	 */
+	public TableSink() {
+		this.routerTable = new RouterTable();
+		this.linkTable = new LinkTable();
+	}
+
+	@Override
+	public void addRouter(RouterInfo info) {
+		routerTable.addRouter(info);
+	}
+
+	@Override
+	public void addLink(long routerAID, long routerBID, double cost) {
+		linkTable.addLink(routerAID, routerBID, cost);
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Returns the table with the generated routers
+	 * 
+	 * @return
+	 */
+	public RouterTable getRouterTable() {
+		return routerTable;
+	}
+
+	/**
+	 * Returns the table with the generated links
+	 * 
+	 * @return
+	 */
+	public LinkTable getLinkTable() {
+		return linkTable;
+	}
+
+}
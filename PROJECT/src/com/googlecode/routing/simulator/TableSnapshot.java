@@ -0,0 +1,158 @@
+package com.googlecode.routing.simulator;
+
+import java.util.Map;
+
+/**
+ * Immutable copy of the distance table of a router, published after each batch of changes so the table can be
+ * read without the lock on {@link Router#minimumPathTable}. Each snapshot has the destinations changed since the
+ * previous one and a link to the next one, so a reader holding an old snapshot can find everything that changed
+ * since then
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public final class TableSnapshot {
+
+	/**
+	 * Position of the snapshot in the sequence published by the router, starting at zero
+	 */
+	private final long version;
+
+	/**
+	 * The copy of the table, never modified after the snapshot is created
+	 */
+	private final DistanceVector vector;
+
+	/**
+	 * The destinations changed since the previous snapshot
+	 */
+	private final long[] changes;
+
+	/**
+	 * The snapshot published after this one, null while this is the latest
+	 */
+	private volatile TableSnapshot next;
+
+	/**
+	 * Creates a snapshot
+	 * 
+	 * @param version
+	 * @param vector A copy of the table that will not be modified anymore
+	 * @param changes The destinations changed since the previous snapshot
+	 */
+	TableSnapshot(long version, DistanceVector vector, long[] changes) {
+		this.version = version;
+		this.vector = vector;
+		this.changes = changes;
+	}
+
+	/**
+	 * Returns the position of the snapshot in the sequence published by the router
+	 * 
+	 * @return
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the snapshot published after this one
+	 * 
+	 * @return null if this is the latest one
+	 */
+	public TableSnapshot getNext() {
+		return next;
+	}
+
+	void setNext(TableSnapshot next) {
+		this.next = next;
+	}
+
+	/**
+	 * Returns the number of destinations changed since the previous snapshot
+	 * 
+	 * @return
+	 */
+	public int getChangeCount() {
+		return changes.length;
+	}
+
+	/**
+	 * Returns a destination changed since the previous snapshot
+	 * 
+	 * @param i between 0 and {@link #getChangeCount()}
+	 * @return the id of the destination
+	 */
+	public long getChange(int i) {
+		return changes[i];
+	}
+
+	/**
+	 * Returns the position of the given destination on this snapshot
+	 * 
+	 * @param destinationRouterID
+	 * @return the position, or -1 if the destination is not on the table
+	 */
+	public int indexOf(long destinationRouterID) {
+		int i = vector.getIndex().indexOf(destinationRouterID);
+		return vector.contains(i) ? i : -1;
+	}
+
+	/**
+	 * @see DistanceVector#capacity()
+	 */
+	public int capacity() {
+		return vector.capacity();
+	}
+
+	/**
+	 * @see DistanceVector#size()
+	 */
+	public int size() {
+		return vector.size();
+	}
+
+	/**
+	 * @see DistanceVector#contains(int)
+	 */
+	public boolean contains(int i) {
+		return vector.contains(i);
+	}
+
+	/**
+	 * @see DistanceVector#getCost(int)
+	 */
+	public double getCost(int i) {
+		return vector.getCost(i);
+	}
+
+	/**
+	 * @see DistanceVector#getGateway(int)
+	 */
+	public long getGateway(int i) {
+		return vector.getGateway(i);
+	}
+
+	/**
+	 * @see DistanceVector#getDestination(int)
+	 */
+	public long getDestination(int i) {
+		return vector.getDestination(i);
+	}
+
+	/**
+	 * @see DistanceVector#getPath(long)
+	 */
+	public PathInfo getPath(long destinationRouterID) {
+		return vector.getPath(destinationRouterID);
+	}
+
+	/**
+	 * @see DistanceVector#asMap()
+	 */
+	public Map<Long, PathInfo> asMap() {
+		return vector.asMap();
+	}
+
+}
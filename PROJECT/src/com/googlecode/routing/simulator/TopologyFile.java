@@ -0,0 +1,506 @@
+package com.googlecode.routing.simulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Binary snapshot of a whole topology, compiled once from the configuration files and then opened by memory mapping
+ * with {@link RouterTable#RouterTable(TopologyFile)} and {@link LinkTable#LinkTable(TopologyFile)}. The tables read
+ * the routers and links straight from the mapped file, so opening it costs the same for any size of topology and
+ * all the routers started on the same host share the pages of a single copy.
+ * 
+ * The file has a header followed by sections of fixed size, each aligned to eight bytes and in little endian
+ * order:
+ * <ul>
+ * <li>the ids of the routers, sorted, followed by their ports and IPv4 addresses</li>
+ * <li>both routers and the cost of each link, in the order of the configuration file</li>
+ * <li>the ids of the routers that have links, sorted, which gives the index of each router on the adjacency
+ * structure</li>
+ * <li>the adjacency structure (CSR), as built by {@link LinkTable}: the offset of the neighbors of each router, and
+ * the index of each neighbor with the link that reaches it</li>
+ * </ul>
+ * The file is written to a temporary file that then replaces the destination, so routers that still map the old
+ * version keep reading it unchanged
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public final class TopologyFile {
+
+	/**
+	 * First bytes of the file, "RTOP"
+	 */
+	public static final int MAGIC = 0x504F5452;
+
+	/**
+	 * Version of the format
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Size of the header, in bytes
+	 */
+	private static final int HEADER_SIZE = 64;
+
+	private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	private final String path;
+
+	private final int routerCount;
+
+	private final int linkCount;
+
+	private final int nodeCount;
+
+	private final double costsSum;
+
+	private final LongBuffer routerIDs;
+
+	private final IntBuffer routerPorts;
+
+	private final IntBuffer routerAddresses;
+
+	private final LongBuffer linkA;
+
+	private final LongBuffer linkB;
+
+	private final DoubleBuffer linkCost;
+
+	private final LongBuffer nodeIDs;
+
+	private final IntBuffer adjacencyOffsets;
+
+	private final IntBuffer adjacentNodes;
+
+	private final IntBuffer adjacentLinks;
+
+	/**
+	 * Reads the header of the mapped file and creates a view over each section
+	 * 
+	 * @param path
+	 * @param buffer The whole file
+	 * @throws IOException if the file is not a topology of this version
+	 */
+	private TopologyFile(String path, ByteBuffer buffer) throws IOException {
+		this.path = path;
+		buffer.order(ORDER);
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException(path + " is not a topology file");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException(path + " has version " + buffer.getInt(4) + ", expected " + VERSION);
+		}
+		this.routerCount = buffer.getInt(8);
+		this.linkCount = buffer.getInt(12);
+		this.nodeCount = buffer.getInt(16);
+		int adjacencyCount = buffer.getInt(20);
+		this.costsSum = buffer.getDouble(24);
+		if (routerCount < 0 || linkCount < 0 || nodeCount < 0 || adjacencyCount < 0
+				|| buffer.capacity() != sizeOf(routerCount, linkCount, nodeCount, adjacencyCount)) {
+			throw new IOException(path + " is truncated or corrupted");
+		}
+
+		int offset = HEADER_SIZE;
+		this.routerIDs = section(buffer, offset, routerCount * 8L).asLongBuffer();
+		offset += align(routerCount * 8L);
+		this.routerPorts = section(buffer, offset, routerCount * 4L).asIntBuffer();
+		offset += align(routerCount * 4L);
+		this.routerAddresses = section(buffer, offset, routerCount * 4L).asIntBuffer();
+		offset += align(routerCount * 4L);
+		this.linkA = section(buffer, offset, linkCount * 8L).asLongBuffer();
+		offset += align(linkCount * 8L);
+		this.linkB = section(buffer, offset, linkCount * 8L).asLongBuffer();
+		offset += align(linkCount * 8L);
+		this.linkCost = section(buffer, offset, linkCount * 8L).asDoubleBuffer();
+		offset += align(linkCount * 8L);
+		this.nodeIDs = section(buffer, offset, nodeCount * 8L).asLongBuffer();
+		offset += align(nodeCount * 8L);
+		this.adjacencyOffsets = section(buffer, offset, (nodeCount + 1) * 4L).asIntBuffer();
+		offset += align((nodeCount + 1) * 4L);
+		this.adjacentNodes = section(buffer, offset, adjacencyCount * 4L).asIntBuffer();
+		offset += align(adjacencyCount * 4L);
+		this.adjacentLinks = section(buffer, offset, adjacencyCount * 4L).asIntBuffer();
+	}
+
+	/**
+	 * Maps a compiled topology file. The file is mapped read only and may be opened by any number of processes at
+	 * once
+	 * 
+	 * @param path
+	 * @return
+	 * @throws IOException if the file can not be read or is not a topology file
+	 */
+	public static TopologyFile open(String path) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(path + " is too large to be mapped");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new TopologyFile(path, buffer);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Writes the routers and links of the given tables as a topology file, replacing any existing one
+	 * 
+	 * @param routerTable
+	 * @param linkTable
+	 * @param path
+	 * @throws IOException if the topology does not fit in a file that can be mapped, or if a router has an address
+	 *             that is not IPv4
+	 */
+	public static void compile(RouterTable routerTable, LinkTable linkTable, String path) throws IOException {
+		RouterInfo[] routers = routerTable.getRouters().toArray(new RouterInfo[0]);
+		long[] ids = new long[routers.length];
+		for (int i = 0; i < routers.length; i++) {
+			ids[i] = routers[i].id;
+		}
+		Arrays.sort(ids);
+
+		int linkCount = linkTable.getLinkCount();
+		int nodeCount = linkTable.getRouterCount();
+		long[] nodes = new long[nodeCount];
+		for (int node = 0; node < nodeCount; node++) {
+			nodes[node] = linkTable.getRouterID(node);
+		}
+		Arrays.sort(nodes);
+		int adjacencyCount = 0;
+		for (int node = 0; node < nodeCount; node++) {
+			adjacencyCount += linkTable.getAdjacencyEnd(node) - linkTable.getAdjacencyStart(node);
+		}
+
+		long size = sizeOf(ids.length, linkCount, nodeCount, adjacencyCount);
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Topology too large: " + size + " bytes");
+		}
+		File target = new File(path).getAbsoluteFile();
+		File temporary = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+		try {
+			RandomAccessFile file = new RandomAccessFile(temporary, "rw");
+			try {
+				file.setLength(size);
+				MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+				buffer.order(ORDER);
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				buffer.putInt(8, ids.length);
+				buffer.putInt(12, linkCount);
+				buffer.putInt(16, nodeCount);
+				buffer.putInt(20, adjacencyCount);
+				buffer.putDouble(24, linkTable.getCostsSum());
+
+				int offset = HEADER_SIZE;
+				LongBuffer routerIDs = section(buffer, offset, ids.length * 8L).asLongBuffer();
+				offset += align(ids.length * 8L);
+				IntBuffer routerPorts = section(buffer, offset, ids.length * 4L).asIntBuffer();
+				offset += align(ids.length * 4L);
+				IntBuffer routerAddresses = section(buffer, offset, ids.length * 4L).asIntBuffer();
+				offset += align(ids.length * 4L);
+				routerIDs.put(ids);
+				for (long id : ids) {
+					RouterInfo info = routerTable.getInfo(id);
+					if (!(info.ipAddress instanceof Inet4Address)) {
+						throw new IOException("Router " + id + " has no IPv4 address: " + info.ipAddress);
+					}
+					routerPorts.put(info.port);
+					routerAddresses.put(ByteBuffer.wrap(info.ipAddress.getAddress()).getInt());
+				}
+
+				LongBuffer linkA = section(buffer, offset, linkCount * 8L).asLongBuffer();
+				offset += align(linkCount * 8L);
+				LongBuffer linkB = section(buffer, offset, linkCount * 8L).asLongBuffer();
+				offset += align(linkCount * 8L);
+				DoubleBuffer linkCost = section(buffer, offset, linkCount * 8L).asDoubleBuffer();
+				offset += align(linkCount * 8L);
+				for (int link = 0; link < linkCount; link++) {
+					linkA.put(linkTable.getLinkA(link));
+					linkB.put(linkTable.getLinkB(link));
+					linkCost.put(linkTable.getLinkCost(link));
+				}
+
+				section(buffer, offset, nodeCount * 8L).asLongBuffer().put(nodes);
+				offset += align(nodeCount * 8L);
+				IntBuffer adjacencyOffsets = section(buffer, offset, (nodeCount + 1) * 4L).asIntBuffer();
+				offset += align((nodeCount + 1) * 4L);
+				IntBuffer adjacentNodes = section(buffer, offset, adjacencyCount * 4L).asIntBuffer();
+				offset += align(adjacencyCount * 4L);
+				IntBuffer adjacentLinks = section(buffer, offset, adjacencyCount * 4L).asIntBuffer();
+				adjacencyOffsets.put(0);
+				for (long id : nodes) {
+					int node = linkTable.indexOf(id);
+					int end = linkTable.getAdjacencyEnd(node);
+					for (int position = linkTable.getAdjacencyStart(node); position < end; position++) {
+						long neighborID = linkTable.getRouterID(linkTable.getAdjacentNode(position));
+						adjacentNodes.put(Arrays.binarySearch(nodes, neighborID));
+						adjacentLinks.put(linkTable.getAdjacentLink(position));
+					}
+					adjacencyOffsets.put(adjacentNodes.position());
+				}
+				buffer.force();
+			} finally {
+				file.close();
+			}
+			Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temporary.delete();
+		}
+	}
+
+	/**
+	 * Returns the path the file was opened from
+	 * 
+	 * @return
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the number of routers of the router configuration
+	 * 
+	 * @return
+	 */
+	public int getRouterCount() {
+		return routerCount;
+	}
+
+	/**
+	 * Returns the position of a router on the router section
+	 * 
+	 * @param id
+	 * @return the position, or -1 if the router is not on the file
+	 */
+	public int findRouter(long id) {
+		return search(routerIDs, routerCount, id);
+	}
+
+	/**
+	 * Returns the id of the router at the given position of the router section
+	 * 
+	 * @param router between zero and {@link #getRouterCount()} (exclusive)
+	 * @return
+	 */
+	public long getRouterID(int router) {
+		return routerIDs.get(router);
+	}
+
+	/**
+	 * Decodes the metadata of the router at the given position of the router section
+	 * 
+	 * @param router between zero and {@link #getRouterCount()} (exclusive)
+	 * @return a new instance with the metadata of the router
+	 */
+	public RouterInfo getRouterInfo(int router) {
+		RouterInfo info = new RouterInfo();
+		info.id = routerIDs.get(router);
+		info.port = routerPorts.get(router);
+		try {
+			info.ipAddress = InetAddress.getByAddress(ByteBuffer.allocate(4).putInt(routerAddresses.get(router))
+					.array());
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return info;
+	}
+
+	/**
+	 * Returns the number of links
+	 * 
+	 * @return
+	 */
+	public int getLinkCount() {
+		return linkCount;
+	}
+
+	/**
+	 * Returns the sum of the costs of all the links
+	 * 
+	 * @return
+	 */
+	public double getCostsSum() {
+		return costsSum;
+	}
+
+	/**
+	 * Returns the source router of the given link
+	 * 
+	 * @param link
+	 * @return
+	 */
+	public long getLinkA(int link) {
+		return linkA.get(link);
+	}
+
+	/**
+	 * Returns the destination router of the given link
+	 * 
+	 * @param link
+	 * @return
+	 */
+	public long getLinkB(int link) {
+		return linkB.get(link);
+	}
+
+	/**
+	 * Returns the cost of the given link
+	 * 
+	 * @param link
+	 * @return
+	 */
+	public double getLinkCost(int link) {
+		return linkCost.get(link);
+	}
+
+	/**
+	 * Returns the number of routers that have at least one link
+	 * 
+	 * @return
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Returns the index of a router on the adjacency structure
+	 * 
+	 * @param id
+	 * @return the index, or -1 if the router has no links
+	 */
+	public int indexOfNode(long id) {
+		return search(nodeIDs, nodeCount, id);
+	}
+
+	/**
+	 * Returns the id of the router with the given index on the adjacency structure
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public long getNodeID(int node) {
+		return nodeIDs.get(node);
+	}
+
+	/**
+	 * Returns the position of the first neighbor of the given router on the adjacency structure
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public int getAdjacencyStart(int node) {
+		return adjacencyOffsets.get(node);
+	}
+
+	/**
+	 * Returns the position right after the last neighbor of the given router on the adjacency structure
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public int getAdjacencyEnd(int node) {
+		return adjacencyOffsets.get(node + 1);
+	}
+
+	/**
+	 * Returns the index of the neighbor at the given position of the adjacency structure
+	 * 
+	 * @param position
+	 * @return
+	 */
+	public int getAdjacentNode(int position) {
+		return adjacentNodes.get(position);
+	}
+
+	/**
+	 * Returns the link that connects to the neighbor at the given position of the adjacency structure
+	 * 
+	 * @param position
+	 * @return
+	 */
+	public int getAdjacentLink(int position) {
+		return adjacentLinks.get(position);
+	}
+
+	/**
+	 * Compiles the configuration files into a topology file
+	 * 
+	 * @param args The router configuration file, the link configuration file and the topology file to be written
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("USAGE: <roteador.config> <enlaces.config> <topology_file>");
+			System.exit(1);
+		}
+		RouterTable routerTable = new RouterTable(args[0]);
+		routerTable.parseConfigFile();
+		LinkTable linkTable = new LinkTable(args[1]);
+		linkTable.parseConfigFile();
+		try {
+			compile(routerTable, linkTable, args[2]);
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		}
+		System.out.println("Topologia compilada em " + args[2] + ": " + routerTable.getRouters().size()
+				+ " roteadores, " + linkTable.getLinkCount() + " enlaces, " + new File(args[2]).length() + " bytes");
+	}
+
+	/**
+	 * Binary search of a sorted section of ids
+	 */
+	private static int search(LongBuffer ids, int count, long id) {
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long value = ids.get(middle);
+			if (value < id) {
+				low = middle + 1;
+			} else if (value > id) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns a view of the given range of the file, in the byte order of the file
+	 */
+	private static ByteBuffer section(ByteBuffer buffer, int offset, long length) {
+		ByteBuffer section = buffer.duplicate();
+		section.position(offset);
+		section.limit(offset + (int) length);
+		return section.slice().order(ORDER);
+	}
+
+	private static long align(long length) {
+		return (length + 7) & ~7L;
+	}
+
+	private static long sizeOf(int routerCount, int linkCount, int nodeCount, int adjacencyCount) {
+		return HEADER_SIZE + align(routerCount * 8L) + 2 * align(routerCount * 4L) + 3 * align(linkCount * 8L)
+				+ align(nodeCount * 8L) + align((nodeCount + 1) * 4L) + 2 * align(adjacencyCount * 4L);
+	}
+
+}
@@ -0,0 +1,473 @@
+package com.googlecode.routing.simulator;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Random;
+
+/**
+ * Generates synthetic topologies of parameterized families and passes them to a {@link TopologySink} as they are
+ * created. The routers get the ids 1 to n and consecutive ports on the loopback network; once the ports of an
+ * address run out the next loopback address is used, so any number of routers can run on the same machine.
+ * 
+ * No family creates two links between the same pair of routers. Only the scale-free family keeps state
+ * proportional to the number of links (an int per link end); the others write each link as it is found
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class TopologyGenerator {
+
+	/**
+	 * The families of topologies that can be generated
+	 */
+	public enum Family {
+		/**
+		 * Each router linked to the next one, the last to the first
+		 */
+		RING,
+		/**
+		 * Routers on a two dimensional grid, linked to the routers next to them
+		 */
+		GRID,
+		/**
+		 * A grid whose borders wrap around
+		 */
+		TORUS,
+		/**
+		 * Erdos-Renyi G(n, p): every pair of routers linked with the same probability
+		 */
+		RANDOM,
+		/**
+		 * The three layers of switches (edge, aggregation and core) of a k-ary fat-tree
+		 */
+		FAT_TREE,
+		/**
+		 * Barabasi-Albert preferential attachment: each new router links to m routers chosen in proportion to their
+		 * degree
+		 */
+		SCALE_FREE
+	}
+
+	/**
+	 * The distributions the costs of the links can follow. The costs are whole numbers between the minimum and
+	 * the maximum cost
+	 */
+	public enum CostDistribution {
+		/**
+		 * Every link costs the minimum cost
+		 */
+		CONSTANT,
+		/**
+		 * Every cost is equally likely
+		 */
+		UNIFORM,
+		/**
+		 * The logarithm of the cost is uniform, so cheap links are much more common than expensive ones
+		 */
+		LOG_UNIFORM
+	}
+
+	/**
+	 * Port of the first router of each address
+	 */
+	public static final int DEFAULT_FIRST_PORT = 30000;
+
+	/**
+	 * Source of the random choices
+	 */
+	private final Random random;
+
+	/**
+	 * Distribution of the costs of the links
+	 */
+	private final CostDistribution costDistribution;
+
+	/**
+	 * Lowest cost of a link
+	 */
+	private final double minCost;
+
+	/**
+	 * Highest cost of a link
+	 */
+	private final double maxCost;
+
+	/**
+	 * Lowest integer cost drawn by the random distributions, the minimum cost rounded up
+	 */
+	private final double lowestDrawnCost;
+
+	/**
+	 * Highest integer cost drawn by the random distributions, the maximum cost rounded down
+	 */
+	private final double highestDrawnCost;
+
+	/**
+	 * Port of the first router of each address
+	 */
+	private final int firstPort;
+
+	/**
+	 * Creates a generator. The random distributions only draw integer costs, so there must be one between the
+	 * minimum and the maximum
+	 * 
+	 * @param seed Seed of the random choices, so the same topology can be generated again
+	 * @param costDistribution Distribution of the costs of the links
+	 * @param minCost Lowest cost of a link
+	 * @param maxCost Highest cost of a link
+	 * @param firstPort Port of the first router of each address
+	 */
+	public TopologyGenerator(long seed, CostDistribution costDistribution, double minCost, double maxCost, int firstPort) {
+		if (minCost <= 0 || maxCost < minCost) {
+			throw new IllegalArgumentException("Invalid costs: " + minCost + " to " + maxCost);
+		}
+		if (costDistribution != CostDistribution.CONSTANT && Math.ceil(minCost) > Math.floor(maxCost)) {
+			throw new IllegalArgumentException("No integer cost from " + minCost + " to " + maxCost);
+		}
+		if (firstPort <= 0 || firstPort > 0xFFFF) {
+			throw new IllegalArgumentException("Invalid port: " + firstPort);
+		}
+		this.random = new Random(seed);
+		this.costDistribution = costDistribution;
+		this.minCost = minCost;
+		this.maxCost = maxCost;
+		this.lowestDrawnCost = Math.ceil(minCost);
+		this.highestDrawnCost = Math.floor(maxCost);
+		this.firstPort = firstPort;
+	}
+
+	/**
+	 * Creates a generator of links with uniform costs between 1 and 100
+	 * 
+	 * @param seed Seed of the random choices
+	 */
+	public TopologyGenerator(long seed) {
+		this(seed, CostDistribution.UNIFORM, 1, 100, DEFAULT_FIRST_PORT);
+	}
+
+	/**
+	 * Generates a ring
+	 * 
+	 * @param size The number of routers
+	 * @param sink
+	 * @throws IOException
+	 */
+	public void generateRing(int size, TopologySink sink) throws IOException {
+		try {
+			addRouters(size, sink);
+			for (int i = 0; i + 1 < size; i++) {
+				addLink(i, i + 1, sink);
+			}
+			if (size > 2) {
+				addLink(size - 1, 0, sink);
+			}
+		} finally {
+			sink.close();
+		}
+	}
+
+	/**
+	 * Generates a grid or a torus. The router on row r and column c has the id r * columns + c + 1
+	 * 
+	 * @param rows
+	 * @param columns
+	 * @param torus If the borders wrap around
+	 * @param sink
+	 * @throws IOException
+	 */
+	public void generateGrid(int rows, int columns, boolean torus, TopologySink sink) throws IOException {
+		try {
+			addRouters(checkedSize((long) rows * columns), sink);
+			for (int row = 0; row < rows; row++) {
+				for (int column = 0; column < columns; column++) {
+					int node = row * columns + column;
+					if (column + 1 < columns) {
+						addLink(node, node + 1, sink);
+					} else if (torus && columns > 2) {
+						addLink(node, row * columns, sink);
+					}
+					if (row + 1 < rows) {
+						addLink(node, node + columns, sink);
+					} else if (torus && rows > 2) {
+						addLink(node, column, sink);
+					}
+				}
+			}
+		} finally {
+			sink.close();
+		}
+	}
+
+	/**
+	 * Generates a random graph G(n, p). Instead of drawing every pair, the distance to the next linked pair is drawn
+	 * from a geometric distribution, so the time is proportional to the number of links
+	 * 
+	 * @param size The number of routers
+	 * @param probability The probability of each pair of routers being linked
+	 * @param sink
+	 * @throws IOException
+	 */
+	public void generateRandom(int size, double probability, TopologySink sink) throws IOException {
+		if (probability < 0 || probability > 1) {
+			throw new IllegalArgumentException("Invalid probability: " + probability);
+		}
+		try {
+			addRouters(size, sink);
+			if (probability == 1) {
+				for (int a = 1; a < size; a++) {
+					for (int b = 0; b < a; b++) {
+						addLink(a, b, sink);
+					}
+				}
+			} else if (probability > 0) {
+				double logQ = Math.log(1 - probability);
+				long a = 1;
+				long b = -1;
+				while (a < size) {
+					b += 1 + (long) Math.floor(Math.log(1 - random.nextDouble()) / logQ);
+					while (b >= a && a < size) {
+						b -= a;
+						a++;
+					}
+					if (a < size) {
+						addLink((int) a, (int) b, sink);
+					}
+				}
+			}
+		} finally {
+			sink.close();
+		}
+	}
+
+	/**
+	 * Generates the switches of a k-ary fat-tree: (k/2)^2 core switches followed by k pods, each with k/2
+	 * aggregation and k/2 edge switches. Every edge switch is linked to every aggregation switch of its pod, and the
+	 * i-th aggregation switch of each pod to the i-th group of k/2 core switches
+	 * 
+	 * @param k The number of ports of each switch, an even number
+	 * @param sink
+	 * @throws IOException
+	 */
+	public void generateFatTree(int k, TopologySink sink) throws IOException {
+		if (k < 2 || k % 2 != 0) {
+			throw new IllegalArgumentException("Invalid fat-tree arity: " + k);
+		}
+		int half = k / 2;
+		int cores = half * half;
+		try {
+			addRouters(checkedSize(cores + (long) k * k), sink);
+			for (int pod = 0; pod < k; pod++) {
+				int firstAggregation = cores + pod * k;
+				int firstEdge = firstAggregation + half;
+				for (int aggregation = 0; aggregation < half; aggregation++) {
+					for (int core = 0; core < half; core++) {
+						addLink(firstAggregation + aggregation, aggregation * half + core, sink);
+					}
+					for (int edge = 0; edge < half; edge++) {
+						addLink(firstAggregation + aggregation, firstEdge + edge, sink);
+					}
+				}
+			}
+		} finally {
+			sink.close();
+		}
+	}
+
+	/**
+	 * Generates a scale-free graph by preferential attachment. It starts with a clique of m + 1 routers, then each
+	 * new router is linked to m distinct routers, chosen with probability proportional to their degree
+	 * 
+	 * @param size The number of routers
+	 * @param linksPerRouter The number of links of each new router (m)
+	 * @param sink
+	 * @throws IOException
+	 */
+	public void generateScaleFree(int size, int linksPerRouter, TopologySink sink) throws IOException {
+		if (linksPerRouter < 1 || linksPerRouter >= size) {
+			throw new IllegalArgumentException("Invalid number of links per router: " + linksPerRouter);
+		}
+		try {
+			addRouters(size, sink);
+			int initial = linksPerRouter + 1;
+			long ends = (long) initial * linksPerRouter + 2L * (size - initial) * linksPerRouter;
+			int[] linkEnds = new int[checkedSize(ends)];
+			int endCount = 0;
+			for (int a = 1; a < initial; a++) {
+				for (int b = 0; b < a; b++) {
+					addLink(a, b, sink);
+					linkEnds[endCount++] = a;
+					linkEnds[endCount++] = b;
+				}
+			}
+
+			int[] targets = new int[linksPerRouter];
+			for (int node = initial; node < size; node++) {
+				int previousCount = endCount;
+				for (int i = 0; i < linksPerRouter; i++) {
+					int target;
+					do {
+						target = linkEnds[random.nextInt(previousCount)];
+					} while (contains(targets, i, target));
+					targets[i] = target;
+					addLink(node, target, sink);
+					linkEnds[endCount++] = node;
+					linkEnds[endCount++] = target;
+				}
+			}
+		} finally {
+			sink.close();
+		}
+	}
+
+	/**
+	 * Generates a topology of the given family with the sizes taken from the arguments
+	 * 
+	 * @param family
+	 * @param size The number of routers, or of rows for grids, or the arity of fat-trees
+	 * @param parameter The number of columns for grids, the probability of each link for random graphs or the number
+	 *            of links of each new router for scale-free graphs; ignored for the other families
+	 * @param sink
+	 * @throws IOException
+	 */
+	public void generate(Family family, int size, double parameter, TopologySink sink) throws IOException {
+		switch (family) {
+		case RING:
+			generateRing(size, sink);
+			break;
+		case GRID:
+			generateGrid(size, (int) parameter, false, sink);
+			break;
+		case TORUS:
+			generateGrid(size, (int) parameter, true, sink);
+			break;
+		case RANDOM:
+			generateRandom(size, parameter, sink);
+			break;
+		case FAT_TREE:
+			generateFatTree(size, sink);
+			break;
+		case SCALE_FREE:
+			generateScaleFree(size, (int) parameter, sink);
+			break;
+		}
+	}
+
+	/**
+	 * Creates the metadata of the router with the given id, assigning its address and port
+	 * 
+	 * @param id A positive id
+	 * @return
+	 * @throws IOException
+	 */
+	public RouterInfo newRouterInfo(long id) throws IOException {
+		int portsPerAddress = 0x10000 - firstPort;
+		long position = id - 1;
+		long address = 1 + position / portsPerAddress;
+		if (address >= 1 << 24) {
+			throw new IllegalArgumentException("No address left for router " + id);
+		}
+		RouterInfo info = new RouterInfo();
+		info.id = id;
+		info.port = firstPort + (int) (position % portsPerAddress);
+		info.ipAddress = InetAddress.getByAddress(new byte[] { 127, (byte) (address >> 16), (byte) (address >> 8),
+				(byte) address });
+		return info;
+	}
+
+	private void addRouters(int size, TopologySink sink) throws IOException {
+		for (int node = 0; node < size; node++) {
+			sink.addRouter(newRouterInfo(node + 1));
+		}
+	}
+
+	private void addLink(int nodeA, int nodeB, TopologySink sink) throws IOException {
+		sink.addLink(nodeA + 1, nodeB + 1, nextCost());
+	}
+
+	/**
+	 * Draws the cost of a link from the configured distribution, an integer between the bounds unless it is constant
+	 */
+	private double nextCost() {
+		double low = lowestDrawnCost;
+		double high = highestDrawnCost;
+		switch (costDistribution) {
+		case UNIFORM:
+			return low + Math.floor(random.nextDouble() * (high - low + 1));
+		case LOG_UNIFORM:
+			double logLow = Math.log(low);
+			return Math.min(high, Math.floor(Math.exp(logLow + random.nextDouble() * (Math.log(high + 1) - logLow))));
+		default:
+			return minCost;
+		}
+	}
+
+	private static boolean contains(int[] values, int count, int value) {
+		for (int i = 0; i < count; i++) {
+			if (values[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int checkedSize(long size) {
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Topology too large: " + size);
+		}
+		return (int) size;
+	}
+
+	/**
+	 * Writes a generated topology to configuration files
+	 * 
+	 * @param args The family (ring, grid, torus, random, fat_tree or scale_free), its size and parameter (see
+	 *            {@link #generate(Family, int, double, TopologySink)}), optionally "-seed", "-costs" followed by the
+	 *            distribution, minimum and maximum cost separated by colons and "-port" followed by the first port,
+	 *            and then the paths of the router and link configuration files
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		long seed = System.currentTimeMillis();
+		CostDistribution costDistribution = CostDistribution.UNIFORM;
+		double minCost = 1;
+		double maxCost = 100;
+		int firstPort = DEFAULT_FIRST_PORT;
+		Family family = null;
+		int size = 0;
+		double parameter = 0;
+		String[] files = new String[2];
+		try {
+			int arg = 0;
+			family = Family.valueOf(args[arg++].toUpperCase());
+			size = Integer.parseInt(args[arg++]);
+			if (family != Family.RING && family != Family.FAT_TREE) {
+				parameter = Double.parseDouble(args[arg++]);
+			}
+			for (; args[arg].startsWith("-"); arg += 2) {
+				if (args[arg].equals("-seed")) {
+					seed = Long.parseLong(args[arg + 1]);
+				} else if (args[arg].equals("-costs")) {
+					String[] split = args[arg + 1].split(":");
+					costDistribution = CostDistribution.valueOf(split[0].toUpperCase());
+					minCost = Double.parseDouble(split[1]);
+					maxCost = Double.parseDouble(split[2]);
+				} else if (args[arg].equals("-port")) {
+					firstPort = Integer.parseInt(args[arg + 1]);
+				} else {
+					throw new IllegalArgumentException(args[arg]);
+				}
+			}
+			files[0] = args[arg++];
+			files[1] = args[arg++];
+		} catch (RuntimeException e) {
+			System.err.println("USAGE: <ring|grid|torus|random|fat_tree|scale_free> <size> [<parameter>] [-seed <n>] "
+					+ "[-costs <constant|uniform|log_uniform>:<min>:<max>] [-port <n>] <router_config> <link_config>");
+			System.exit(1);
+		}
+
+		TopologyGenerator generator = new TopologyGenerator(seed, costDistribution, minCost, maxCost, firstPort);
+		generator.generate(family, size, parameter, new ConfigFileSink(files[0], files[1]));
+	}
+
+}
@@ -0,0 +1,40 @@
+package com.googlecode.routing.simulator;
+
+import java.io.IOException;
+
+/**
+ * Receives the routers and links created by the {@link TopologyGenerator} as they are generated, so a topology can
+ * be written out or loaded without being held whole in memory by the generator
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public interface TopologySink {
+
+	/**
+	 * Receives a router of the topology. Every router is received before any of its links
+	 * 
+	 * @param info The metadata of the router
+	 * @throws IOException
+	 */
+	void addRouter(RouterInfo info) throws IOException;
+
+	/**
+	 * Receives a link of the topology
+	 * 
+	 * @param routerAID
+	 * @param routerBID
+	 * @param cost
+	 * @throws IOException
+	 */
+	void addLink(long routerAID, long routerBID, double cost) throws IOException;
+
+	/**
+	 * Called once the whole topology was received, or when the generation fails
+	 * 
+	 * @throws IOException
+	 */
+	void close() throws IOException;
+
+}
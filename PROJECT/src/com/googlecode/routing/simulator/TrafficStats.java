@@ -0,0 +1,105 @@
+package com.googlecode.routing.simulator;
+
+/**
+ * Counters of the data packets forwarded by the routers of an {@link EventSimulation}, either of a single flow or of
+ * all the flows during an interval
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class TrafficStats {
+
+	/**
+	 * Packets injected by the sources
+	 */
+	public long sent;
+
+	/**
+	 * Packets that reached their destination
+	 */
+	public long delivered;
+
+	/**
+	 * Packets dropped by a router without a path to the destination
+	 */
+	public long noRoute;
+
+	/**
+	 * Packets forwarded through a link that was down, either when sent or while in flight
+	 */
+	public long linkDown;
+
+	/**
+	 * Packets dropped when their time to live expired, which happens to the packets caught in a forwarding loop
+	 */
+	public long looped;
+
+	/**
+	 * Packets on their way between two routers, neither delivered nor dropped yet
+	 */
+	public long inFlight;
+
+	/**
+	 * Sum of the hops taken by the packets delivered
+	 */
+	public long hops;
+
+	/**
+	 * Sum of the latencies of the packets delivered, in milliseconds
+	 */
+	public long latency;
+
+	/**
+	 * Highest latency of a packet delivered, in milliseconds
+	 */
+	public long maxLatency;
+
+	/**
+	 * Records a packet that reached its destination
+	 * 
+	 * @param packetHops The number of links the packet went through
+	 * @param packetLatency The time since the packet was sent, in milliseconds
+	 */
+	public void delivered(int packetHops, long packetLatency) {
+		delivered++;
+		hops += packetHops;
+		latency += packetLatency;
+		maxLatency = Math.max(maxLatency, packetLatency);
+	}
+
+	/**
+	 * Returns the number of packets dropped for any reason
+	 * 
+	 * @return
+	 */
+	public long getDropped() {
+		return noRoute + linkDown + looped;
+	}
+
+	/**
+	 * Returns the mean number of hops of the packets delivered
+	 * 
+	 * @return
+	 */
+	public double getMeanHops() {
+		return delivered == 0 ? 0 : (double) hops / delivered;
+	}
+
+	/**
+	 * Returns the mean latency of the packets delivered
+	 * 
+	 * @return in milliseconds
+	 */
+	public double getMeanLatency() {
+		return delivered == 0 ? 0 : (double) latency / delivered;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("enviados=%d entregues=%d sem_rota=%d enlace_caido=%d lacos=%d em_transito=%d"
+				+ " saltos=%.2f latencia=%.1f/%d ms", sent, delivered, noRoute, linkDown, looped, inFlight,
+				getMeanHops(), getMeanLatency(), maxLatency);
+	}
+
+}
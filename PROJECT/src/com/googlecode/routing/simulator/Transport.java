@@ -0,0 +1,50 @@
+package com.googlecode.routing.simulator;
+
+import java.io.IOException;
+
+/**
+ * Abstraction of the medium used by a router to exchange messages with its neighbors. Allows the same
+ * {@link RouterClient} and {@link RouterServer} to run either over real UDP sockets or inside a single process. How
+ * the messages are received depends on the transport: event driven ones deliver them to the {@link PacketHandler}
+ * given to {@link #setHandler(PacketHandler)}, the others are a {@link BlockingTransport} read by a thread
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public interface Transport {
+
+	/**
+	 * Sends a message to the given router
+	 * 
+	 * @param destination The metadata of the router that should receive the message
+	 * @param data The buffer that holds the message
+	 * @param length The number of bytes of the buffer that should be sent
+	 * @throws IOException
+	 */
+	void send(RouterInfo destination, byte[] data, int length) throws IOException;
+
+	/**
+	 * Hands the messages received from now on to the given handler, if this transport is event driven
+	 * 
+	 * @param handler
+	 * @return true if the messages will be delivered to the handler, false if they must be taken with
+	 *         {@link BlockingTransport#receive(java.net.DatagramPacket)}, in which case this transport is a
+	 *         {@link BlockingTransport}
+	 */
+	boolean setHandler(PacketHandler handler);
+
+	/**
+	 * Returns the size of the largest message that can be sent without being fragmented or truncated by the
+	 * medium, based on the MTU of the path
+	 * 
+	 * @return the maximum message size in bytes
+	 */
+	int getMaxDatagramSize();
+
+	/**
+	 * Releases the resources held by this transport
+	 */
+	void close();
+
+}
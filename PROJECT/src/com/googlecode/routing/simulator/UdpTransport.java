@@ -0,0 +1,114 @@
+package com.googlecode.routing.simulator;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+
+/**
+ * Transport that exchanges the messages through a {@link DatagramSocket} bound to the address and port of the
+ * router
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class UdpTransport implements BlockingTransport {
+
+	/**
+	 * MTU assumed when the one of the interface can not be discovered (Ethernet)
+	 */
+	public static final int DEFAULT_MTU = 1500;
+
+	/**
+	 * Size of the IPv4 and UDP headers
+	 */
+	public static final int IPV4_UDP_HEADERS_SIZE = 28;
+
+	/**
+	 * Size of the IPv6 and UDP headers
+	 */
+	public static final int IPV6_UDP_HEADERS_SIZE = 48;
+
+	/**
+	 * Socket that is used to send and receive messages
+	 */
+	private final DatagramSocket socket;
+
+	/**
+	 * Largest datagram that fits in the MTU of the interface the socket is bound to
+	 */
+	private final int maxDatagramSize;
+
+	/**
+	 * Binds a new socket to the address and port of the given router
+	 * 
+	 * @param routerInfo The metadata of the router that owns this transport
+	 * @throws SocketException
+	 */
+	public UdpTransport(RouterInfo routerInfo) throws SocketException {
+		this.socket = new DatagramSocket(routerInfo.port, routerInfo.ipAddress);
+		this.maxDatagramSize = getMaxDatagramSize(routerInfo.ipAddress);
+	}
+
+	/**
+	 * Calculates the largest UDP payload that fits in the MTU of the interface that owns the given address
+	 * 
+	 * @param address
+	 * @return the size in bytes, based on {@link #DEFAULT_MTU} if the interface can not be found
+	 * @throws SocketException
+	 */
+	public static int getMaxDatagramSize(InetAddress address) throws SocketException {
+		NetworkInterface networkInterface = NetworkInterface.getByInetAddress(address);
+		int mtu = networkInterface != null ? networkInterface.getMTU() : -1;
+		if (mtu <= 0) {
+			mtu = DEFAULT_MTU;
+		}
+		int headersSize = (address instanceof Inet6Address) ? IPV6_UDP_HEADERS_SIZE : IPV4_UDP_HEADERS_SIZE;
+		return Math.min(mtu - headersSize, WireFormat.MAX_DATAGRAM_SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void send(RouterInfo destination, byte[] data, int length) throws IOException {
+		socket.send(new DatagramPacket(data, length, destination.ipAddress, destination.port));
+	}
+
+	/**
+	 * Always returns false, the messages are taken from the socket by {@link #receive(DatagramPacket)}
+	 */
+	@Override
+	public boolean setHandler(PacketHandler handler) {
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receive(DatagramPacket packet) throws IOException {
+		socket.receive(packet);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getMaxDatagramSize() {
+		return maxDatagramSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		socket.close();
+	}
+
+}
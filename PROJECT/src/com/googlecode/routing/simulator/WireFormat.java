@@ -0,0 +1,250 @@
+package com.googlecode.routing.simulator;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Low level primitives of the binary format used to exchange distance vectors. An advertisement is split in one or
+ * more fragments, each one sent on its own datagram. A fragment is made of a header (version, type, flags, sender
+ * id, sequence number, fragment index and number of entries) followed by one record per destination (destination
+ * id, gateway id and cost). Ids are written as zig-zag varints, so small ids take a single byte. Costs are exact:
+ * whole costs are written as varints too, and any other cost as a 64 bit double
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public final class WireFormat {
+
+	/**
+	 * Version of the format written by this implementation
+	 */
+	public static final int VERSION = 4;
+
+	/**
+	 * Message that carries the whole distance vector of the sender
+	 */
+	public static final int TYPE_FULL = 0;
+
+	/**
+	 * Message that carries only the entries that changed since the previous advertisement
+	 */
+	public static final int TYPE_DELTA = 1;
+
+	/**
+	 * Flag set on the last fragment of an advertisement
+	 */
+	public static final int FLAG_LAST_FRAGMENT = 0x01;
+
+	/**
+	 * Offset of the flags inside the header
+	 */
+	public static final int FLAGS_OFFSET = 2;
+
+	/**
+	 * Largest payload that fits in a single UDP datagram
+	 */
+	public static final int MAX_DATAGRAM_SIZE = 65507;
+
+	/**
+	 * Largest number of bytes a varint can take
+	 */
+	public static final int MAX_VARINT_SIZE = 10;
+
+	/**
+	 * Largest number of bytes a cost can take: the tag of a double followed by its 8 bytes
+	 */
+	public static final int MAX_COST_SIZE = 9;
+
+	/**
+	 * Largest number of bytes a single entry can take
+	 */
+	public static final int MAX_ENTRY_SIZE = 2 * MAX_VARINT_SIZE + MAX_COST_SIZE;
+
+	/**
+	 * Tag written instead of a cost for an unreachable destination
+	 */
+	private static final long COST_UNREACHABLE = 1;
+
+	/**
+	 * Tag written before a cost that is not a whole number
+	 */
+	private static final long COST_DOUBLE = 3;
+
+	/**
+	 * Largest whole cost written as a varint, so it takes at most 8 bytes
+	 */
+	private static final double MAX_WHOLE_COST = 1L << 52;
+
+	/**
+	 * Largest number of bytes the header of a fragment can take
+	 */
+	public static final int MAX_HEADER_SIZE = 3 + 3 * MAX_VARINT_SIZE + 2;
+
+	/**
+	 * Largest number of entries a single fragment can declare
+	 */
+	public static final int MAX_FRAGMENT_ENTRIES = 0xFFFF;
+
+	private WireFormat() {
+	}
+
+	/**
+	 * Writes the header of a fragment. The flags and the number of entries are written as placeholders, to be
+	 * filled by {@link #finishFragment(ByteBuffer, int, int, boolean)} once the fragment is complete
+	 * 
+	 * @param buffer
+	 * @param type
+	 * @param senderID
+	 * @param sequence
+	 * @param fragmentIndex
+	 * @return the position of the number of entries inside the buffer
+	 */
+	public static int writeHeader(ByteBuffer buffer, int type, long senderID, long sequence, int fragmentIndex) {
+		buffer.put((byte) VERSION);
+		buffer.put((byte) type);
+		buffer.put((byte) 0);
+		writeVarLong(buffer, senderID);
+		writeVarLong(buffer, sequence);
+		writeVarLong(buffer, fragmentIndex);
+		int entryCountPosition = buffer.position();
+		buffer.putShort((short) 0);
+		return entryCountPosition;
+	}
+
+	/**
+	 * Fills the fields of the header that are only known once all the entries of the fragment were written
+	 * 
+	 * @param buffer
+	 * @param entryCountPosition the position returned by {@link #writeHeader(ByteBuffer, int, long, long, int)}
+	 * @param entryCount
+	 * @param lastFragment
+	 */
+	public static void finishFragment(ByteBuffer buffer, int entryCountPosition, int entryCount, boolean lastFragment) {
+		buffer.put(FLAGS_OFFSET, (byte) (lastFragment ? FLAG_LAST_FRAGMENT : 0));
+		buffer.putShort(entryCountPosition, (short) entryCount);
+	}
+
+	/**
+	 * Reads the header of a message
+	 * 
+	 * @param buffer
+	 * @param header the header to be filled
+	 * @throws IllegalArgumentException if the header is truncated or was written with an unknown version of the
+	 *             format
+	 */
+	public static void readHeader(ByteBuffer buffer, MessageHeader header) {
+		try {
+			header.version = buffer.get() & 0xFF;
+			if (header.version != VERSION) {
+				throw new IllegalArgumentException("Unsupported wire format version: " + header.version);
+			}
+			header.type = buffer.get() & 0xFF;
+			if (header.type != TYPE_FULL && header.type != TYPE_DELTA) {
+				throw new IllegalArgumentException("Unknown message type: " + header.type);
+			}
+			header.lastFragment = (buffer.get() & FLAG_LAST_FRAGMENT) != 0;
+			header.senderID = readVarLong(buffer);
+			header.sequence = readVarLong(buffer);
+			long fragmentIndex = readVarLong(buffer);
+			if (fragmentIndex < 0 || fragmentIndex > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Invalid fragment index: " + fragmentIndex);
+			}
+			header.fragmentIndex = (int) fragmentIndex;
+			header.entryCount = buffer.getShort() & 0xFFFF;
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated header");
+		}
+	}
+
+	/**
+	 * Writes a path entry
+	 * 
+	 * @param buffer
+	 * @param destinationRouterID
+	 * @param gatewayRouterID
+	 * @param cost
+	 */
+	public static void writeEntry(ByteBuffer buffer, long destinationRouterID, long gatewayRouterID, double cost) {
+		writeVarLong(buffer, destinationRouterID);
+		writeVarLong(buffer, gatewayRouterID);
+		writeCost(buffer, cost);
+	}
+
+	/**
+	 * Writes a long as a zig-zag encoded varint
+	 * 
+	 * @param buffer
+	 * @param value
+	 */
+	public static void writeVarLong(ByteBuffer buffer, long value) {
+		long v = (value << 1) ^ (value >> 63);
+		while ((v & ~0x7FL) != 0) {
+			buffer.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		buffer.put((byte) v);
+	}
+
+	/**
+	 * Reads a zig-zag encoded varint
+	 * 
+	 * @param buffer
+	 * @return the decoded value
+	 */
+	public static long readVarLong(ByteBuffer buffer) {
+		long v = 0;
+		int shift = 0;
+		byte b;
+		do {
+			if (shift >= 64) {
+				throw new IllegalArgumentException("Malformed varint");
+			}
+			b = buffer.get();
+			v |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/**
+	 * Writes a cost without losing precision. A whole cost is written as a varint of twice its value, so the costs
+	 * read from the configuration files usually take one or two bytes; {@link Router#INFINITY} and any other cost
+	 * are written as odd tags, the latter followed by the cost as a double
+	 * 
+	 * @param buffer
+	 * @param cost
+	 */
+	public static void writeCost(ByteBuffer buffer, double cost) {
+		if (cost == Router.INFINITY) {
+			writeVarLong(buffer, COST_UNREACHABLE);
+		} else if (cost >= 0 && cost <= MAX_WHOLE_COST && cost == Math.rint(cost)) {
+			writeVarLong(buffer, (long) cost << 1);
+		} else {
+			writeVarLong(buffer, COST_DOUBLE);
+			buffer.putDouble(cost);
+		}
+	}
+
+	/**
+	 * Reads a cost written by {@link #writeCost(ByteBuffer, double)}
+	 * 
+	 * @param buffer
+	 * @return the cost, or {@link Router#INFINITY} if the destination is unreachable
+	 * @throws IllegalArgumentException if the tag of the cost is unknown
+	 */
+	public static double readCost(ByteBuffer buffer) {
+		long value = readVarLong(buffer);
+		if ((value & 1) == 0) {
+			return value >>> 1;
+		}
+		if (value == COST_UNREACHABLE) {
+			return Router.INFINITY;
+		}
+		if (value == COST_DOUBLE) {
+			return buffer.getDouble();
+		}
+		throw new IllegalArgumentException("Unknown cost tag: " + value);
+	}
+
+}
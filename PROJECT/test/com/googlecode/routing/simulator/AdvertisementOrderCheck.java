@@ -0,0 +1,188 @@
+package com.googlecode.routing.simulator;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks that advertisements received out of order never replace newer state: feeds a full advertisement
+ * interleaved with a newer delta to the {@link FragmentReassembler}, and a late full advertisement after a newer
+ * delta to the mailbox of a neighbor on a {@link RouterServer} and to the router. Exits with status 1 if any check fails
+ * 
+ * @author Felipe Ribeiro
+ * @author Michelly Guedes
+ * @author Renato Miceli
+ */
+public class AdvertisementOrderCheck {
+
+	/**
+	 * Smallest size of the fragments, so that an advertisement with a few entries needs many fragments
+	 */
+	private static final int FRAGMENT_SIZE = WireFormat.MAX_HEADER_SIZE + WireFormat.MAX_ENTRY_SIZE;
+
+	/**
+	 * Number of entries of the full advertisements split in fragments
+	 */
+	private static final int FULL_SIZE = 20;
+
+	private static final long ROUTER_ID = 0;
+
+	private static final long NEIGHBOR_ID = 1;
+
+	private static int failures;
+
+	public static void main(String[] args) throws IOException {
+		checkReassembler();
+		checkMailbox();
+		if (failures > 0) {
+			System.out.println(failures + " verificacoes falharam");
+			System.exit(1);
+		}
+		System.out.println("Todas as verificacoes passaram");
+	}
+
+	/**
+	 * A full advertisement in many fragments with a delta received between them: the delta must be held until the
+	 * full advertisement completes, and both delivered together as a full advertisement with the sequence of the
+	 * delta. Fragments of both must then be ignored
+	 */
+	private static void checkReassembler() {
+		long[] destinations = new long[FULL_SIZE];
+		double[] costs = new double[FULL_SIZE];
+		for (int i = 0; i < FULL_SIZE; i++) {
+			destinations[i] = 5 + i;
+			costs[i] = i == 0 ? 7 : 2;
+		}
+		AdvertisementEncoder full = encode(WireFormat.TYPE_FULL, 9, destinations, costs);
+		AdvertisementEncoder delta = encode(WireFormat.TYPE_DELTA, 10, new long[] { 5 }, new double[] { 3 });
+		int last = full.getFragmentCount() - 1;
+		check(last > 0, "the full advertisement is split in fragments");
+
+		FragmentReassembler reassembler = new FragmentReassembler();
+		MessageHeader header = new MessageHeader();
+		check(add(reassembler, header, full.getFragment(0)) == null, "first fragment of the full is pending");
+		check(add(reassembler, header, delta.getFragment(0)) == null, "the delta waits for the older full");
+		for (int i = 1; i < last; i++) {
+			check(add(reassembler, header, full.getFragment(i)) == null, "the full is still incomplete");
+		}
+		PathList paths = add(reassembler, header, full.getFragment(last));
+		check(paths != null, "the last fragment of the full delivers it");
+		if (paths != null) {
+			check(reassembler.getType() == WireFormat.TYPE_FULL, "the delivered advertisement is full");
+			check(reassembler.getSequence() == 10, "the delivered sequence is the one of the delta");
+			check(paths.size() == FULL_SIZE + 1, "the entries of the full and of the delta are delivered");
+			check(costOf(paths, 5) == 3, "the delta overrides the older full, got " + costOf(paths, 5));
+			check(costOf(paths, 6) == 2, "the entries only carried by the full are kept");
+		}
+		check(add(reassembler, header, full.getFragment(last)) == null, "a repeated fragment of the full is ignored");
+		check(add(reassembler, header, delta.getFragment(0)) == null, "a repeated delta is ignored");
+		AdvertisementEncoder late = encode(WireFormat.TYPE_FULL, 8, new long[] { 5 }, new double[] { 50 });
+		check(add(reassembler, header, late.getFragment(0)) == null, "an older full is ignored");
+	}
+
+	/**
+	 * A delta followed by a late full advertisement, both merged on the mailbox of a neighbor before it is applied:
+	 * the full must not replace the paths of the delta. Once the mailbox is applied, the router must also ignore
+	 * the late full and any replayed sequence, without moving its last sequence backwards
+	 */
+	private static void checkMailbox() throws IOException {
+		RouterInfo routerInfo = newRouterInfo(ROUTER_ID);
+		RouterInfo neighborInfo = newRouterInfo(NEIGHBOR_ID);
+		Set<RouterInfo> adjacentRouters = new HashSet<RouterInfo>();
+		adjacentRouters.add(neighborInfo);
+		LinkInfo link = new LinkInfo();
+		link.routerAID = ROUTER_ID;
+		link.routerBID = NEIGHBOR_ID;
+		link.cost = 1;
+		Map<Long, LinkInfo> links = Collections.singletonMap(NEIGHBOR_ID, link);
+		Router router = new Router(routerInfo, adjacentRouters, links, Simulation.NULL_OUTPUT, Router.INFINITY);
+		router.initTransport(new InMemoryNetwork().attach(routerInfo));
+		RouterServer server = new RouterServer(router, new RouterClient(router));
+		RouterServer.NeighborStage stage = server.new NeighborStage(NEIGHBOR_ID);
+
+		PathList delta = paths(new long[] { 5 }, new double[] { 3 });
+		PathList full = paths(new long[] { 5, 6 }, new double[] { 7, 2 });
+		check(stage.merge(WireFormat.TYPE_DELTA, 10, delta), "the delta makes the mailbox dirty");
+		check(!stage.merge(WireFormat.TYPE_FULL, 9, full), "a late full is not merged");
+		check(!stage.merge(WireFormat.TYPE_DELTA, 10, full), "a replayed delta is not merged");
+		synchronized (router.minimumPathTable) {
+			check(stage.apply(), "the mailbox is applied");
+			check(vectorCost(router, 5) == 3, "a late full does not replace a newer delta");
+			check(vectorCost(router, 6) < 0, "the entries of a late full are not applied");
+
+			check(!router.applyAdvertisement(NEIGHBOR_ID, WireFormat.TYPE_FULL, 9, full), "a late full is rejected");
+			check(!router.applyAdvertisement(NEIGHBOR_ID, WireFormat.TYPE_DELTA, 10, full), "a replay is rejected");
+			check(vectorCost(router, 5) == 3, "rejected advertisements do not change the vector");
+			check(router.lastSequence.get(NEIGHBOR_ID) == 10, "the last sequence never moves backwards");
+
+			check(router.applyAdvertisement(NEIGHBOR_ID, WireFormat.TYPE_FULL, 11, paths(new long[] { 6 },
+					new double[] { 4 })), "a newer full is accepted");
+			check(vectorCost(router, 5) < 0 && vectorCost(router, 6) == 4, "a newer full replaces the vector");
+		}
+	}
+
+	private static AdvertisementEncoder encode(int type, long sequence, long[] destinations, double[] costs) {
+		AdvertisementEncoder encoder = new AdvertisementEncoder(FRAGMENT_SIZE);
+		encoder.begin(type, NEIGHBOR_ID, sequence);
+		for (int i = 0; i < destinations.length; i++) {
+			encoder.add(destinations[i], NEIGHBOR_ID, costs[i]);
+		}
+		encoder.finish();
+		return encoder;
+	}
+
+	private static PathList paths(long[] destinations, double[] costs) {
+		PathList paths = new PathList();
+		for (int i = 0; i < destinations.length; i++) {
+			paths.add(destinations[i], NEIGHBOR_ID, costs[i]);
+		}
+		return paths;
+	}
+
+	private static PathList add(FragmentReassembler reassembler, MessageHeader header, ByteBuffer fragment) {
+		ByteBuffer data = fragment.duplicate();
+		WireFormat.readHeader(data, header);
+		return reassembler.add(header, data);
+	}
+
+	private static double costOf(PathList paths, long destination) {
+		double cost = -1;
+		for (int i = 0; i < paths.size(); i++) {
+			if (paths.getDestination(i) == destination) {
+				cost = paths.getCost(i);
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * Returns the cost to a destination on the copy of the vector of the neighbor, or -1 if it has no entry
+	 */
+	private static double vectorCost(Router router, long destination) {
+		synchronized (router.minimumPathTable) {
+			DistanceVector vector = router.minimumPathTable.getVector(NEIGHBOR_ID);
+			int i = router.minimumPathTable.getIndex().indexOf(destination);
+			return vector == null || i < 0 || !vector.contains(i) ? -1 : vector.getCost(i);
+		}
+	}
+
+	private static RouterInfo newRouterInfo(long id) throws IOException {
+		RouterInfo info = new RouterInfo();
+		info.id = id;
+		info.port = 21000 + (int) id;
+		info.ipAddress = InetAddress.getByAddress(new byte[] { 127, 0, 0, 1 });
+		return info;
+	}
+
+	private static void check(boolean condition, String description) {
+		if (!condition) {
+			failures++;
+			System.out.println("FALHOU: " + description);
+		}
+	}
+
+}